@@ -0,0 +1,144 @@
+package pgmreport.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/*
+ * 量測用測試資料產生器
+ * - 建立 ig_ui_sc_t / send_file_kanri / nbit_dllog 三張表（欄位只建報表會用到的部分）
+ * - 依門市數產生一天的配信與取檔資料，比例接近正式環境：
+ *   配信成功約 92%、失敗約 5%、處理中約 3%；約 10% 門市有重送（unyo_f_name 帶後綴）
+ *   配信成功門市約 96% 有 NBITS 取檔成功記錄；另有其他狀態 / 其他檔案的雜訊記錄
+ * - 前一天也產生同量資料，確認日期區間條件有實際過濾
+ * - 固定亂數種子，同樣的門市數每次產生相同資料
+ */
+public final class BenchmarkData {
+
+    // 量測日期
+    public static final LocalDate DAY = LocalDate.of(2025, 12, 17);
+    // 每批寫入筆數
+    private static final int BATCH_SIZE = 5_000;
+
+    private BenchmarkData() {
+    }
+
+    // 建表並產生 stores 間門市的資料
+    public static void generate(JdbcTemplate jdbc, int stores, long seed) {
+        createTables(jdbc);
+        insertStoreMaster(jdbc, stores);
+        SplittableRandom random = new SplittableRandom(seed);
+        insertDay(jdbc, stores, DAY.minusDays(1), random);
+        insertDay(jdbc, stores, DAY, random);
+    }
+
+    private static void createTables(JdbcTemplate jdbc) {
+        jdbc.execute("""
+                CREATE TABLE ig_ui_sc_t (
+                    id      VARCHAR2(10),
+                    store   VARCHAR2(6),
+                    dlf_ip1 VARCHAR2(15),
+                    adsl_1  VARCHAR2(20)
+                )""");
+        jdbc.execute("""
+                CREATE TABLE send_file_kanri (
+                    trm_id      VARCHAR2(10),
+                    unyo_f_name VARCHAR2(20),
+                    file_sts    CHAR(1),
+                    kidou_date  DATE
+                )""");
+        jdbc.execute("""
+                CREATE TABLE nbit_dllog (
+                    term_id  VARCHAR2(10),
+                    log_date DATE,
+                    file_id  VARCHAR2(10),
+                    status   CHAR(1)
+                )""");
+        jdbc.execute("CREATE INDEX ig_ui_sc_t_id ON ig_ui_sc_t (id)");
+        jdbc.execute("CREATE INDEX ig_ui_sc_t_store ON ig_ui_sc_t (store)");
+        jdbc.execute("CREATE INDEX send_file_kanri_kidou ON send_file_kanri (kidou_date)");
+        jdbc.execute("CREATE INDEX nbit_dllog_log ON nbit_dllog (log_date)");
+        // 掃描 SQL 以 TO_NUMBER(TO_CHAR(..., 'SSSSS')) 取當日秒數，H2 沒有 TO_NUMBER
+        jdbc.execute("CREATE ALIAS IF NOT EXISTS TO_NUMBER FOR \"pgmreport.benchmark.BenchmarkData.toNumber\"");
+    }
+
+    // H2 用 TO_NUMBER（只需處理整數字串）
+    public static long toNumber(String value) {
+        return Long.parseLong(value.trim());
+    }
+
+    private static void insertStoreMaster(JdbcTemplate jdbc, int stores) {
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= stores; i++) {
+            String store = storeCode(i);
+            rows.add(new Object[] {
+                    "00" + store,
+                    store,
+                    "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF),
+                    "ADSL-" + store });
+            rows = flush(jdbc, "INSERT INTO ig_ui_sc_t (id, store, dlf_ip1, adsl_1) VALUES (?, ?, ?, ?)", rows, false);
+        }
+        flush(jdbc, "INSERT INTO ig_ui_sc_t (id, store, dlf_ip1, adsl_1) VALUES (?, ?, ?, ?)", rows, true);
+    }
+
+    private static void insertDay(JdbcTemplate jdbc, int stores, LocalDate day, SplittableRandom random) {
+        String kanriSql = "INSERT INTO send_file_kanri (trm_id, unyo_f_name, file_sts, kidou_date) VALUES (?, ?, ?, ?)";
+        String dllogSql = "INSERT INTO nbit_dllog (term_id, log_date, file_id, status) VALUES (?, ?, ?, ?)";
+        List<Object[]> kanri = new ArrayList<>(BATCH_SIZE);
+        List<Object[]> dllog = new ArrayList<>(BATCH_SIZE);
+
+        for (int i = 1; i <= stores; i++) {
+            String trmId = "00" + storeCode(i);
+            Timestamp kidou = at(day, random);
+            int roll = random.nextInt(100);
+            String sts = roll < 92 ? "8" : roll < 97 ? "7" : "1";
+            kanri.add(new Object[] { trmId, "SDCDGETR", sts, kidou });
+
+            // 重送（LIKE 'SDCDGETR%' 會命中，但不計入總數）
+            if (random.nextInt(10) == 0) {
+                kanri.add(new Object[] { trmId, "SDCDGETR_R", random.nextBoolean() ? "8" : "7", at(day, random) });
+            }
+
+            // NBITS 取檔成功
+            if ("8".equals(sts) && random.nextInt(100) < 96) {
+                dllog.add(new Object[] { trmId, later(kidou, random), "SDTDRCV3", "2" });
+            }
+            // 雜訊：其他狀態 / 其他檔案
+            if (random.nextInt(5) == 0) {
+                dllog.add(new Object[] { trmId, at(day, random), random.nextBoolean() ? "SDTDRCV3" : "SDTDRCV1", "9" });
+            }
+
+            kanri = flush(jdbc, kanriSql, kanri, false);
+            dllog = flush(jdbc, dllogSql, dllog, false);
+        }
+        flush(jdbc, kanriSql, kanri, true);
+        flush(jdbc, dllogSql, dllog, true);
+    }
+
+    // 累積到一批（或最後一次）才寫入，回傳可繼續累積的清單
+    private static List<Object[]> flush(JdbcTemplate jdbc, String sql, List<Object[]> rows, boolean last) {
+        if (rows.isEmpty() || (!last && rows.size() < BATCH_SIZE)) {
+            return rows;
+        }
+        jdbc.batchUpdate(sql, rows);
+        return new ArrayList<>(BATCH_SIZE);
+    }
+
+    private static String storeCode(int i) {
+        return String.format("%06d", i);
+    }
+
+    // 當日隨機時間（秒）
+    private static Timestamp at(LocalDate day, SplittableRandom random) {
+        return Timestamp.valueOf(day.atStartOfDay().plusSeconds(random.nextInt(20 * 3600)));
+    }
+
+    // 配信後數分鐘內取檔
+    private static Timestamp later(Timestamp t, SplittableRandom random) {
+        return new Timestamp(t.getTime() + 1000L * (30 + random.nextInt(1800)));
+    }
+}
@@ -0,0 +1,102 @@
+package pgmreport.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import pgmreport.service.DistributionTimelineService;
+import pgmreport.service.FailStoreExportService;
+import pgmreport.service.FileStatusReportService;
+import pgmreport.service.HedgedQueryExecutor;
+import pgmreport.service.IgalScanService;
+import pgmreport.service.NbitsDiffExportService;
+import pgmreport.service.NbitsScanService;
+import pgmreport.service.ReportMetrics;
+import pgmreport.service.SourceQueryExecutor;
+import pgmreport.service.StoreMasterCache;
+import pgmreport.service.StoreShardExecutor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/*
+ * 量測用資料庫與服務（每個門市數建一次）
+ * - H2 記憶體資料庫，MODE=Oracle；IGAL / NBITS 兩個 JdbcTemplate 指向同一個資料庫
+ * - 報表 SQL 以 day 當欄位別名，H2 2.x 的 DAY 為保留字，需以 NON_KEYWORDS 解除
+ * - 服務以建構子直接組裝，不啟動 Spring（不需要 app.ini）
+ * - 門市主檔快取停用：簽章查詢使用 ORA_ROWSCN，H2 不支援
+ * - 差異結果快取 TTL = 0：每次呼叫都實際查詢
+ * - shards：IGAL / NBITS 門市分片數（1 = 不分片），同時執行數固定為 4
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    @Param({ "1000", "10000", "100000" })
+    public int stores;
+
+    @Param({ "1", "4" })
+    public int shards;
+
+    public Path outputDir;
+    public SourceQueryExecutor queryExecutor;
+    public ReportMetrics metrics;
+    public FileStatusReportService statusService;
+    public FailStoreExportService failStoreService;
+    public NbitsDiffExportService nbitsDiffService;
+    // 時段分佈使用 Oracle TO_CHAR(..., 'SSSSS')，量測資料庫不輸出（報表維持兩個 Sheet，與既有量測結果可比）
+    public DistributionTimelineService timelineService;
+
+    private HikariDataSource dataSource;
+    private StoreShardExecutor igalShards;
+    private StoreShardExecutor nbitsShards;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:pgmreport-" + stores + ";MODE=Oracle;NON_KEYWORDS=DAY;DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(8);
+
+        JdbcTemplate igal = new JdbcTemplate(dataSource);
+        JdbcTemplate nbits = new JdbcTemplate(dataSource);
+        igal.setFetchSize(500);
+        nbits.setFetchSize(500);
+        BenchmarkData.generate(igal, stores, 20251217L);
+
+        outputDir = Files.createTempDirectory("pgmreport-bench");
+        queryExecutor = new SourceQueryExecutor(true, 4, 300);
+        metrics = new ReportMetrics();
+        StoreMasterCache storeMaster = StoreMasterCache.disabled();
+        igalShards = new StoreShardExecutor("IGAL", shards, 4);
+        nbitsShards = new StoreShardExecutor("NBITS", shards, 4);
+        HedgedQueryExecutor igalHedge = HedgedQueryExecutor.direct("IGAL", igal);
+        HedgedQueryExecutor nbitsHedge = HedgedQueryExecutor.direct("NBITS", nbits);
+        // 快取存活 0 秒：每次量測都實際查詢
+        IgalScanService igalScan = new IgalScanService(igalHedge, igalShards, metrics, 0);
+        NbitsScanService nbitsScan = new NbitsScanService(nbitsHedge, nbitsShards, metrics, 0);
+        statusService = new FileStatusReportService(igalScan, nbitsScan, queryExecutor);
+        failStoreService = new FailStoreExportService(igalScan, igal, storeMaster, metrics);
+        nbitsDiffService = new NbitsDiffExportService(igal, igalScan, nbitsScan, queryExecutor, storeMaster, metrics, 0);
+        timelineService = new DistributionTimelineService(igalScan, nbitsScan, queryExecutor, false, 60);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        queryExecutor.destroy();
+        igalShards.destroy();
+        nbitsShards.destroy();
+        dataSource.close();
+        try (Stream<Path> files = Files.walk(outputDir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package pgmreport.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import pgmreport.service.ColumnWidthCalculator;
+import pgmreport.service.DailyResultStore;
+import pgmreport.service.FailStoreExportService.FailStoreRow;
+import pgmreport.service.FileStatusReportService.FileStatusResult;
+import pgmreport.service.NbitsDiffExportService.Row;
+import pgmreport.service.ReportFormat;
+import pgmreport.service.StoreKeySet;
+import pgmreport.service.XlsxExportService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * 報表主要流程量測（單日）
+ * - queryByDate：IGAL 計數 + NBITS 取檔成功數
+ * - findNbitsDiffRows：跨庫差集 + 門市明細
+ * - findFailStores：配信失敗門市
+ * - exportEmergencyReport：查詢 + 寫出報表（XLSX 記憶體 / XLSX 串流 / CSV）
+ * - columnWidthCalculator / autoSizeColumn：寫入時記錄欄寬 vs. 寫完後 autoSizeColumn（AWT 字型量測）
+ * - storeDiffMerge / storeDiffHashSet：StoreKeySet 排序 int[] merge-diff vs. HashSet<String> + stream().distinct()
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ReportBenchmarks {
+
+    @Benchmark
+    public FileStatusResult queryByDate(BenchmarkDatabase db) {
+        return db.statusService.queryByDate(BenchmarkData.DAY);
+    }
+
+    @Benchmark
+    public List<Row> findNbitsDiffRows(BenchmarkDatabase db) {
+        return db.nbitsDiffService.findNbitsDiffRows(BenchmarkData.DAY);
+    }
+
+    @Benchmark
+    public List<FailStoreRow> findFailStores(BenchmarkDatabase db) {
+        return db.failStoreService.findFailStores(BenchmarkData.DAY);
+    }
+
+    @Benchmark
+    public Path exportEmergencyReport(BenchmarkDatabase db, OutputMode mode) throws IOException {
+        return mode.exportService.exportEmergencyReport(BenchmarkData.DAY, mode.format);
+    }
+
+    @Benchmark
+    public int columnWidthCalculator(WidthSheet data) {
+        ColumnWidthCalculator widths = new ColumnWidthCalculator(3);
+        for (String[] row : data.values) {
+            widths.acceptRow(row);
+        }
+        widths.applyTo(data.sheet, new int[0]);
+        return data.sheet.getColumnWidth(1);
+    }
+
+    @Benchmark
+    public int autoSizeColumn(WidthSheet data) {
+        for (int c = 0; c < 3; c++) {
+            data.sheet.autoSizeColumn(c);
+        }
+        return data.sheet.getColumnWidth(1);
+    }
+
+    @Benchmark
+    public List<String> storeDiffMerge(StoreChains data) {
+        return StoreKeySet.of(data.igal).minus(StoreKeySet.of(data.nbits)).toStoreCodes();
+    }
+
+    @Benchmark
+    public List<String> storeDiffHashSet(StoreChains data) {
+        Set<String> nbitsSet = new HashSet<>(data.nbits);
+        return data.igal.stream()
+                .filter(s -> !nbitsSet.contains(s))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    // 門市差集量測用資料：IGAL 門市（含重複）與約九成重疊的 NBITS 門市（只有門市差集量測會用到）
+    @State(Scope.Benchmark)
+    public static class StoreChains {
+
+        // 與 BenchmarkDatabase.stores 分開命名：JMH 依名稱套用 -p，同名時 -p stores=... 會一併改掉這裡
+        @Param({ "200000" })
+        public int chainStores;
+
+        List<String> igal;
+        List<String> nbits;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(42);
+            igal = new ArrayList<>(chainStores);
+            nbits = new ArrayList<>(chainStores);
+            for (int i = 0; i < chainStores; i++) {
+                String store = String.format("%06d", random.nextInt(1_000_000));
+                igal.add(store);
+                if (random.nextInt(10) != 0) {
+                    nbits.add(store);
+                }
+            }
+        }
+    }
+
+    // 欄寬量測用工作表：TRM_ID / IP / ADSL 三欄（只有欄寬量測會用到）
+    @State(Scope.Benchmark)
+    public static class WidthSheet {
+
+        @Param({ "20000" })
+        public int rows;
+
+        String[][] values;
+        XSSFWorkbook workbook;
+        Sheet sheet;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            values = new String[rows][];
+            workbook = new XSSFWorkbook();
+            sheet = workbook.createSheet();
+            for (int i = 0; i < rows; i++) {
+                values[i] = new String[] { String.format("00%06d", i), "10.1." + (i % 250) + "." + (i % 200), "adsl-" + i };
+                org.apache.poi.ss.usermodel.Row row = sheet.createRow(i);
+                for (int c = 0; c < 3; c++) {
+                    row.createCell(c).setCellValue(values[i][c]);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            workbook.close();
+        }
+    }
+
+    // 報表輸出模式（只有 exportEmergencyReport 會展開此參數）
+    @State(Scope.Benchmark)
+    public static class OutputMode {
+
+        @Param({ "xlsx", "xlsx-streaming", "csv" })
+        public String output;
+
+        XlsxExportService exportService;
+        ReportFormat format;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkDatabase db) {
+            format = ReportFormat.parse(output.replace("-streaming", ""));
+            exportService = new XlsxExportService(db.failStoreService, db.nbitsDiffService, db.queryExecutor,
+                    db.metrics, DailyResultStore.disabled(), db.timelineService, db.outputDir.toString(), output.endsWith("-streaming"), 100, "10,10,10", format.name());
+        }
+    }
+}
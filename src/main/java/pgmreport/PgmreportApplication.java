@@ -5,19 +5,42 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.context.annotation.Lazy;
 
+import pgmreport.service.BackfillReportService;
+import pgmreport.service.BackfillReportService.DailyReport;
+import pgmreport.service.DailyResultStore;
+import pgmreport.service.DailyResultStore.DailyDelta;
+import pgmreport.service.DailyResultStore.StoreDelta;
 import pgmreport.service.XlsxExportService;
 import pgmreport.service.FileStatusReportService;
+import pgmreport.service.MultiPairReportService;
+import pgmreport.service.MultiPairReportService.PairReport;
 import pgmreport.service.NbitsDiffExportService;
+import pgmreport.service.ProgressMonitorService;
+import pgmreport.service.ReportHttpService;
+import pgmreport.service.ReportFormat;
+import pgmreport.service.ReportMetrics;
+import pgmreport.service.StoreKeySet;
 import pgmreport.service.FileStatusReportService.FileStatusResult;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /*
  * Spring Boot 主程式
  *
  * - 使用 CommandLineRunner：啟動即執行一次批次邏輯
+ * - 參數：[yyyy-MM-dd]（單日，預設今天）或 --from=yyyy-MM-dd --to=yyyy-MM-dd（多日補跑）
+ * - --format=xlsx|csv|tsv：本次執行的報表輸出格式（預設 report.output.format）
+ * - --monitor [yyyy-MM-dd]：常駐監控模式，依間隔增量輪詢配信進度（未指定日期時跟隨系統日期）
+ * - report.pair-names 有設定時，單日執行改為多組 IGAL / NBITS 同時出報表（每組一份報表 + 彙總）
+ * - --serve [yyyy-MM-dd]：常駐 HTTP 查詢模式，以定期重新整理的記憶體快照提供 JSON（未指定日期時跟隨系統日期）
  * - 排除預設 JDBC AutoConfig：避免 Spring 嘗試建立預設 DataSource
  */
 @SpringBootApplication(
@@ -28,21 +51,43 @@ import java.time.LocalDate;
 )
 public class PgmreportApplication implements CommandLineRunner {
 
+    // 差異門市代碼最多列出筆數
+    private static final int STORE_SAMPLE = 10;
+
     private final FileStatusReportService reportService;
     private final NbitsDiffExportService nbitsDiffService;
     private final XlsxExportService emergencyXlsxExportService;
+    private final BackfillReportService backfillService;
+    private final ProgressMonitorService monitorService;
+    private final ReportHttpService httpService;
+    private final MultiPairReportService multiPairService;
+    private final ReportMetrics metrics;
+    private final DailyResultStore resultStore;
 
     /*
      * 建構子注入（Constructor Injection）
      * - 符合 SOLID / 可測試性
      * - 避免 Field Injection
+     * - 補跑 / 監控 / HTTP 服務只在對應模式使用：@Lazy 注入代理，第一次呼叫才建立
      */
     public PgmreportApplication(FileStatusReportService reportService,
                                         NbitsDiffExportService nbitsDiffService,
-                                        XlsxExportService emergencyXlsxExportService) {
+                                        XlsxExportService emergencyXlsxExportService,
+                                        @Lazy BackfillReportService backfillService,
+                                        @Lazy ProgressMonitorService monitorService,
+                                        @Lazy ReportHttpService httpService,
+                                        @Lazy MultiPairReportService multiPairService,
+                                        ReportMetrics metrics,
+                                        DailyResultStore resultStore) {
         this.reportService = reportService;
         this.nbitsDiffService = nbitsDiffService;
         this.emergencyXlsxExportService = emergencyXlsxExportService;
+        this.backfillService = backfillService;
+        this.monitorService = monitorService;
+        this.httpService = httpService;
+        this.multiPairService = multiPairService;
+        this.metrics = metrics;
+        this.resultStore = resultStore;
     }
 
     //Spring Boot 進入點
@@ -53,31 +98,67 @@ public class PgmreportApplication implements CommandLineRunner {
     @Override
     public void run(String... args) {
         try {
+            metrics.reset();
+
+            // 報表輸出格式（未指定時用設定檔預設值）
+            String formatArg = option(args, "--format=");
+            ReportFormat format = formatArg != null
+                    ? ReportFormat.parse(formatArg)
+                    : emergencyXlsxExportService.defaultFormat();
+
+            // 多日補跑：--from / --to（缺一邊時視為單日）
+            String from = option(args, "--from=");
+            String to = option(args, "--to=");
+            if (from != null || to != null) {
+                runBackfill(LocalDate.parse(from != null ? from : to),
+                        LocalDate.parse(to != null ? to : from), format);
+                return;
+            }
+
         	// 解析查詢日期（有參數用參數，否則用今天）
-            LocalDate date = (args.length > 0)
-                    ? LocalDate.parse(args[0])
+            String dateArg = Arrays.stream(args)
+                    .filter(a -> !a.startsWith("--"))
+                    .findFirst()
+                    .orElse(null);
+
+            // 常駐監控：阻塞至程序結束
+            if (Arrays.asList(args).contains("--monitor")) {
+                monitorService.monitor(dateArg != null ? LocalDate.parse(dateArg) : null);
+                return;
+            }
+            // 常駐 HTTP 查詢：阻塞至程序結束
+            if (Arrays.asList(args).contains("--serve")) {
+                httpService.serve(dateArg != null ? LocalDate.parse(dateArg) : null);
+                return;
+            }
+            LocalDate date = (dateArg != null)
+                    ? LocalDate.parse(dateArg)
                     : LocalDate.now();
 
+            // 多組資料庫：各組同時執行，輸出彙總
+            if (multiPairService.isConfigured()) {
+                runPairs(date, format);
+                return;
+            }
+
             // 查詢指示檔配信整體結果
             FileStatusResult r = reportService.queryByDate(date);
 
-            // 計算 NBITS 未取檔門市數量
-            int nbitsNotFetchedCount = nbitsDiffService.countNbitsDiff(date);
+            // 產生報表（兩個 sheet，資料列逐筆寫入）
+            Path reportPath = emergencyXlsxExportService.exportEmergencyReport(date, format);
 
-            // 產生 xlsx（兩個 sheet）
-            Path xlsxPath = emergencyXlsxExportService.exportEmergencyXlsx(date);
+            // NBITS 未取檔門市數量（差集與明細筆數在匯出時已依日期快取，這裡不再查詢也不建立資料列）
+            int nbitsNotFetchedCount = nbitsDiffService.countNbitsDiff(date);
+            // 差異查詢由備援資料庫回應時一併標示降級
+            r = r.withDegraded(nbitsDiffService.degradedNotes(date));
 
             // Console 輸出
-            System.out.println("===== 指示檔配信查詢結果 =====");
-            System.out.println(r.date());
-            System.out.println("指示檔配信門市總數: " + r.totalCount());
-            System.out.println("指示檔配信成功門市: " + r.successCount());
-            System.out.println("指示檔配信失敗門市: " + r.failCount());
-            System.out.println("NBITS取檔成功門市: " + r.nbitsSuccess());
-            System.out.println("NBITS未取檔門市: " + nbitsNotFetchedCount);
-            System.out.println("===============================");
-            // XLSX 實體輸出路徑
-            System.out.println("緊急復舊配信失敗門市 XLSX 輸出路徑: " + xlsxPath);
+            printSummary(r, nbitsNotFetchedCount, reportPath);
+            printDelta(date);
+
+            // 執行統計 JSON（與報表同目錄）
+            String baseName = reportPath.getFileName().toString().replaceFirst("\\.[a-z]+$", "");
+            writeMetrics(reportPath.resolveSibling(baseName + ".metrics.json"), Map.of("date", date.toString()));
 
         } catch (Exception ex) {
         	// 最外層防護：任何未攔截錯誤都視為錯誤
@@ -85,4 +166,126 @@ public class PgmreportApplication implements CommandLineRunner {
             ex.printStackTrace();
         }
     }
+
+    // 多日補跑：每個來源只查一次區間，逐日輸出結果
+    private void runBackfill(LocalDate from, LocalDate to, ReportFormat format) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("--to 不可早於 --from：" + from + " ~ " + to);
+        }
+        List<DailyReport> reports = backfillService.runRange(from, to, format);
+        for (DailyReport report : reports) {
+            printSummary(report.status(), report.nbitsNotFetchedCount(), report.reportPath());
+            printDelta(report.status().date());
+        }
+        String baseName = from.format(DateTimeFormatter.BASIC_ISO_DATE) + "-" + to.format(DateTimeFormatter.BASIC_ISO_DATE)
+                + "緊急復舊補跑";
+        writeMetrics(reports.get(0).reportPath().resolveSibling(baseName + ".metrics.json"),
+                Map.of("from", from.toString(), "to", to.toString()));
+    }
+
+    // 多組資料庫單日執行：逐組輸出結果，最後輸出各組加總
+    private void runPairs(LocalDate date, ReportFormat format) {
+        List<PairReport> reports = multiPairService.runDay(date, format);
+        int total = 0, success = 0, fail = 0, nbitsSuccess = 0, nbitsNotFetched = 0;
+        for (PairReport report : reports) {
+            System.out.println("########## [" + report.name() + "] ##########");
+            if (!report.ok()) {
+                System.err.println("[ERROR] [" + report.name() + "] " + report.error());
+                continue;
+            }
+            printSummary(report.status(), report.nbitsNotFetchedCount(), report.reportPath());
+            printDelta(report.delta());
+            System.out.println("執行統計 JSON 輸出路徑: " + report.metricsPath());
+            total += report.status().totalCount();
+            success += report.status().successCount();
+            fail += report.status().failCount();
+            nbitsSuccess += report.status().nbitsSuccess();
+            nbitsNotFetched += report.nbitsNotFetchedCount();
+        }
+
+        long failedPairs = reports.stream().filter(r -> !r.ok()).count();
+        System.out.println("===== 多組彙總（" + (reports.size() - failedPairs) + "/" + reports.size() + " 組成功）=====");
+        System.out.println(date);
+        System.out.println(String.format("%-12s %8s %8s %8s %8s %8s", "組合", "總數", "成功", "失敗", "NBITS成功", "NBITS未取"));
+        for (PairReport report : reports) {
+            FileStatusResult r = report.status();
+            System.out.println(report.ok()
+                    ? String.format("%-12s %8d %8d %8d %8d %8d", report.name(), r.totalCount(), r.successCount(),
+                            r.failCount(), r.nbitsSuccess(), report.nbitsNotFetchedCount())
+                    : String.format("%-12s %s", report.name(), "失敗：" + report.error()));
+        }
+        System.out.println(String.format("%-12s %8d %8d %8d %8d %8d", "合計", total, success, fail, nbitsSuccess, nbitsNotFetched));
+        System.out.println("===============================");
+    }
+
+    // 輸出執行統計（失敗不影響報表結果）
+    private void writeMetrics(Path file, Map<String, String> labels) {
+        try {
+            System.out.println("執行統計 JSON 輸出路徑: " + metrics.writeRunSummary(file, labels));
+        } catch (IOException ex) {
+            System.err.println("[WARN] 執行統計輸出失敗：" + ex.getMessage());
+        }
+    }
+
+    // Console 輸出單日結果
+    private void printSummary(FileStatusResult r, int nbitsNotFetchedCount, Path reportPath) {
+        System.out.println("===== 指示檔配信查詢結果 =====");
+        System.out.println(r.date());
+        System.out.println("指示檔配信門市總數: " + r.totalCount());
+        System.out.println("指示檔配信成功門市: " + r.successCount());
+        System.out.println("指示檔配信失敗門市: " + r.failCount());
+        System.out.println("NBITS取檔成功門市: " + r.nbitsSuccess());
+        System.out.println("NBITS未取檔門市: " + nbitsNotFetchedCount);
+        // 查詢失敗（計數以 0 表示）或由備援資料庫回應
+        for (String note : r.degraded()) {
+            System.out.println("[WARN] 結果降級：" + note);
+        }
+        System.out.println("===============================");
+        // 報表實體輸出路徑
+        System.out.println("緊急復舊配信失敗門市報表輸出路徑: " + reportPath);
+    }
+
+    // Console 輸出與前一天的差異（前一天沒有保存結果時略過）
+    private void printDelta(LocalDate date) {
+        try {
+            printDelta(resultStore.delta(date));
+        } catch (IOException ex) {
+            System.err.println("[WARN] 日對日差異讀取失敗：" + ex.getMessage());
+        }
+    }
+
+    private void printDelta(DailyDelta delta) {
+        if (delta == null) {
+            return;
+        }
+        System.out.println("===== 與前一天差異 =====");
+        printStoreDelta("指示檔配信失敗", delta.fail(), delta.chronicDays());
+        printStoreDelta("NBITS未取檔", delta.nbitsDiff(), delta.chronicDays());
+        System.out.println("===============================");
+    }
+
+    private void printStoreDelta(String label, StoreDelta d, int chronicDays) {
+        System.out.println(label + " 新增: " + d.newStores().size() + storeSample(d.newStores()));
+        System.out.println(label + " 恢復: " + d.recoveredStores().size() + storeSample(d.recoveredStores()));
+        System.out.println(label + " 連續 " + chronicDays + " 天: " + d.chronicStores().size() + storeSample(d.chronicStores()));
+    }
+
+    // 門市代碼只列前幾筆，避免大量異常時洗版
+    private static String storeSample(StoreKeySet stores) {
+        if (stores.isEmpty()) {
+            return "";
+        }
+        List<String> codes = stores.toStoreCodes();
+        String head = String.join(", ", codes.subList(0, Math.min(STORE_SAMPLE, codes.size())));
+        return " (" + head + (codes.size() > STORE_SAMPLE ? ", ..." : "") + ")";
+    }
+
+    // 取得 --name=value 形式的參數值（未指定回傳 null）
+    private static String option(String[] args, String prefix) {
+        return Arrays.stream(args)
+                .filter(a -> a.startsWith(prefix))
+                .map(a -> a.substring(prefix.length()))
+                .findFirst()
+                .orElse(null);
+    }
 }
@@ -1,64 +1,220 @@
-package pgmreport.config;
-
-import javax.sql.DataSource;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
-import org.springframework.boot.context.properties.ConfigurationProperties;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.core.JdbcTemplate;
-
- /* DataSource 設定類
- * 功能：
- * - 手動定義多組 DataSource（IGAL / NBITS）
- * - 搭配 JdbcTemplate 使用純 JDBC 查詢
- */
-
-//多資料庫連線與 JdbcTemplate 組態集中於此
-//讓 Spring 在啟動時載入此設定類並註冊 Bean
-@Configuration
-public class DataSourceConfig {
-
-    // ---------- IGAL ----------
-	// 註冊一個 DataSourceProperties Bean（名稱：igalDataSourceProperties）
-    @Bean
-    @ConfigurationProperties("spring.datasource.igal")
-    public DataSourceProperties igalDataSourceProperties() {
-        return new DataSourceProperties();
-    }
-    // 註冊一個 IGAL DataSource Bean（名稱：igalDataSource）
-    @Bean
-    public DataSource igalDataSource(
-            @Qualifier("igalDataSourceProperties") DataSourceProperties props) {
-        // 這行會把 url / username / password / driver-class-name 全部套到 DataSource
-        return props.initializeDataSourceBuilder().build();
-    }
-    // 註冊一個 IGAL JdbcTemplate Bean（名稱：igalJdbcTemplate）
-    @Bean
-    public JdbcTemplate igalJdbcTemplate(
-            @Qualifier("igalDataSource") DataSource ds) {
-        return new JdbcTemplate(ds);
-    }
-
-    // ---------- NBITS ----------
-    // 註冊一個 DataSourceProperties Bean（名稱：nbitsDataSourceProperties）
-    @Bean
-    @ConfigurationProperties("spring.datasource.nbits")
-    public DataSourceProperties nbitsDataSourceProperties() {
-        return new DataSourceProperties();
-    }
-    
-    // 註冊一個 NBITS DataSource Bean（名稱：nbitsDataSource）
-    @Bean 
-    public DataSource nbitsDataSource(
-            @Qualifier("nbitsDataSourceProperties") DataSourceProperties props) {
-        return props.initializeDataSourceBuilder().build();
-    }
-    
-    // 註冊一個 NBITS JdbcTemplate Bean（名稱：nbitsJdbcTemplate）
-    @Bean
-    public JdbcTemplate nbitsJdbcTemplate(
-            @Qualifier("nbitsDataSource") DataSource ds) {
-        return new JdbcTemplate(ds);
-    }
-}
+package pgmreport.config;
+
+import javax.sql.DataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StringUtils;
+
+import pgmreport.service.HedgedQueryExecutor;
+import pgmreport.service.StoreShardExecutor;
+
+ /* DataSource 設定類
+ * 功能：
+ * - 手動定義多組 DataSource（IGAL / NBITS）
+ * - 搭配 JdbcTemplate 使用純 JDBC 查詢
+ * - 連線池（Hikari）與 JdbcTemplate 參數各資料來源獨立設定：
+ *   spring.datasource.{igal|nbits}.hikari.*：連線數、唯讀、Oracle 隱式 Statement 快取、預設 row prefetch
+ *   spring.datasource.{igal|nbits}.jdbc.*：fetch size、查詢逾時
+ *   spring.datasource.{igal|nbits}.shard.*：門市分片查詢的分段數、同時執行數
+ *   spring.datasource.{igal|nbits}.hedge.*：單一查詢期限、備援對沖延遲（百分位）
+ *   spring.datasource.{igal|nbits}.standby.*：備援資料庫（選用；url / username / password / hikari.*）
+ */
+
+//多資料庫連線與 JdbcTemplate 組態集中於此
+//讓 Spring 在啟動時載入此設定類並註冊 Bean
+@Configuration
+public class DataSourceConfig {
+
+    // ---------- IGAL ----------
+	// 註冊一個 DataSourceProperties Bean（名稱：igalDataSourceProperties）
+    @Bean
+    @ConfigurationProperties("spring.datasource.igal")
+    public DataSourceProperties igalDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+    // 註冊一個 IGAL DataSource Bean（名稱：igalDataSource），連線池參數綁定 spring.datasource.igal.hikari
+    @Bean
+    @ConfigurationProperties("spring.datasource.igal.hikari")
+    public HikariDataSource igalDataSource(
+            @Qualifier("igalDataSourceProperties") DataSourceProperties props) {
+        // 這行會把 url / username / password / driver-class-name 全部套到 DataSource
+        return props.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+    // IGAL JdbcTemplate 調校參數（spring.datasource.igal.jdbc）
+    @Bean
+    @ConfigurationProperties("spring.datasource.igal.jdbc")
+    public JdbcTemplateSettings igalJdbcTemplateSettings() {
+        return new JdbcTemplateSettings();
+    }
+    // 註冊一個 IGAL JdbcTemplate Bean（名稱：igalJdbcTemplate）
+    @Bean
+    public JdbcTemplate igalJdbcTemplate(
+            @Qualifier("igalDataSource") DataSource ds,
+            @Qualifier("igalJdbcTemplateSettings") JdbcTemplateSettings settings) {
+        return newJdbcTemplate(ds, settings);
+    }
+    // IGAL 門市分片查詢參數（spring.datasource.igal.shard）
+    @Bean
+    @ConfigurationProperties("spring.datasource.igal.shard")
+    public StoreShardSettings igalStoreShardSettings() {
+        return new StoreShardSettings();
+    }
+    // IGAL 門市分片查詢執行器（名稱：igalStoreShards）
+    @Bean
+    public StoreShardExecutor igalStoreShards(
+            @Qualifier("igalStoreShardSettings") StoreShardSettings settings) {
+        return new StoreShardExecutor("IGAL", settings.getCount(), settings.getConcurrency());
+    }
+    // IGAL 備援資料庫（standby / replica）連線設定（spring.datasource.igal.standby；未設定 url 時不建立備援 DataSource）
+    @Bean
+    @ConfigurationProperties("spring.datasource.igal.standby")
+    public DataSourceProperties igalStandbyDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    /*
+     * IGAL 備援資料庫 DataSource（唯讀、小連線池），連線池參數綁定 spring.datasource.igal.standby.hikari
+     * - 是否建立在執行時依 url 判斷（不用 @ConditionalOnProperty：AOT 建置會在建置時固定條件結果）
+     * - 未設定 url 時回傳 null（不建立連線池，對沖執行器只套用期限）；hikari.* 在建立後才綁定（null Bean 無法綁定）
+     */
+    @Bean
+    public HikariDataSource igalStandbyDataSource(
+            @Qualifier("igalStandbyDataSourceProperties") DataSourceProperties props, Environment env) {
+        return standbyDataSource(props, "igal-standby-pool", env, "spring.datasource.igal.standby.hikari");
+    }
+
+    // IGAL 查詢期限 / 對沖參數（spring.datasource.igal.hedge）
+    @Bean
+    @ConfigurationProperties("spring.datasource.igal.hedge")
+    public HedgeSettings igalHedgeSettings() {
+        return new HedgeSettings();
+    }
+
+    // IGAL 查詢期限 / 備援對沖執行器（名稱：igalHedge；未設定備援時只套用期限）
+    @Bean
+    public HedgedQueryExecutor igalHedge(
+            @Qualifier("igalJdbcTemplate") JdbcTemplate primary,
+            @Qualifier("igalStandbyDataSource") ObjectProvider<DataSource> standby,
+            @Qualifier("igalJdbcTemplateSettings") JdbcTemplateSettings jdbcSettings,
+            @Qualifier("igalHedgeSettings") HedgeSettings settings) {
+        return newHedge("IGAL", primary, standby.getIfAvailable(), jdbcSettings, settings);
+    }
+
+    // ---------- NBITS ----------
+    // 註冊一個 DataSourceProperties Bean（名稱：nbitsDataSourceProperties）
+    @Bean
+    @ConfigurationProperties("spring.datasource.nbits")
+    public DataSourceProperties nbitsDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+    
+    // 註冊一個 NBITS DataSource Bean（名稱：nbitsDataSource），連線池參數綁定 spring.datasource.nbits.hikari
+    @Bean 
+    @ConfigurationProperties("spring.datasource.nbits.hikari")
+    public HikariDataSource nbitsDataSource(
+            @Qualifier("nbitsDataSourceProperties") DataSourceProperties props) {
+        return props.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+    
+    // NBITS JdbcTemplate 調校參數（spring.datasource.nbits.jdbc）
+    @Bean
+    @ConfigurationProperties("spring.datasource.nbits.jdbc")
+    public JdbcTemplateSettings nbitsJdbcTemplateSettings() {
+        return new JdbcTemplateSettings();
+    }
+    
+    // 註冊一個 NBITS JdbcTemplate Bean（名稱：nbitsJdbcTemplate）
+    @Bean
+    public JdbcTemplate nbitsJdbcTemplate(
+            @Qualifier("nbitsDataSource") DataSource ds,
+            @Qualifier("nbitsJdbcTemplateSettings") JdbcTemplateSettings settings) {
+        return newJdbcTemplate(ds, settings);
+    }
+
+    // NBITS 門市分片查詢參數（spring.datasource.nbits.shard）
+    @Bean
+    @ConfigurationProperties("spring.datasource.nbits.shard")
+    public StoreShardSettings nbitsStoreShardSettings() {
+        return new StoreShardSettings();
+    }
+
+    // NBITS 門市分片查詢執行器（名稱：nbitsStoreShards）
+    @Bean
+    public StoreShardExecutor nbitsStoreShards(
+            @Qualifier("nbitsStoreShardSettings") StoreShardSettings settings) {
+        return new StoreShardExecutor("NBITS", settings.getCount(), settings.getConcurrency());
+    }
+
+    // NBITS 備援資料庫（standby / replica）連線設定（spring.datasource.nbits.standby；未設定 url 時不建立備援 DataSource）
+    @Bean
+    @ConfigurationProperties("spring.datasource.nbits.standby")
+    public DataSourceProperties nbitsStandbyDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    // NBITS 備援資料庫 DataSource（同 IGAL：執行時依 url 決定是否建立），連線池參數綁定 spring.datasource.nbits.standby.hikari
+    @Bean
+    public HikariDataSource nbitsStandbyDataSource(
+            @Qualifier("nbitsStandbyDataSourceProperties") DataSourceProperties props, Environment env) {
+        return standbyDataSource(props, "nbits-standby-pool", env, "spring.datasource.nbits.standby.hikari");
+    }
+
+    // NBITS 查詢期限 / 對沖參數（spring.datasource.nbits.hedge）
+    @Bean
+    @ConfigurationProperties("spring.datasource.nbits.hedge")
+    public HedgeSettings nbitsHedgeSettings() {
+        return new HedgeSettings();
+    }
+
+    // NBITS 查詢期限 / 備援對沖執行器（名稱：nbitsHedge；未設定備援時只套用期限）
+    @Bean
+    public HedgedQueryExecutor nbitsHedge(
+            @Qualifier("nbitsJdbcTemplate") JdbcTemplate primary,
+            @Qualifier("nbitsStandbyDataSource") ObjectProvider<DataSource> standby,
+            @Qualifier("nbitsJdbcTemplateSettings") JdbcTemplateSettings jdbcSettings,
+            @Qualifier("nbitsHedgeSettings") HedgeSettings settings) {
+        return newHedge("NBITS", primary, standby.getIfAvailable(), jdbcSettings, settings);
+    }
+
+    // 建立備援 DataSource：預設唯讀、連線數 2，可由 standby.hikari.* 覆寫；未設定 url 時為 null
+    static HikariDataSource standbyDataSource(DataSourceProperties props, String poolName,
+                                              Environment env, String hikariPrefix) {
+        if (!StringUtils.hasText(props.getUrl())) {
+            return null;
+        }
+        HikariDataSource ds = props.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName(poolName);
+        ds.setReadOnly(true);
+        ds.setMaximumPoolSize(2);
+        ds.setMinimumIdle(0);
+        Binder.get(env).bind(hikariPrefix, Bindable.ofInstance(ds));
+        return ds;
+    }
+
+    // 建立期限 / 對沖執行器：備援查詢沿用主庫的 fetch size / 查詢逾時，同時進行的備援查詢數以備援連線池大小為上限
+    static HedgedQueryExecutor newHedge(String source, JdbcTemplate primary, DataSource standby,
+                                        JdbcTemplateSettings jdbcSettings, HedgeSettings settings) {
+        return new HedgedQueryExecutor(source, primary,
+                standby == null ? null : newJdbcTemplate(standby, jdbcSettings),
+                standby instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize() : 2,
+                settings.getDeadlineSeconds(), settings.getPercentile(), settings.getMinDelayMillis(),
+                settings.getInitialDelayMillis(), settings.getWindow());
+    }
+
+    // 建立 JdbcTemplate 並套用 fetch size / 查詢逾時
+    static JdbcTemplate newJdbcTemplate(DataSource ds, JdbcTemplateSettings settings) {
+        JdbcTemplate template = new JdbcTemplate(ds);
+        template.setFetchSize(settings.getFetchSize());
+        template.setQueryTimeout(settings.getQueryTimeout());
+        return template;
+    }
+}
@@ -0,0 +1,64 @@
+package pgmreport.config;
+
+/*
+ * 查詢期限與備援對沖參數（每個資料來源各一組）
+ * - 綁定 spring.datasource.{igal|nbits}.hedge.*
+ * - deadlineSeconds：單一查詢（含備援）的總期限，0 = 不限制
+ * - percentile：主庫超過近期耗時的第幾百分位仍未回應時送出備援查詢
+ * - minDelayMillis：對沖延遲下限（避免快速查詢也同時打兩邊）
+ * - initialDelayMillis：近期樣本不足時的對沖延遲
+ * - window：每種查詢保留的近期耗時樣本數
+ */
+public class HedgeSettings {
+
+    // 查詢總期限（秒）
+    private long deadlineSeconds = 300;
+    // 對沖百分位
+    private int percentile = 95;
+    // 對沖延遲下限（毫秒）
+    private long minDelayMillis = 500;
+    // 樣本不足時的對沖延遲（毫秒）
+    private long initialDelayMillis = 10_000;
+    // 近期耗時樣本數
+    private int window = 64;
+
+    public long getDeadlineSeconds() {
+        return deadlineSeconds;
+    }
+
+    public void setDeadlineSeconds(long deadlineSeconds) {
+        this.deadlineSeconds = deadlineSeconds;
+    }
+
+    public int getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(int percentile) {
+        this.percentile = percentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public void setMinDelayMillis(long minDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public void setInitialDelayMillis(long initialDelayMillis) {
+        this.initialDelayMillis = initialDelayMillis;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+}
@@ -4,9 +4,9 @@ package pgmreport.config;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 
-//載入外部 app.ini 至 Spring Environment
+//載入外部 app.ini 至 Spring Environment（路徑可用 -Dpgmreport.ini=... 覆寫，例如 CDS / AOT 建置時）
 @Configuration
-@PropertySource("file:C:\\Users\\igaluser\\Desktop\\thomas\\pgmreport20251202\\app.ini")
+@PropertySource("file:${pgmreport.ini:C:\\Users\\igaluser\\Desktop\\thomas\\pgmreport20251202\\app.ini}")
 public class IniConfig {
 	// 僅負責載入設定檔，無需宣告 Bean
 }
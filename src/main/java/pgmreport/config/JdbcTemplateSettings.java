@@ -0,0 +1,31 @@
+package pgmreport.config;
+
+/*
+ * JdbcTemplate 調校參數（每個資料來源各一組）
+ * - 綁定 spring.datasource.{igal|nbits}.jdbc.*
+ * - fetchSize：每次網路往返取回的列數（ojdbc8 預設僅 10 列）
+ * - queryTimeout：單一 SQL 逾時秒數（0 = 不限制）
+ */
+public class JdbcTemplateSettings {
+
+    // 每次往返取回列數
+    private int fetchSize = 500;
+    // 查詢逾時（秒）
+    private int queryTimeout = 0;
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public void setQueryTimeout(int queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+}
@@ -0,0 +1,31 @@
+package pgmreport.config;
+
+/*
+ * 門市分片查詢參數（每個資料來源各一組）
+ * - 綁定 spring.datasource.{igal|nbits}.shard.*
+ * - count：門市代碼切成幾段（1 = 不分片）
+ * - concurrency：同時執行的分段數（需小於連線池 maximum-pool-size）
+ */
+public class StoreShardSettings {
+
+    // 分段數
+    private int count = 1;
+    // 同時執行分段數
+    private int concurrency = 2;
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+}
@@ -0,0 +1,47 @@
+package pgmreport.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/*
+ * 原子寫檔
+ * - 先寫到同目錄下的暫存檔（.<檔名>.xxxx.tmp），寫完再一次搬到目標路徑
+ * - 目標路徑只會是「舊的完整檔案」或「新的完整檔案」，不會出現寫到一半的檔案
+ * - 暫存檔與目標在同一目錄（同一檔案系統），可使用 ATOMIC_MOVE；不支援時退回一般覆寫搬移
+ */
+final class AtomicFileWrite {
+
+    private AtomicFileWrite() {
+    }
+
+    // 建立目標檔對應的暫存檔
+    static Path tempFileFor(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        return Files.createTempFile(dir, "." + target.getFileName(), ".tmp");
+    }
+
+    // 寫出整個 UTF-8 文字檔（JSON 摘要等）：寫暫存檔 → 搬到目標路徑，失敗時清除暫存檔
+    static void writeString(Path target, String content) throws IOException {
+        Path temp = tempFileFor(target);
+        try {
+            Files.writeString(temp, content, StandardCharsets.UTF_8);
+            commit(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);  // 已搬移時為 no-op
+        }
+    }
+
+    // 暫存檔搬到目標路徑（覆寫既有檔案）
+    static void commit(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package pgmreport.service;
+
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.FileStatusReportService.FileStatusResult;
+import pgmreport.service.SourceQueryExecutor.SourceTask;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * 多日補跑服務（--from / --to）
+ * - 每個來源只對整個區間查詢一次（SQL 依日期 GROUP BY），不再每天重跑一次批次
+ * - 查詢結果在記憶體依日期拆分，各日報表並行產出
+ */
+@Service
+public class BackfillReportService {
+
+    private final FileStatusReportService reportService;
+    private final FailStoreExportService failStoreService;
+    private final NbitsDiffExportService nbitsDiffService;
+    private final XlsxExportService xlsxExportService;
+    private final SourceQueryExecutor queryExecutor;
+
+    public BackfillReportService(FileStatusReportService reportService,
+                                 FailStoreExportService failStoreService,
+                                 NbitsDiffExportService nbitsDiffService,
+                                 XlsxExportService xlsxExportService,
+                                 SourceQueryExecutor queryExecutor) {
+        this.reportService = reportService;
+        this.failStoreService = failStoreService;
+        this.nbitsDiffService = nbitsDiffService;
+        this.xlsxExportService = xlsxExportService;
+        this.queryExecutor = queryExecutor;
+    }
+
+    // 補跑 [from, to]（含首尾），回傳每一天的結果（依日期遞增）
+    public List<DailyReport> runRange(LocalDate from, LocalDate to, ReportFormat format) {
+        ReportDateRange range = ReportDateRange.ofDays(from, to);
+
+        // 1. 三組區間查詢同時送出：配信計數、失敗門市、NBITS 差異
+        SourceTask<List<FileStatusResult>> statusTask =
+                queryExecutor.submit("STATUS", () -> reportService.queryByRange(range));
+        SourceTask<Map<LocalDate, List<FailStoreExportService.FailStoreRow>>> failTask =
+                queryExecutor.submit("IGAL", () -> failStoreService.findFailStoresByDay(range));
+        SourceTask<Map<LocalDate, List<NbitsDiffExportService.Row>>> diffTask =
+                queryExecutor.submit("NBITS-DIFF", () -> nbitsDiffService.findNbitsDiffRowsByDay(range));
+
+        List<FileStatusResult> statuses = statusTask.join();
+        Map<LocalDate, List<FailStoreExportService.FailStoreRow>> failByDay = failTask.join();
+        Map<LocalDate, List<NbitsDiffExportService.Row>> diffByDay = diffTask.join();
+
+        // 2. 各日報表並行產出
+        List<SourceTask<Path>> exportTasks = new ArrayList<>();
+        for (FileStatusResult status : statuses) {
+            LocalDate day = status.date();
+            exportTasks.add(queryExecutor.submit(format.name() + "-" + day, () -> xlsxExportService.exportEmergencyReport(
+                    day, format, failByDay.get(day), diffByDay.get(day))));
+        }
+
+        // 3. 組合每日結果
+        List<DailyReport> reports = new ArrayList<>(statuses.size());
+        for (int i = 0; i < statuses.size(); i++) {
+            FileStatusResult status = statuses.get(i);
+            reports.add(new DailyReport(status,
+                    diffByDay.get(status.date()).size(),
+                    exportTasks.get(i).join()));
+        }
+        return reports;
+    }
+
+    // 單日補跑結果：配信彙總、NBITS 未取檔筆數、報表路徑
+    public record DailyReport(FileStatusResult status, int nbitsNotFetchedCount, Path reportPath) {}
+}
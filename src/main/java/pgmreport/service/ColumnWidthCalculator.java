@@ -0,0 +1,85 @@
+package pgmreport.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+
+/*
+ * 欄寬計算器（取代 Sheet.autoSizeColumn）
+ * - 寫入資料列時順便記錄每欄最長的顯示寬度，寫完後一次套用固定欄寬
+ * - 不使用 AWT 字型量測：大量資料時速度快很多，headless 容器也不需載入字型子系統
+ * - 中日韓文字與全形字元以 2 個字元寬計算（中文表頭 / Sheet 名稱不會被截斷）
+ * - 串流模式（SXSSF）已寫出的列仍可計入，因為寬度在寫入當下就記錄
+ */
+public class ColumnWidthCalculator {
+
+    // Excel 欄寬上限（字元數）
+    private static final int MAX_WIDTH_CHARS = 255;
+    // 左右留白（字元數），與 autoSizeColumn 的視覺效果接近
+    private static final int PADDING_CHARS = 2;
+
+    // 每欄目前最長的顯示寬度（字元數）
+    private final int[] maxChars;
+
+    public ColumnWidthCalculator(int columnCount) {
+        this.maxChars = new int[columnCount];
+    }
+
+    // 記錄一格內容
+    public void accept(int column, String value) {
+        if (value == null || column >= maxChars.length) {
+            return;
+        }
+        int width = displayWidth(value);
+        if (width > maxChars[column]) {
+            maxChars[column] = width;
+        }
+    }
+
+    // 記錄一整列（依欄位順序）
+    public void acceptRow(String... values) {
+        for (int i = 0; i < values.length; i++) {
+            accept(i, values[i]);
+        }
+    }
+
+    // 指定欄的建議寬度（字元數，含留白）
+    public int widthChars(int column) {
+        return Math.min(MAX_WIDTH_CHARS, maxChars[column] + PADDING_CHARS);
+    }
+
+    // 套用到 Sheet；minChars 為各欄最小寬度（可為空陣列）
+    public void applyTo(Sheet sheet, int[] minChars) {
+        for (int i = 0; i < maxChars.length; i++) {
+            int chars = widthChars(i);
+            if (i < minChars.length) {
+                chars = Math.max(chars, minChars[i]);
+            }
+            sheet.setColumnWidth(i, chars * 256); // Excel 欄寬單位為 1/256 字元
+        }
+    }
+
+    // 字串顯示寬度：全形 / CJK 字元算 2，其餘算 1
+    static int displayWidth(String value) {
+        int width = 0;
+        for (int i = 0; i < value.length(); ) {
+            int cp = value.codePointAt(i);
+            width += isWide(cp) ? 2 : 1;
+            i += Character.charCount(cp);
+        }
+        return width;
+    }
+
+    // 是否為全形字元（CJK 表意文字、假名、諺文、全形標點與符號）
+    private static boolean isWide(int cp) {
+        if (cp < 0x1100) {
+            return false; // ASCII / 拉丁字母快速路徑
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL
+                || (cp >= 0x3000 && cp <= 0x303F)   // CJK 標點符號
+                || (cp >= 0xFF01 && cp <= 0xFF60)   // 全形 ASCII
+                || (cp >= 0xFFE0 && cp <= 0xFFE6);  // 全形符號
+    }
+}
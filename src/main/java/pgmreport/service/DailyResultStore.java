@@ -0,0 +1,141 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/*
+ * 每日結果保存與日對日差異
+ * - 每天一個二進位檔（<dir>/yyyyMMdd.stores）：配信失敗門市集合 + NBITS 未取檔門市集合（StoreKeySet）
+ * - 檔案只新增不修改；同一天重跑時以原子搬移整檔置換
+ * - 差異只讀本機檔案，不再回 Oracle 查歷史日期：
+ *   新增（今天有、昨天沒有）/ 恢復（昨天有、今天沒有）/ 持續（連續 N 天都有，含今天）
+ */
+@Component
+public class DailyResultStore {
+
+    private static final DateTimeFormatter DATE_YYYYMMDD = DateTimeFormatter.BASIC_ISO_DATE;
+    // 檔案識別碼 "PGMD" 與格式版本
+    private static final int MAGIC = 0x50474D44;
+    private static final int VERSION = 1;
+
+    // 是否啟用
+    private final boolean enabled;
+    // 保存目錄
+    private final Path dir;
+    // 「持續」的連續天數（含今天）
+    private final int chronicDays;
+
+    public DailyResultStore(
+            @Value("${report.result-store.enabled:true}") boolean enabled,
+            @Value("${report.result-store.dir:${report.xlsx.output-dir}/results}") String dir,
+            @Value("${report.result-store.chronic-days:3}") int chronicDays) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.chronicDays = Math.max(2, chronicDays);
+    }
+
+    // 停用（測試 / 不保存結果時）
+    public static DailyResultStore disabled() {
+        return new DailyResultStore(false, ".", 3);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 保存當日結果（停用時不做任何事）
+    public void save(LocalDate day, StoreKeySet failStores, StoreKeySet nbitsDiffStores) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path file = fileOf(day);
+        Path temp = AtomicFileWrite.tempFileFor(file);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(day.toEpochDay());
+                failStores.writeTo(out);
+                nbitsDiffStores.writeTo(out);
+            }
+            AtomicFileWrite.commit(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // 讀回某日結果（沒有檔案時回傳 null）
+    public DayResult load(LocalDate day) throws IOException {
+        Path file = fileOf(day);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != day.toEpochDay()) {
+                throw new IOException("每日結果檔格式不符：" + file);
+            }
+            return new DayResult(day, StoreKeySet.readFrom(in), StoreKeySet.readFrom(in));
+        }
+    }
+
+    /*
+     * 計算 day 與前一天的差異
+     * - 停用、當天或前一天沒有結果時回傳 null
+     * - 持續：往前最多 chronicDays - 1 天取交集，遇到缺檔的日期就停止（實際天數記在 chronicDays）
+     */
+    public DailyDelta delta(LocalDate day) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        DayResult today = load(day);
+        DayResult previous = load(day.minusDays(1));
+        if (today == null || previous == null) {
+            return null;
+        }
+
+        StoreKeySet chronicFail = today.failStores().intersect(previous.failStores());
+        StoreKeySet chronicDiff = today.nbitsDiffStores().intersect(previous.nbitsDiffStores());
+        int days = 2;
+        while (days < chronicDays) {
+            DayResult earlier = load(day.minusDays(days));
+            if (earlier == null) {
+                break;
+            }
+            chronicFail = chronicFail.intersect(earlier.failStores());
+            chronicDiff = chronicDiff.intersect(earlier.nbitsDiffStores());
+            days++;
+        }
+
+        return new DailyDelta(day, days,
+                new StoreDelta(today.failStores().minus(previous.failStores()),
+                        previous.failStores().minus(today.failStores()),
+                        chronicFail),
+                new StoreDelta(today.nbitsDiffStores().minus(previous.nbitsDiffStores()),
+                        previous.nbitsDiffStores().minus(today.nbitsDiffStores()),
+                        chronicDiff));
+    }
+
+    private Path fileOf(LocalDate day) {
+        return dir.resolve(day.format(DATE_YYYYMMDD) + ".stores");
+    }
+
+    // 單日結果
+    public record DayResult(LocalDate day, StoreKeySet failStores, StoreKeySet nbitsDiffStores) {}
+
+    // 單一類別的差異：新增 / 恢復 / 持續
+    public record StoreDelta(StoreKeySet newStores, StoreKeySet recoveredStores, StoreKeySet chronicStores) {}
+
+    // 日對日差異（chronicDays：持續判定實際使用的連續天數）
+    public record DailyDelta(LocalDate day, int chronicDays, StoreDelta fail, StoreDelta nbitsDiff) {}
+}
@@ -0,0 +1,161 @@
+package pgmreport.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * CSV / TSV 串流輸出
+ * - 單一檔案，第一欄為 Sheet 名稱（SHEET,TRM_ID,DLF_IP1,ADSL_1），下游腳本依第一欄分組
+ * - 統計 Sheet（表頭與門市明細不同）先輸出一列「Sheet 名稱 + 該 Sheet 表頭」，其後為「Sheet 名稱 + 標籤 + 數值」
+ * - UTF-8 含 BOM，行尾 CRLF
+ * - 每列編碼進固定大小的 ByteBuffer，滿了才寫入 FileChannel，記憶體用量與資料筆數無關
+ * - 寫到同目錄暫存檔，finish 時才原子搬移到目標路徑；未 finish 就 close 時刪除暫存檔
+ * - CSV：含逗號 / 雙引號 / 換行的欄位以雙引號包起來（RFC 4180）
+ * - TSV：無跳脫規則，欄位內的 Tab / 換行以空白取代
+ */
+final class DelimitedReportWriter implements ReportWriter {
+
+    private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final char delimiter;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    // 單列組字用（重複使用）
+    private final StringBuilder line = new StringBuilder(128);
+    private String sheetName;
+
+    DelimitedReportWriter(Path file, char delimiter) throws IOException {
+        this.target = file;
+        this.temp = AtomicFileWrite.tempFileFor(file);
+        this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.delimiter = delimiter;
+        buffer.put(UTF8_BOM);
+        writeLine("SHEET", "TRM_ID", "DLF_IP1", "ADSL_1");
+    }
+
+    @Override
+    public void startSheet(String sheetName, String... headers) throws IOException {
+        this.sheetName = sheetName;
+        if (!Arrays.equals(headers, STORE_HEADERS)) {
+            String[] cells = new String[headers.length + 1];
+            cells[0] = sheetName;
+            System.arraycopy(headers, 0, cells, 1, headers.length);
+            writeLine(cells);
+        }
+    }
+
+    @Override
+    public void row(String trmId, String dlfIp1, String adsl1) {
+        try {
+            writeLine(sheetName, trmId, dlfIp1, adsl1);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void countRow(String label, long... counts) {
+        String[] cells = new String[counts.length + 2];
+        cells[0] = sheetName;
+        cells[1] = label;
+        for (int i = 0; i < counts.length; i++) {
+            cells[i + 2] = Long.toString(counts[i]);
+        }
+        try {
+            writeLine(cells);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+        AtomicFileWrite.commit(temp, target);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(temp);  // 已搬移時為 no-op
+    }
+
+    private void writeLine(String... cells) throws IOException {
+        line.setLength(0);
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                line.append(delimiter);
+            }
+            appendCell(cells[i]);
+        }
+        line.append("\r\n");
+
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        encoder.reset();
+    }
+
+    private void appendCell(String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (delimiter == '\t') {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                line.append(c == '\t' || c == '\r' || c == '\n' ? ' ' : c);
+            }
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == delimiter || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
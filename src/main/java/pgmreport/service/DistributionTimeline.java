@@ -0,0 +1,155 @@
+package pgmreport.service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/*
+ * 單日配信進度時段分佈（每 bucketMinutes 分鐘一格）
+ * - 配信成功 / 配信失敗 / NBITS 取檔成功各一個固定長度的 long[]，累加時只做陣列索引，不建立任何物件
+ * - 時間以「當日第幾秒」表示（SQL 端 TO_CHAR(..., 'SSSSS')），不經 Timestamp / LocalDateTime
+ * - 各格加總與 FileStatusResult 的成功數 / 失敗數 / NBITS 取檔成功數一致
+ * - 非執行緒安全：分片時每段各自累加，再以 merge 合併
+ */
+public final class DistributionTimeline {
+
+    public static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final LocalDate date;
+    // 每格分鐘數
+    private final int bucketMinutes;
+    private final int bucketSeconds;
+    private final long[] delivered;
+    private final long[] failed;
+    private final long[] nbitsFetched;
+
+    public DistributionTimeline(LocalDate date, int bucketMinutes) {
+        this.date = date;
+        this.bucketMinutes = checkBucketMinutes(bucketMinutes);
+        this.bucketSeconds = bucketMinutes * 60;
+        int buckets = (SECONDS_PER_DAY + bucketSeconds - 1) / bucketSeconds;  // 無法整除時最後一格較短
+        this.delivered = new long[buckets];
+        this.failed = new long[buckets];
+        this.nbitsFetched = new long[buckets];
+    }
+
+    // IGAL 一列：配信成功 / 失敗筆數（JOIN 命中數，與 FileStatusReportService 計數語意一致）
+    public void addIgal(int secondOfDay, long deliveredCount, long failedCount) {
+        int b = bucket(secondOfDay);
+        delivered[b] += deliveredCount;
+        failed[b] += failedCount;
+    }
+
+    // NBITS 一列取檔成功記錄
+    public void addNbits(int secondOfDay) {
+        addNbits(secondOfDay, 1);
+    }
+
+    // NBITS 取檔成功筆數（已彙總的計數）
+    public void addNbits(int secondOfDay, long fetchedCount) {
+        nbitsFetched[bucket(secondOfDay)] += fetchedCount;
+    }
+
+    // 檢查每格分鐘數（1 ~ 1440）
+    public static int checkBucketMinutes(int bucketMinutes) {
+        if (bucketMinutes < 1 || bucketMinutes > 24 * 60) {
+            throw new IllegalArgumentException("時段分鐘數需介於 1 ~ 1440：" + bucketMinutes);
+        }
+        return bucketMinutes;
+    }
+
+    // 合併另一段（同日期、同時段長度）的計數
+    public void merge(DistributionTimeline other) {
+        if (other.bucketMinutes != bucketMinutes) {
+            throw new IllegalArgumentException("時段長度不同，無法合併：" + bucketMinutes + " / " + other.bucketMinutes);
+        }
+        for (int i = 0; i < delivered.length; i++) {
+            delivered[i] += other.delivered[i];
+            failed[i] += other.failed[i];
+            nbitsFetched[i] += other.nbitsFetched[i];
+        }
+    }
+
+    public LocalDate date() {
+        return date;
+    }
+
+    public int bucketMinutes() {
+        return bucketMinutes;
+    }
+
+    public int bucketCount() {
+        return delivered.length;
+    }
+
+    public long delivered(int bucket) {
+        return delivered[bucket];
+    }
+
+    public long failed(int bucket) {
+        return failed[bucket];
+    }
+
+    public long nbitsFetched(int bucket) {
+        return nbitsFetched[bucket];
+    }
+
+    public long totalDelivered() {
+        return sum(delivered);
+    }
+
+    public long totalFailed() {
+        return sum(failed);
+    }
+
+    public long totalNbitsFetched() {
+        return sum(nbitsFetched);
+    }
+
+    // 該格起始時間
+    public LocalTime bucketStart(int bucket) {
+        return LocalTime.ofSecondOfDay((long) bucket * bucketSeconds);
+    }
+
+    // 顯示用時段標籤（HH:mm-HH:mm，最後一格結束為 24:00）
+    public String label(int bucket) {
+        int end = Math.min(SECONDS_PER_DAY, (bucket + 1) * bucketSeconds);
+        return bucketStart(bucket) + "-" + (end == SECONDS_PER_DAY ? "24:00" : LocalTime.ofSecondOfDay(end).toString());
+    }
+
+    // 輸出 JSON（各格 + 合計）
+    public String toJson() {
+        JsonWriter json = new JsonWriter().beginObject()
+                .field("date", date.toString())
+                .field("bucketMinutes", bucketMinutes);
+        json.name("buckets").beginArray();
+        for (int i = 0; i < delivered.length; i++) {
+            json.beginObject()
+                    .field("start", bucketStart(i).toString())
+                    .field("delivered", delivered[i])
+                    .field("failed", failed[i])
+                    .field("nbitsFetched", nbitsFetched[i])
+                    .endObject();
+        }
+        json.endArray();
+        json.name("total").beginObject()
+                .field("delivered", totalDelivered())
+                .field("failed", totalFailed())
+                .field("nbitsFetched", totalNbitsFetched())
+                .endObject();
+        return json.endObject().toString();
+    }
+
+    // 當日第幾秒 → 格索引（超出範圍的值夾在第一格 / 最後一格）
+    private int bucket(int secondOfDay) {
+        int s = Math.max(0, Math.min(SECONDS_PER_DAY - 1, secondOfDay));
+        return s / bucketSeconds;
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long v : values) {
+            total += v;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,69 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.SourceQueryExecutor.SourceTask;
+
+import java.time.LocalDate;
+
+/*
+ * 配信進度時段分佈查詢服務
+ * - IGAL：取自 IgalScanService 的單次掃描（每分鐘配信成功 / 失敗筆數），不另外掃描 send_file_kanri
+ * - NBITS：取自 NbitsScanService 的單次掃描（每分鐘取檔成功筆數），不另外掃描 nbit_dllog
+ * - 兩邊的掃描都以每分鐘累加，這裡再依 bucket-minutes 併成報表時段；快取命中時完全不查 DB
+ * - report.timeline.enabled=false 時報表不輸出時段分佈
+ */
+@Service
+public class DistributionTimelineService {
+
+    // IGAL 單次掃描（配信成功 / 失敗的每分鐘筆數）
+    private final IgalScanService igalScan;
+    // NBITS 單次掃描（取檔成功的每分鐘筆數）
+    private final NbitsScanService nbitsScan;
+    private final SourceQueryExecutor queryExecutor;
+    // 是否輸出時段分佈
+    private final boolean enabled;
+    // 預設每格分鐘數
+    private final int bucketMinutes;
+
+    public DistributionTimelineService(
+            IgalScanService igalScan,
+            NbitsScanService nbitsScan,
+            SourceQueryExecutor queryExecutor,
+            @Value("${report.timeline.enabled:true}") boolean enabled,
+            @Value("${report.timeline.bucket-minutes:60}") int bucketMinutes) {
+        this.igalScan = igalScan;
+        this.nbitsScan = nbitsScan;
+        this.queryExecutor = queryExecutor;
+        this.enabled = enabled;
+        this.bucketMinutes = DistributionTimeline.checkBucketMinutes(bucketMinutes);  // 啟動時即檢查時段設定
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 依預設時段長度查詢單日分佈
+    public DistributionTimeline timeline(LocalDate date) {
+        return timeline(date, bucketMinutes);
+    }
+
+    // 查詢單日分佈：IGAL / NBITS 各自取自單次掃描（尚未掃描時同時送出），再合併
+    public DistributionTimeline timeline(LocalDate date, int minutes) {
+        SourceTask<DistributionTimeline> igalTask = queryExecutor.submit("IGAL", () -> {
+            DistributionTimeline part = new DistributionTimeline(date, minutes);
+            igalScan.scanDay(date).addTimelineTo(part);
+            return part;
+        });
+        SourceTask<DistributionTimeline> nbitsTask = queryExecutor.submit("NBITS", () -> {
+            DistributionTimeline part = new DistributionTimeline(date, minutes);
+            nbitsScan.scanDay(date).addTimelineTo(part);
+            return part;
+        });
+
+        DistributionTimeline timeline = igalTask.join();
+        timeline.merge(nbitsTask.join());
+        return timeline;
+    }
+}
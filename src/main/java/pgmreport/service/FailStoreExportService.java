@@ -1,62 +1,197 @@
-package pgmreport.service;
-
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.stereotype.Service;
-
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-
-//指示檔配信失敗門市查詢服務（IGAL）
-@Service
-public class FailStoreExportService {
-	//日期格式：yyyyMMdd
-    private static final DateTimeFormatter DATE_YYYYMMDD =
-            DateTimeFormatter.BASIC_ISO_DATE; // yyyyMMdd
-    // IGAL 資料庫 JdbcTemplate
-    private final JdbcTemplate igalJdbc;
-    // 輸出目錄（目前僅保留設定，不一定使用）
-    private final Path outputDir; 
-
-    public FailStoreExportService(
-            @Qualifier("igalJdbcTemplate") JdbcTemplate igalJdbcTemplate,
-            @Value("${report.xlsx.output-dir}") String outputDir) {
-
-        this.igalJdbc = igalJdbcTemplate;
-        this.outputDir = Paths.get(outputDir);
-    }
-
-    // 依日期查詢「指示檔配信失敗門市」清單（提供給 Excel 匯出）
-    public List<FailStoreRow> findFailStores(LocalDate date) {
-        String dateStr = date.format(DATE_YYYYMMDD); // 20230109
-        return queryFailStores(dateStr);
-    }
-
-    // 實際執行 SQL 查詢
-    private List<FailStoreRow> queryFailStores(String dateYmd) {
-        String sql = """
-            SELECT A.trm_id, B.dlf_ip1, B.adsl_1
-            FROM send_file_kanri A
-            JOIN ig_ui_sc_t B
-              ON A.trm_id = '00' || B.store
-            WHERE A.unyo_f_name LIKE 'SDCDGETR%%'
-              AND A.file_sts = '7'
-              AND TO_CHAR(A.kidou_date, 'YYYYMMDD') = ?
-            """;
-
-        return igalJdbc.query(sql,
-                (rs, rowNum) -> new FailStoreRow(
-                        rs.getString("trm_id"),
-                        rs.getString("dlf_ip1"),
-                        rs.getString("adsl_1")
-                ),
-                dateYmd);
-    }
-
-    // 查詢結果用 DTO
-    public record FailStoreRow(String trmId, String dlfIp1, String adsl1) {}
-}
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * 指示檔配信失敗門市查詢服務（IGAL）
+ * - 失敗門市（file_sts = '7' 且 trm_id = '00' || store 有命中）取自 IgalScanService 的單次掃描，
+ *   與配信計數、成功門市共用同一次讀取，不再另外掃描 send_file_kanri
+ * - 掃描結果只保存門市與失敗次數；DLF_IP1 / ADSL_1 在輸出時才依門市查找（門市主檔快取或 ig_ui_sc_t 分批查詢），
+ *   逐筆交給輸出端，記憶體與明細筆數無關
+ * - 每筆失敗記錄輸出該門市的所有主檔列（與原本 JOIN 相同），依門市代碼遞增輸出
+ */
+@Service
+public class FailStoreExportService {
+    /*
+     * store 為 NULL 的主檔列
+     * - Oracle 的 '00' || NULL = '00'：trm_id = '00' 的失敗記錄會命中這些列，失敗門市鍵值為空字串
+     * - 門市主檔快取以空字串索引 NULL store，結果相同
+     */
+    private static final String NULL_STORE_DETAIL_SQL = """
+            SELECT dlf_ip1, adsl_1
+            FROM ig_ui_sc_t
+            WHERE store IS NULL
+            """;
+
+    // IGAL 單次掃描
+    private final IgalScanService igalScan;
+    // IGAL 資料庫 JdbcTemplate（門市明細查詢）
+    private final JdbcTemplate igalJdbc;
+    // ig_ui_sc_t 門市主檔快取
+    private final StoreMasterCache storeMaster;
+    // 查詢量測
+    private final ReportMetrics metrics;
+    // 門市明細 SQL（依批次大小快取）
+    private final Map<Integer, String> storeDetailSql = new ConcurrentHashMap<>();
+
+    public FailStoreExportService(
+            IgalScanService igalScan,
+            @Qualifier("igalJdbcTemplate") JdbcTemplate igalJdbcTemplate,
+            StoreMasterCache storeMaster,
+            ReportMetrics metrics) {
+
+        this.igalScan = igalScan;
+        this.igalJdbc = igalJdbcTemplate;
+        this.storeMaster = storeMaster;
+        this.metrics = metrics;
+    }
+
+    // 依日期查詢「指示檔配信失敗門市」清單（提供給 Excel 匯出）
+    public List<FailStoreRow> findFailStores(LocalDate date) {
+        List<FailStoreRow> rows = new ArrayList<>();
+        streamFailStores(date, (trmId, dlfIp1, adsl1) -> rows.add(new FailStoreRow(trmId, dlfIp1, adsl1)));
+        return rows;
+    }
+
+    /*
+     * 依日期區間查詢失敗門市，依日期分組（補跑用；區間內每一天都有清單，無資料為空）
+     * - 所有日期的失敗門市合併後只查一次明細，再依日期與失敗次數展開
+     */
+    public Map<LocalDate, List<FailStoreRow>> findFailStoresByDay(ReportDateRange range) {
+        Map<LocalDate, IgalDayScan> scans = igalScan.scan(range).value();
+        StoreKeyCounts union = StoreKeyCounts.empty();
+        for (IgalDayScan scan : scans.values()) {
+            union = union.merge(scan.failStores());
+        }
+        Map<String, List<FailStoreRow>> detailsByStore = new HashMap<>();
+        forEachDetail(union, (store, times, trmId, dlfIp1, adsl1) ->
+                detailsByStore.computeIfAbsent(store, k -> new ArrayList<>()).add(new FailStoreRow(trmId, dlfIp1, adsl1)));
+
+        Map<LocalDate, List<FailStoreRow>> byDay = new LinkedHashMap<>();
+        for (LocalDate day : range.days()) {
+            List<FailStoreRow> rows = new ArrayList<>();
+            scans.get(day).failStores().forEach((store, times) -> {
+                for (FailStoreRow detail : detailsByStore.getOrDefault(store, List.of())) {
+                    rows.addAll(Collections.nCopies(times, detail));
+                }
+            });
+            byDay.put(day, rows);
+        }
+        return byDay;
+    }
+
+    /*
+     * 依日期串流「指示檔配信失敗門市」（提供給串流 Excel 匯出）
+     * - 明細每讀到一筆就直接交給 sink（失敗 n 次的門市每筆明細連續輸出 n 份），不建立 FailStoreRow 與 List
+     * - 回傳推送筆數
+     */
+    public int streamFailStores(LocalDate date, ReportRowSink sink) {
+        int[] count = {0};
+        forEachDetail(igalScan.scanDay(date).failStores(), (store, times, trmId, dlfIp1, adsl1) -> {
+            for (int t = 0; t < times; t++) {
+                sink.row(trmId, dlfIp1, adsl1);
+            }
+            count[0] += times;
+        });
+        return count[0];
+    }
+
+    /*
+     * 依門市逐筆走訪主檔明細（每個門市的主檔列各回呼一次，附帶該門市的失敗次數）
+     * - 門市主檔快取啟用時直接在記憶體查找，不查 DB
+     * - 否則依 InListBatcher 切批查詢 ig_ui_sc_t（每批 ≤ 1000，固定大小重用執行計畫），
+     *   只暫存並排序當批結果，依門市代碼順序輸出
+     */
+    private void forEachDetail(StoreKeyCounts stores, DetailHandler handler) {
+        if (stores.isEmpty()) {
+            return;
+        }
+        if (storeMaster.isEnabled()) {
+            StoreMaster master = storeMaster.get();
+            metrics.phase("STORE-MASTER", "fail-store-details", stage -> {
+                long[] rows = {0};
+                stores.forEach((store, times) -> {
+                    String trmId = "00" + store;
+                    rows[0] += master.forEachByTrmId(trmId,
+                            (id, s, dlfIp1, adsl1) -> handler.row(store, times, trmId, dlfIp1, adsl1));
+                });
+                return stage.rows(rows[0]);
+            });
+            return;
+        }
+
+        List<String> codes = new ArrayList<>(stores.size());
+        Map<String, Integer> times = new HashMap<>(stores.size() * 2);
+        stores.forEach((store, n) -> {
+            if (!store.isEmpty()) {
+                codes.add(store);  // 空鍵值（store 為 NULL）另外查詢，IN ('') 等同 IN (NULL) 不會命中
+            }
+            times.put(store, n);
+        });
+        metrics.query("IGAL", "fail-store-details", stage -> {
+            List<List<String>> batches = InListBatcher.batches(codes);
+            int queries = batches.size();
+            long rows = 0;
+            for (List<String> batch : batches) {
+                // 依門市清單順序排序當批結果（同門市維持查詢順序）
+                Map<String, List<String[]>> byStore = new LinkedHashMap<>();
+                queryDetailBatch(batch, (store, dlfIp1, adsl1) ->
+                        byStore.computeIfAbsent(store, k -> new ArrayList<>()).add(new String[] { dlfIp1, adsl1 }));
+                for (String store : new LinkedHashSet<>(batch)) {
+                    for (String[] detail : byStore.getOrDefault(store, List.of())) {
+                        handler.row(store, times.get(store), "00" + store, detail[0], detail[1]);
+                        rows++;
+                    }
+                }
+            }
+            Integer nullStoreTimes = times.get("");
+            if (nullStoreTimes != null) {
+                long[] nullRows = {0};
+                igalJdbc.query(NULL_STORE_DETAIL_SQL, (RowCallbackHandler) rs -> {
+                    handler.row("", nullStoreTimes, "00", rs.getString("dlf_ip1"), rs.getString("adsl_1"));
+                    nullRows[0]++;
+                });
+                rows += nullRows[0];
+                queries++;
+            }
+            return stage.queries(queries).rows(rows);
+        });
+    }
+
+    // 單批門市明細查詢（batch 長度為固定大小之一）
+    private void queryDetailBatch(List<String> batch, BatchRowHandler handler) {
+        String sql = storeDetailSql.computeIfAbsent(batch.size(), size -> """
+            SELECT store, dlf_ip1, adsl_1
+            FROM ig_ui_sc_t
+            WHERE store IN ( %s )
+            """.formatted(InListBatcher.placeholders(size)));
+        igalJdbc.query(con -> {
+                    var ps = con.prepareStatement(sql);
+                    for (int i = 0; i < batch.size(); i++) {
+                        ps.setString(i + 1, batch.get(i));  // 依序綁定門市代碼
+                    }
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> handler.row(rs.getString("store"), rs.getString("dlf_ip1"), rs.getString("adsl_1")));
+    }
+
+    // 主檔明細單列回呼（times：該門市的失敗次數）
+    private interface DetailHandler {
+        void row(String store, int times, String trmId, String dlfIp1, String adsl1);
+    }
+
+    // 分批查詢單列回呼
+    private interface BatchRowHandler {
+        void row(String store, String dlfIp1, String adsl1);
+    }
+
+    // 查詢結果用 DTO
+    public record FailStoreRow(String trmId, String dlfIp1, String adsl1) {}
+}
@@ -1,132 +1,150 @@
 package pgmreport.service;
 
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import pgmreport.service.HedgedQueryExecutor.Outcome;
+import pgmreport.service.SourceQueryExecutor.SourceQueryException;
+import pgmreport.service.SourceQueryExecutor.SourceTask;
+
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /*
  * 指示檔配信狀態彙總查詢服務
- * - 同時查詢 IGAL / NBITS
+ * - 同時查詢 IGAL / NBITS（計數來自 IgalScanService / NbitsScanService 的單次掃描）
  * - 組合為單一查詢結果 DTO
+ * - 單日與多日（補跑）共用同一組查詢：兩邊的掃描都依日期分組，一次查完整個區間
+ * - 門市代碼分片（StoreShardExecutor）於各掃描內處理，各段計數依日期加總
+ * - 各查詢有期限，並可對備援資料庫對沖（HedgedQueryExecutor）；
+ *   來源查詢失敗或由備援回應時記錄於 degraded，計數 0 不再無法與「真的沒有資料」區分
  */
 @Service
 public class FileStatusReportService {
 
-    private final JdbcTemplate igalJdbc;   // IGAL DB
-    private final JdbcTemplate nbitsJdbc;  // NBITS DB
+    private final IgalScanService igalScan;        // IGAL 單次掃描（期限 / 備援 / 分片於掃描內處理）
+    private final NbitsScanService nbitsScan;      // NBITS 單次掃描（期限 / 備援 / 分片於掃描內處理）
+    private final SourceQueryExecutor queryExecutor;  // IGAL / NBITS 並行查詢
 
     public FileStatusReportService(
-    		@Qualifier("igalJdbcTemplate") JdbcTemplate igalJdbcTemplate,
-    		@Qualifier("nbitsJdbcTemplate") JdbcTemplate nbitsJdbcTemplate) {
-        this.igalJdbc = igalJdbcTemplate;
-        this.nbitsJdbc = nbitsJdbcTemplate;
+    		IgalScanService igalScan,
+    		NbitsScanService nbitsScan,
+    		SourceQueryExecutor queryExecutor) {
+        this.igalScan = igalScan;
+        this.nbitsScan = nbitsScan;
+        this.queryExecutor = queryExecutor;
     }
 
     // 依指定日期查詢指示檔配信與 NBITS 取檔狀態
     public FileStatusResult queryByDate(LocalDate date) {
-    	// 將 LocalDate 轉成字串（YYYY-MM-DD），供 SQL 查詢使用
-    	String dateParam = date.toString();  
-    	// 查詢 IGAL 指示檔配信總門市數
-        Integer total   = queryTotal(dateParam);
-        // 查詢 IGAL 指示檔配信成功門市數
-        Integer success = querySuccess(dateParam);
-        // 查詢 IGAL 指示檔配信失敗門市數
-        Integer fail    = queryFail(dateParam);
-        // 查詢 NBITS 取檔成功門市數
-        Integer nbits   = queryNbitsSuccess(dateParam);
-        
-        // 將查詢結果組成回傳 DTO
-        return new FileStatusResult(
-                date,  // 查詢日期
-                nvl(total),  // 配信總數
-                nvl(success),  // 配信成功數
-                nvl(fail),  // 配信失敗數
-                nvl(nbits)  // NBITS 取檔成功數
-        );
+    	// 將 LocalDate 轉成半開區間 [當日, 次日) 綁定參數，供 SQL 查詢使用
+        return queryByRange(ReportDateRange.ofDay(date)).get(0);
     }
-    
-    // null 安全處理（避免查詢失敗導致NullPointerException）
-    private int nvl(Integer v) { return v == null ? 0 : v; }
 
-    // IGAL：指示檔配信總筆數
-    private Integer queryTotal(String dateParam) {
-        try {
-            String sql = """
-                SELECT COUNT(*)
-                FROM send_file_kanri s
-                JOIN ig_ui_sc_t i ON s.trm_id = i.id
-                WHERE s.unyo_f_name = 'SDCDGETR'
-                  AND TRUNC(s.kidou_date) = TO_DATE(?, 'YYYY-MM-DD')
-                """;
-            return igalJdbc.queryForObject(sql, Integer.class, dateParam);
-        } catch (Exception ex) {
-            System.err.println("[ERROR] IGAL-總數查詢失敗：" + ex.getMessage());
-            return null;
+    // 依日期區間查詢（每個來源各一次查詢），回傳區間內每一天的結果（依日期遞增，無資料的日期為 0）
+    public List<FileStatusResult> queryByRange(ReportDateRange dateParam) {
+    	// IGAL 指示檔配信總數 / 成功數 / 失敗數（單次掃描）與 NBITS 取檔成功門市數同時送出
+        SourceTask<Outcome<Map<LocalDate, IgalCounts>>> igalTask = queryExecutor.submit("IGAL", () -> queryIgalCounts(dateParam));
+        SourceTask<Outcome<Map<LocalDate, Integer>>> nbitsTask = queryExecutor.submit("NBITS", () -> queryNbitsSuccess(dateParam));
+        // 等待兩邊結果（逾時視同該來源查詢失敗）；失敗或由備援回應時記錄降級說明
+        List<String> degraded = new ArrayList<>();
+        Map<LocalDate, IgalCounts> igalByDay = joinOrNull(igalTask, "IGAL 配信計數", degraded);
+        Map<LocalDate, Integer> nbitsByDay = joinOrNull(nbitsTask, "NBITS 取檔成功數", degraded);
+
+        List<FileStatusResult> results = new ArrayList<>();
+        for (LocalDate date : dateParam.days()) {
+            // 查詢失敗（null）或當日無資料時計數為 0
+            IgalCounts igal = igalByDay == null ? null : igalByDay.get(date);
+            Integer nbits = nbitsByDay == null ? null : nbitsByDay.get(date);
+            if (igal == null) {
+                igal = new IgalCounts(null, null, null);
+            }
+
+            // 將查詢結果組成回傳 DTO
+            results.add(new FileStatusResult(
+                    date,  // 查詢日期
+                    nvl(igal.total()),  // 配信總數
+                    nvl(igal.success()),  // 配信成功數
+                    nvl(igal.fail()),  // 配信失敗數
+                    nvl(nbits),  // NBITS 取檔成功數
+                    degraded  // 降級說明（無則為空）
+            ));
         }
+        return results;
     }
-
-    // IGAL：配信成功門市數量
-    private Integer querySuccess(String dateParam) {
+    
+    // 等待來源結果；失敗 / 逾時時輸出錯誤並回傳 null，由備援回應時照常回傳，兩者皆記錄降級說明
+    private <T> T joinOrNull(SourceTask<Outcome<T>> task, String label, List<String> degraded) {
         try {
-            String sql = """
-                SELECT COUNT(*)
-                FROM send_file_kanri s
-                JOIN ig_ui_sc_t i ON s.trm_id = i.id
-                WHERE s.unyo_f_name = 'SDCDGETR'
-                  AND s.file_sts = '8'
-                  AND TRUNC(s.kidou_date) = TO_DATE(?, 'YYYY-MM-DD')
-                """;
-            return igalJdbc.queryForObject(sql, Integer.class, dateParam);
-        } catch (Exception ex) {
-            System.err.println("[ERROR] IGAL-成功查詢失敗：" + ex.getMessage());
+            Outcome<T> outcome = task.join();
+            if (outcome.standby()) {
+                degraded.add(label + "由備援資料庫回應（可能有複寫延遲）");
+            }
+            return outcome.value();
+        } catch (SourceQueryException ex) {
+            System.err.println("[ERROR] " + ex.getMessage());
+            degraded.add(label + "查詢失敗，計數以 0 表示：" + ex.getMessage());
             return null;
         }
     }
 
-    // IGAL：配信失敗門市數量
-    private Integer queryFail(String dateParam) {
-        try {
-            String sql = """
-                SELECT COUNT(*)
-                FROM send_file_kanri A
-                JOIN ig_ui_sc_t B
-                  ON A.trm_id = '00' || B.store
-                WHERE A.unyo_f_name LIKE 'SDCDGETR%'
-                  AND A.file_sts = '7'
-                  AND TRUNC(A.kidou_date) = TO_DATE(?, 'YYYY-MM-DD')
-                """;
-            return igalJdbc.queryForObject(sql, Integer.class, dateParam);
-        } catch (Exception ex) {
-            System.err.println("[ERROR] IGAL-失敗查詢失敗：" + ex.getMessage());
-            return null;
-        }
+    // null 安全處理（避免查詢失敗導致NullPointerException）
+    private int nvl(Integer v) { return v == null ? 0 : v; }
+
+    /*
+     * IGAL：指示檔配信總數 / 成功數 / 失敗數
+     * - 取自 IgalScanService 的單次掃描（與失敗門市、成功門市共用同一次 send_file_kanri 讀取）
+     * - 計數語意不變：總數 / 成功數沿用 s.trm_id = i.id 的命中筆數；失敗數沿用 trm_id = '00' || store 的命中筆數
+     */
+    private Outcome<Map<LocalDate, IgalCounts>> queryIgalCounts(ReportDateRange dateParam) {
+        Outcome<Map<LocalDate, IgalDayScan>> scan = igalScan.scan(dateParam);
+        Map<LocalDate, IgalCounts> byDay = new HashMap<>();
+        scan.value().forEach((day, s) -> byDay.put(day, new IgalCounts(s.totalCount(), s.successCount(), s.failCount())));
+        return new Outcome<>(byDay, scan.standby());
     }
 
-    // NBITS：取檔成功門市數量
-    private Integer queryNbitsSuccess(String dateParam) {
-        try {
-            String sql = """
-                SELECT COUNT(*)
-                FROM nbit_dllog
-                WHERE TO_CHAR(log_date, 'YYYY-MM-DD HH24:MI:SS') LIKE ?
-                  AND file_id = 'SDTDRCV3'
-                  AND status = '2'
-            """;
-            return nbitsJdbc.queryForObject(sql, Integer.class, dateParam + "%");
-        } catch (Exception ex) {
-            System.err.println("[ERROR] NBITS-成功查詢失敗：" + ex.getMessage());
-            return null;
-        }
+    // NBITS：取檔成功筆數（取自 NbitsScanService 的單次掃描，與差異門市、時段分佈共用同一次 nbit_dllog 讀取）
+    private Outcome<Map<LocalDate, Integer>> queryNbitsSuccess(ReportDateRange dateParam) {
+        Outcome<Map<LocalDate, NbitsDayScan>> scan = nbitsScan.scan(dateParam);
+        Map<LocalDate, Integer> byDay = new HashMap<>();
+        scan.value().forEach((day, s) -> byDay.put(day, s.fetchedCount()));
+        return new Outcome<>(byDay, scan.standby());
     }
 
-    // 配信狀態彙總 DTO
+    // IGAL 單次掃描計數（查詢失敗時各欄為 null）
+    private record IgalCounts(Integer total, Integer success, Integer fail) {}
+
+    // 配信狀態彙總 DTO（degraded：查詢失敗 / 由備援回應的說明，正常時為空）
     public record FileStatusResult(
             LocalDate date,
             int totalCount,
             int successCount,
             int failCount,
-            int nbitsSuccess
-    ) {}
+            int nbitsSuccess,
+            List<String> degraded
+    ) {
+        public FileStatusResult {
+            degraded = List.copyOf(degraded);
+        }
+
+        public FileStatusResult(LocalDate date, int totalCount, int successCount, int failCount, int nbitsSuccess) {
+            this(date, totalCount, successCount, failCount, nbitsSuccess, List.of());
+        }
+
+        public boolean isDegraded() {
+            return !degraded.isEmpty();
+        }
+
+        // 附加其他查詢（如 NBITS 未取檔差異）的降級說明
+        public FileStatusResult withDegraded(List<String> notes) {
+            if (notes.isEmpty()) {
+                return this;
+            }
+            List<String> all = new ArrayList<>(degraded);
+            all.addAll(notes);
+            return new FileStatusResult(date, totalCount, successCount, failCount, nbitsSuccess, all);
+        }
+    }
 }
@@ -0,0 +1,284 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import pgmreport.service.SourceQueryExecutor.SourceQueryException;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 單一資料來源的查詢期限與備援對沖（hedged read）
+ * - 每次查詢有總期限：期限內沒有任何一邊成功時拋出 SourceQueryException，由呼叫端明確標示，不再以 0 掩蓋
+ * - 有設定備援資料庫（standby / replica）時：主庫超過「同名查詢近期耗時的 pXX」仍未回應，
+ *   就對備援送出同一查詢，取先成功的結果；主庫直接失敗時立即改查備援
+ * - 對沖延遲取最近 window 次主庫成功耗時的百分位數（不低於 min-delay）；樣本不足時使用 initial-delay
+ *   （單次批次執行樣本不足，百分位在常駐 / 多日 / 多組模式中逐步累積）
+ * - 結果由備援提供時 Outcome.standby = true，呼叫端據此標示降級（備援可能有複寫延遲）
+ * - 落後的一方除了中斷執行緒，也對其 JDBC Statement 呼叫 cancel()，讓資料庫端停止執行並歸還連線
+ * - 同時進行的備援查詢數不超過備援連線池大小（依分段併發時各分段各自對沖，名額滿時等待空出）
+ * - 只適用回傳值的查詢；逐筆推送給輸出端的串流查詢不能同時跑兩份，改由 JdbcTemplate query-timeout 限制
+ */
+public class HedgedQueryExecutor implements DisposableBean {
+
+    // 樣本數少於此值時使用 initial-delay
+    private static final int MIN_SAMPLES = 5;
+
+    // 來源名稱（IGAL / NBITS）
+    private final String source;
+    private final JdbcTemplate primary;
+    // 備援資料庫（未設定時為 null）
+    private final JdbcTemplate standby;
+    // 同時進行的備援查詢上限（= 備援連線池大小）
+    private final int standbyConcurrency;
+    private final Semaphore standbySlots;
+    // 總期限（奈秒，0 = 不限制）
+    private final long deadlineNanos;
+    private final int percentile;
+    private final long minDelayMillis;
+    private final long initialDelayMillis;
+    private final int window;
+    // 各查詢名稱的近期主庫耗時
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    // 執行查詢的執行緒池（不限期限且沒有備援時為 null，直接在呼叫端執行）
+    private final ExecutorService pool;
+
+    public HedgedQueryExecutor(String source, JdbcTemplate primary, JdbcTemplate standby, int standbyConcurrency,
+                               long deadlineSeconds, int percentile, long minDelayMillis,
+                               long initialDelayMillis, int window) {
+        this.source = source;
+        this.primary = primary;
+        this.standby = standby;
+        this.standbyConcurrency = Math.max(1, standbyConcurrency);
+        this.standbySlots = new Semaphore(this.standbyConcurrency);
+        this.deadlineNanos = TimeUnit.SECONDS.toNanos(Math.max(0, deadlineSeconds));
+        this.percentile = Math.min(100, Math.max(1, percentile));
+        this.minDelayMillis = minDelayMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.window = Math.max(MIN_SAMPLES, window);
+        this.pool = standby == null && deadlineNanos == 0 ? null : newPool(source);
+    }
+
+    // 直接執行（測試 / 量測用）：沒有期限與備援，查詢在呼叫端執行緒進行
+    public static HedgedQueryExecutor direct(String source, JdbcTemplate primary) {
+        return new HedgedQueryExecutor(source, primary, null, 1, 0, 95, 0, 0, MIN_SAMPLES);
+    }
+
+    public boolean hasStandby() {
+        return standby != null;
+    }
+
+    /*
+     * 執行查詢
+     * - body 會收到實際使用的 JdbcTemplate 與量測用來源名稱（主庫：IGAL，備援：IGAL-STANDBY）
+     */
+    public <T> Outcome<T> query(String name, HedgedBody<T> body) {
+        if (pool == null) {
+            return new Outcome<>(timed(name, primary, body), false);
+        }
+
+        ExecutorCompletionService<Outcome<T>> completion = new ExecutorCompletionService<>(pool);
+        List<Attempt<T>> running = new ArrayList<>(2);
+        long start = System.nanoTime();
+        long deadline = deadlineNanos == 0 ? Long.MAX_VALUE : start + deadlineNanos;
+        long hedgeAt = start + TimeUnit.MILLISECONDS.toNanos(hedgeDelayMillis(name));
+        boolean hedged = standby == null;  // 沒有備援時視同已對沖，只等主庫
+        Throwable lastError = null;
+
+        running.add(submitPrimary(completion, name, body));
+        try {
+            int pending = 1;
+            while (true) {
+                long now = System.nanoTime();
+                long waitUntil = hedged ? deadline : Math.min(hedgeAt, deadline);
+                Future<Outcome<T>> done = waitUntil <= now ? null : completion.poll(waitUntil - now, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (!hedged && System.nanoTime() < deadline) {
+                        System.err.println("[WARN] [" + source + "] " + name + " 超過 "
+                                + TimeUnit.NANOSECONDS.toMillis(hedgeAt - start) + " ms 未回應，同時查詢備援資料庫");
+                        running.add(submitStandby(completion, name, body, deadline));
+                        hedged = true;
+                        pending++;
+                        continue;
+                    }
+                    throw new SourceQueryException(source, name + " 查詢逾時（"
+                            + TimeUnit.NANOSECONDS.toMillis(deadlineNanos) + " ms）", lastError);
+                }
+
+                pending--;
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    lastError = ex.getCause();
+                    if (!hedged) {
+                        // 主庫直接失敗：不等對沖延遲，立即改查備援
+                        System.err.println("[WARN] [" + source + "] " + name + " 主庫查詢失敗，改查備援資料庫：" + lastError.getMessage());
+                        running.add(submitStandby(completion, name, body, deadline));
+                        hedged = true;
+                        pending++;
+                    } else if (pending == 0) {
+                        if (lastError instanceof SourceQueryException sqe) {
+                            throw sqe;
+                        }
+                        throw new SourceQueryException(source, name + " 查詢失敗：" + lastError.getMessage(), lastError);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SourceQueryException(source, name + " 查詢被中斷", ex);
+        } finally {
+            running.forEach(Attempt::cancel);  // 取消落後的一方（已完成的為 no-op）
+        }
+    }
+
+    private <T> Attempt<T> submitPrimary(CompletionService<Outcome<T>> completion, String name, HedgedBody<T> body) {
+        CancellableJdbcTemplate jdbc = new CancellableJdbcTemplate(primary);
+        return new Attempt<>(jdbc, completion.submit(() -> new Outcome<>(timed(name, jdbc, body), false)));
+    }
+
+    // 備援查詢：先取得備援連線名額，到期限仍沒有名額時失敗
+    private <T> Attempt<T> submitStandby(CompletionService<Outcome<T>> completion, String name,
+                                         HedgedBody<T> body, long deadline) {
+        CancellableJdbcTemplate jdbc = new CancellableJdbcTemplate(standby);
+        return new Attempt<>(jdbc, completion.submit(() -> {
+            if (!standbySlots.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new SourceQueryException(source, name + " 備援查詢名額已滿（" + standbyConcurrency + "）", null);
+            }
+            try {
+                return new Outcome<>(body.run(jdbc, source + "-STANDBY"), true);
+            } finally {
+                standbySlots.release();
+            }
+        }));
+    }
+
+    // 主庫查詢並記錄耗時樣本（只記成功的主庫查詢）
+    private <T> T timed(String name, JdbcTemplate jdbc, HedgedBody<T> body) {
+        long t0 = System.nanoTime();
+        T value = body.run(jdbc, source);
+        latencies.computeIfAbsent(name, k -> new LatencyWindow(window))
+                .add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+        return value;
+    }
+
+    // 對沖延遲：近期主庫耗時的百分位數，不低於 min-delay；樣本不足時使用 initial-delay
+    long hedgeDelayMillis(String name) {
+        LatencyWindow samples = latencies.get(name);
+        long[] sorted = samples == null ? new long[0] : samples.sorted();
+        if (sorted.length < MIN_SAMPLES) {
+            return initialDelayMillis;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return Math.max(minDelayMillis, sorted[Math.max(0, index)]);
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    // 主庫 / 備援查詢各用一條執行緒；daemon 執行緒，避免批次結束後 JVM 無法退出
+    private static ExecutorService newPool(String source) {
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "report-hedge-" + source.toLowerCase() + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // 查詢內容：jdbc 為實際使用的資料庫，label 為量測用來源名稱
+    @FunctionalInterface
+    public interface HedgedBody<T> {
+        T run(JdbcTemplate jdbc, String label);
+    }
+
+    // 查詢結果與是否由備援提供
+    public record Outcome<T>(T value, boolean standby) {}
+
+    // 單次主庫 / 備援查詢：執行中的 future 與其專用 JdbcTemplate
+    private record Attempt<T>(CancellableJdbcTemplate jdbc, Future<Outcome<T>> future) {
+
+        void cancel() {
+            if (!future.isDone()) {
+                jdbc.cancelStatements();
+                future.cancel(true);
+            }
+        }
+    }
+
+    /*
+     * 記錄所建立 Statement 的 JdbcTemplate（每次查詢嘗試一個，沿用原 JdbcTemplate 的 DataSource / fetch size / 查詢逾時）
+     * - 中斷執行緒不會停止資料庫端的 SQL，須對 Statement 呼叫 cancel() 才會中止並歸還連線
+     * - 取消後才建立的 Statement 直接失敗，不再送出
+     */
+    private static final class CancellableJdbcTemplate extends JdbcTemplate {
+
+        private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+
+        CancellableJdbcTemplate(JdbcTemplate base) {
+            setDataSource(base.getDataSource());
+            setFetchSize(base.getFetchSize());
+            setMaxRows(base.getMaxRows());
+            setQueryTimeout(base.getQueryTimeout());
+        }
+
+        @Override
+        protected void applyStatementSettings(Statement stmt) throws SQLException {
+            super.applyStatementSettings(stmt);
+            statements.add(stmt);
+            if (cancelled) {
+                throw new SQLException("查詢已取消");
+            }
+        }
+
+        void cancelStatements() {
+            cancelled = true;
+            for (Statement stmt : statements) {
+                try {
+                    if (!stmt.isClosed()) {
+                        stmt.cancel();
+                    }
+                } catch (SQLException ex) {
+                    // 已結束 / 已關閉的 Statement 不需處理
+                }
+            }
+        }
+    }
+
+    // 固定大小的耗時環狀緩衝
+    private static final class LatencyWindow {
+
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(samples, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
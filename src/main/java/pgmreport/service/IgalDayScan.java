@@ -0,0 +1,134 @@
+package pgmreport.service;
+
+import java.time.LocalDate;
+
+/*
+ * IGAL 單日掃描結果（IgalScanService 一次讀取 send_file_kanri 後分送的四種結果）
+ * - 配信計數：總數 / 成功數 / 失敗數（與原本 SUM(CASE ...) 計數語意相同）
+ * - 失敗門市：'00' || store = trm_id 的門市與失敗次數（StoreKeyCounts），明細於輸出時再逐筆查找
+ * - 配信成功門市集合（與原本 DISTINCT SUBSTR(trm_id, 3, 6) 相同）
+ * - 每分鐘配信成功 / 失敗筆數（時段分佈依設定的分鐘數再彙總）
+ * - 只保存計數與門市鍵值，不保存任何明細列：快取的記憶體與資料列數無關
+ */
+public final class IgalDayScan {
+
+    private final LocalDate date;
+    private final int totalCount;
+    private final int successCount;
+    private final int failCount;
+    private final StoreKeyCounts failStores;
+    private final StoreKeySet successStores;
+    // 每分鐘一格（只由本類別寫入，不對外公開）
+    private final DistributionTimeline perMinute;
+
+    private IgalDayScan(LocalDate date, int totalCount, int successCount, int failCount,
+                        StoreKeyCounts failStores, StoreKeySet successStores, DistributionTimeline perMinute) {
+        this.date = date;
+        this.totalCount = totalCount;
+        this.successCount = successCount;
+        this.failCount = failCount;
+        this.failStores = failStores;
+        this.successStores = successStores;
+        this.perMinute = perMinute;
+    }
+
+    // 無資料的日期
+    public static IgalDayScan empty(LocalDate date) {
+        return new IgalDayScan(date, 0, 0, 0, StoreKeyCounts.empty(), StoreKeySet.empty(), new DistributionTimeline(date, 1));
+    }
+
+    static Accumulator accumulator(LocalDate date) {
+        return new Accumulator(date);
+    }
+
+    // 合併兩段（門市分片）結果：計數相加、失敗門市次數相加、成功門市取聯集、時段分佈逐格相加
+    public static IgalDayScan merge(IgalDayScan a, IgalDayScan b) {
+        DistributionTimeline perMinute = new DistributionTimeline(a.date, 1);
+        perMinute.merge(a.perMinute);
+        perMinute.merge(b.perMinute);
+        return new IgalDayScan(a.date,
+                a.totalCount + b.totalCount,
+                a.successCount + b.successCount,
+                a.failCount + b.failCount,
+                a.failStores.merge(b.failStores),
+                a.successStores.union(b.successStores),
+                perMinute);
+    }
+
+    public LocalDate date() {
+        return date;
+    }
+
+    public int totalCount() {
+        return totalCount;
+    }
+
+    public int successCount() {
+        return successCount;
+    }
+
+    public int failCount() {
+        return failCount;
+    }
+
+    // 配信失敗門市（store 欄位值）與失敗記錄數；明細筆數 = 次數 × 該門市主檔筆數
+    public StoreKeyCounts failStores() {
+        return failStores;
+    }
+
+    public StoreKeySet successStores() {
+        return successStores;
+    }
+
+    // 把每分鐘的配信成功 / 失敗筆數累加到 target（任意時段長度）
+    public void addTimelineTo(DistributionTimeline target) {
+        for (int i = 0; i < perMinute.bucketCount(); i++) {
+            target.addIgal(i * 60, perMinute.delivered(i), perMinute.failed(i));
+        }
+    }
+
+    /*
+     * 單日累加器：每一列掃描結果（一筆 send_file_kanri）依序分送給四個消費端
+     * - 計數：總數 / 成功數計 ig_ui_sc_t.id 命中數，失敗數計門市主檔（store）命中數
+     * - 失敗門市：失敗且門市主檔有命中時記一次
+     * - 成功門市集合：成功且 ig_ui_sc_t.id 有命中的門市
+     * - 時段分佈：依 kidou_date 的當日秒數放入分鐘格
+     */
+    static final class Accumulator {
+
+        private final LocalDate date;
+        private int total;
+        private int success;
+        private int fail;
+        private final StoreKeyCounts.Builder failStores = StoreKeyCounts.builder(256);
+        private final StoreKeySet.Builder successStores = StoreKeySet.builder(1024);
+        private final DistributionTimeline perMinute;
+
+        private Accumulator(LocalDate date) {
+            this.date = date;
+            this.perMinute = new DistributionTimeline(date, 1);
+        }
+
+        void accept(String trmId, String unyoFName, String fileSts, int idHits, int storeHits, int secondOfDay) {
+            if ("SDCDGETR".equals(unyoFName)) {
+                total += idHits;
+                if ("8".equals(fileSts)) {
+                    success += idHits;
+                    perMinute.addIgal(secondOfDay, idHits, 0);
+                    if (idHits > 0) {
+                        successStores.add(StoreKeyCodec.storeOf(trmId));
+                    }
+                }
+            }
+            if ("7".equals(fileSts) && storeHits > 0) {
+                fail += storeHits;
+                perMinute.addIgal(secondOfDay, 0, storeHits);
+                failStores.add(trmId.substring(2));  // 命中時 trm_id 必為 '00' || store（store 為 NULL 時為空字串）
+            }
+        }
+
+        IgalDayScan build() {
+            return new IgalDayScan(date, total, success, fail, failStores.build(), successStores.build(), perMinute);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.HedgedQueryExecutor.Outcome;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * IGAL 單次掃描服務
+ * - 一次讀取區間內 SDCDGETR* 的 send_file_kanri（LEFT JOIN ig_ui_sc_t 命中數），每筆一列，
+ *   逐列分送給計數、失敗門市、成功門市、時段分佈四個消費端
+ * - FileStatusReportService（計數）、FailStoreExportService（失敗門市）、NbitsDiffExportService（成功門市）、
+ *   DistributionTimelineService（時段分佈）共用同一份結果：每次執行 IGAL 只掃描一次 send_file_kanri
+ * - 依日期區間快取（report.cache.ttl-seconds）；同一區間併發呼叫只會實際查詢一次
+ * - 快取只保存計數與門市鍵值（IgalDayScan），失敗門市明細由 FailStoreExportService 輸出時逐筆查找
+ * - 分片時每段各自累加，再依日期合併；整段掃描經過期限 / 備援對沖（結果收集完才回傳，可同時跑兩份）
+ * - 分片條件同時套用到 ig_ui_sc_t 的兩個彙總子查詢，每段只彙總自己範圍內的門市，不會每段都彙總整張表
+ */
+@Service
+public class IgalScanService {
+
+    // IGAL 單次掃描 SQL（三個 %s 依序為 id 子查詢、store 子查詢、send_file_kanri 的門市分片條件）
+    private static final String SCAN_SQL = """
+            SELECT TRUNC(s.kidou_date) AS day,
+                   s.trm_id,
+                   s.unyo_f_name,
+                   s.file_sts,
+                   TO_NUMBER(TO_CHAR(s.kidou_date, 'SSSSS')) AS sec,
+                   NVL(i.hits, 0) AS id_hits,
+                   NVL(b.hits, 0) AS store_hits
+            FROM send_file_kanri s
+            LEFT JOIN (SELECT id, COUNT(*) AS hits
+                       FROM ig_ui_sc_t
+                       WHERE 1 = 1 %s
+                       GROUP BY id) i
+              ON s.trm_id = i.id
+            LEFT JOIN (SELECT '00' || store AS trm_id, COUNT(*) AS hits
+                       FROM ig_ui_sc_t
+                       WHERE 1 = 1 %s
+                       GROUP BY store) b
+              ON s.trm_id = b.trm_id
+            WHERE s.unyo_f_name LIKE 'SDCDGETR%%'
+              AND s.kidou_date >= ?
+              AND s.kidou_date < ?
+              %s
+            """;
+
+    // IGAL 查詢（期限 / 備援）
+    private final HedgedQueryExecutor igalHedge;
+    // IGAL 門市分片
+    private final StoreShardExecutor igalShards;
+    // 查詢量測
+    private final ReportMetrics metrics;
+    // 依日期區間快取掃描結果
+    private final TtlFutureCache<ReportDateRange, Outcome<Map<LocalDate, IgalDayScan>>> cache;
+
+    public IgalScanService(
+            @Qualifier("igalHedge") HedgedQueryExecutor igalHedge,
+            @Qualifier("igalStoreShards") StoreShardExecutor igalShards,
+            ReportMetrics metrics,
+            @Value("${report.cache.ttl-seconds:600}") long cacheTtlSeconds) {
+        this.igalHedge = igalHedge;
+        this.igalShards = igalShards;
+        this.metrics = metrics;
+        this.cache = new TtlFutureCache<>("IGAL 掃描", cacheTtlSeconds * 1000L, this::load);
+    }
+
+    // 單日掃描結果
+    public IgalDayScan scanDay(LocalDate date) {
+        return scan(ReportDateRange.ofDay(date)).value().get(date);
+    }
+
+    /*
+     * 區間掃描結果（區間內每一天都有結果，無資料為空）
+     * - standby = true 表示由備援資料庫回應
+     */
+    public Outcome<Map<LocalDate, IgalDayScan>> scan(ReportDateRange range) {
+        return cache.get(range);
+    }
+
+    // 丟棄包含該日期的快取（常駐模式重新整理時使用）
+    public void invalidate(LocalDate date) {
+        cache.invalidateIf(range -> !date.isBefore(range.from()) && date.isBefore(range.toExclusive()));
+    }
+
+    // 實際掃描：各分段各自累加，再依日期合併
+    private Outcome<Map<LocalDate, IgalDayScan>> load(ReportDateRange range) {
+        Map<LocalDate, IgalDayScan> byDay = new LinkedHashMap<>();
+        range.days().forEach(day -> byDay.put(day, IgalDayScan.empty(day)));
+        boolean standby = false;
+        for (Outcome<Map<LocalDate, IgalDayScan>> shard : igalShards.map(shardRange -> igalHedge.query("day-scan",
+                (jdbc, source) -> metrics.query(source, "day-scan", stage -> {
+            Map<LocalDate, IgalDayScan.Accumulator> accumulators = new HashMap<>();
+            String sql = SCAN_SQL.formatted(
+                    shardRange.condition("SUBSTR(id, 3, 6)"),
+                    shardRange.condition("store"),
+                    shardRange.condition("SUBSTR(s.trm_id, 3, 6)"));
+            // 參數順序與 SQL 中 ? 出現順序一致：兩個子查詢的分片上下界在前，之後是日期區間與外層分片上下界
+            List<Object> params = new ArrayList<>();
+            params.addAll(Arrays.asList(shardRange.params()));
+            params.addAll(Arrays.asList(shardRange.params()));
+            params.addAll(Arrays.asList(shardRange.params(range.params())));
+            jdbc.query(sql,
+                    (RowCallbackHandler) rs -> {
+                        accumulators.computeIfAbsent(rs.getDate("day").toLocalDate(), IgalDayScan::accumulator)
+                                .accept(rs.getString("trm_id"),
+                                        rs.getString("unyo_f_name"),
+                                        rs.getString("file_sts"),
+                                        rs.getInt("id_hits"),
+                                        rs.getInt("store_hits"),
+                                        rs.getInt("sec"));
+                        stage.addRows(1);
+                    },
+                    params.toArray());
+
+            Map<LocalDate, IgalDayScan> shardByDay = new HashMap<>();
+            accumulators.forEach((day, acc) -> shardByDay.put(day, acc.build()));
+            return shardByDay;
+        })))) {
+            standby |= shard.standby();
+            shard.value().forEach((day, scan) -> byDay.merge(day, scan, IgalDayScan::merge));
+        }
+        return new Outcome<>(byDay, standby);
+    }
+}
@@ -0,0 +1,62 @@
+package pgmreport.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * SQL IN 清單分批工具
+ * - Oracle 單一 IN 清單最多 1000 個運算式（超過會 ORA-01795），依上限切批
+ * - 每批補齊到固定幾種大小（CANONICAL_SIZES），讓 SQL 文字只有少數幾種，
+ *   可重用 shared pool 內的執行計畫（soft parse），不會因清單長度不同而一直 hard parse
+ * - 補齊時重複該批最後一個值：IN 條件重複值不影響查詢結果
+ */
+public final class InListBatcher {
+
+    // 允許的批次大小（最後一個即 Oracle IN 清單上限）
+    static final int[] CANONICAL_SIZES = { 16, 64, 256, 1000 };
+    // 單批上限
+    static final int MAX_BATCH_SIZE = CANONICAL_SIZES[CANONICAL_SIZES.length - 1];
+
+    private InListBatcher() {
+    }
+
+    // 取不小於 n 的最小固定大小
+    static int canonicalSize(int n) {
+        for (int size : CANONICAL_SIZES) {
+            if (n <= size) {
+                return size;
+            }
+        }
+        throw new IllegalArgumentException("批次大小超過上限：" + n);
+    }
+
+    // 依序切批並補齊，每批長度必為 CANONICAL_SIZES 之一
+    public static List<List<String>> batches(List<String> values) {
+        if (values.isEmpty()) {
+            return List.of();
+        }
+        List<List<String>> batches = new ArrayList<>((values.size() + MAX_BATCH_SIZE - 1) / MAX_BATCH_SIZE);
+        for (int from = 0; from < values.size(); from += MAX_BATCH_SIZE) {
+            List<String> chunk = values.subList(from, Math.min(from + MAX_BATCH_SIZE, values.size()));
+            int size = canonicalSize(chunk.size());
+            List<String> padded = new ArrayList<>(size);
+            padded.addAll(chunk);
+            padded.addAll(Collections.nCopies(size - chunk.size(), chunk.get(chunk.size() - 1)));
+            batches.add(padded);
+        }
+        return batches;
+    }
+
+    // 產生 IN 子句佔位符，例如 size=3 → "?,?,?"
+    public static String placeholders(int size) {
+        StringBuilder sb = new StringBuilder(size * 2);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
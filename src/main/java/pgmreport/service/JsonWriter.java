@@ -0,0 +1,142 @@
+package pgmreport.service;
+
+import java.util.Arrays;
+
+/*
+ * 最小 JSON 輸出器（專案未引入 Jackson，只需要輸出簡單的物件 / 陣列）
+ * - 依呼叫順序直接串成字串，自動補逗號
+ * - 只支援字串 / 數值 / 布林 / null
+ */
+public final class JsonWriter {
+
+    private final StringBuilder sb = new StringBuilder(256);
+    // 目前層級是否已輸出過元素（決定是否需要逗號）
+    private boolean[] hasElement = new boolean[8];
+    private int depth;
+    // 剛輸出欄位名稱，下一個值不需要逗號
+    private boolean afterName;
+
+    public JsonWriter beginObject() {
+        return open('{');
+    }
+
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() {
+        return open('[');
+    }
+
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    // 物件欄位名稱
+    public JsonWriter name(String name) {
+        separator();
+        quote(name);
+        sb.append(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separator();
+        if (value == null) {
+            sb.append("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separator();
+        sb.append(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        separator();
+        sb.append(Double.isFinite(value) ? Double.toString(value) : "null");
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separator();
+        sb.append(value);
+        return this;
+    }
+
+    // 欄位 + 值
+    public JsonWriter field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, long value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, double value) {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private JsonWriter open(char c) {
+        separator();
+        sb.append(c);
+        if (++depth == hasElement.length) {
+            hasElement = Arrays.copyOf(hasElement, depth * 2);
+        }
+        hasElement[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char c) {
+        sb.append(c);
+        depth--;
+        return this;
+    }
+
+    private void separator() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (hasElement[depth]) {
+            sb.append(',');
+        }
+        hasElement[depth] = true;
+    }
+
+    private void quote(String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,313 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.SystemEnvironmentPropertySource;
+import org.springframework.stereotype.Service;
+
+import pgmreport.config.DataSourceConfig;
+import pgmreport.service.DailyResultStore.DailyDelta;
+import pgmreport.service.FileStatusReportService.FileStatusResult;
+
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/*
+ * 多組 IGAL / NBITS 資料庫同時出報表（同一個 JVM / Spring 啟動）
+ * - report.pair-names=north,south：要執行的組合名稱；未設定時主程式維持原本單組流程
+ * - 每組的連線設定寫在 report.pairs.<name>.igal.* / report.pairs.<name>.nbits.*，
+ *   對應到 spring.datasource.igal.* / spring.datasource.nbits.*（url / username / password / driver-class-name / hikari / jdbc / shard）
+ * - 每組建立一個子 ApplicationContext：資料來源、連線池、門市主檔快取、查詢 / 匯出服務與量測各自獨立，
+ *   設定預設值與單組模式完全相同；IGAL / NBITS 並行執行器沿用主 Context 的共用實例
+ * - 上層的 spring.datasource.igal.* / nbits.*（含 standby / hedge / shard / 帳密）在子 Context 中一律隱藏，
+ *   未在該組設定的鍵值使用程式預設值，不會連到預設組的資料庫或備援；其餘設定（report.* 等）沿用上層
+ * - 輸出目錄為 <report.xlsx.output-dir>/<name>（報表、執行統計、每日結果各組分開）
+ * - 門市主檔快照（report.store-master.snapshot-file）與每日結果目錄（report.result-store.dir）有明確指定時也依組分開：
+ *   各組可用 report.pairs.<name>.store-master.snapshot-file / report.pairs.<name>.result-store.dir 覆寫，
+ *   否則放到主設定路徑下的 <name> 子目錄；兩組解析到同一路徑時啟動即失敗，不會互相覆寫
+ * - 各組在有界執行緒池上同時執行（report.pair-concurrency），單組失敗不影響其他組
+ */
+@Service
+public class MultiPairReportService {
+
+    private static final String PAIR_PREFIX = "report.pairs.";
+    // 各組必須分開的檔案 / 目錄設定 → 主設定明確指定時的各組路徑
+    private static final Map<String, BiFunction<Path, String, Path>> PER_PAIR_PATHS = Map.of(
+            "report.store-master.snapshot-file", (shared, name) -> shared.resolveSibling(name).resolve(shared.getFileName()),
+            "report.result-store.dir", Path::resolve);
+
+    private final ConfigurableApplicationContext context;
+    // 組合名稱（依設定順序）
+    private final List<String> pairNames;
+    // 同時執行組數
+    private final int concurrency;
+    // 報表根目錄（各組輸出到子目錄）
+    private final Path outputDir;
+
+    public MultiPairReportService(
+            ConfigurableApplicationContext context,
+            @Value("${report.pair-names:}") String pairNames,
+            @Value("${report.pair-concurrency:2}") int concurrency,
+            @Value("${report.xlsx.output-dir}") String outputDir) {
+        this.context = context;
+        this.pairNames = Arrays.stream(pairNames.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .distinct()
+                .toList();
+        this.concurrency = Math.max(1, concurrency);
+        this.outputDir = Paths.get(outputDir);
+    }
+
+    // 是否設定了多組資料庫
+    public boolean isConfigured() {
+        return !pairNames.isEmpty();
+    }
+
+    public List<String> pairNames() {
+        return pairNames;
+    }
+
+    /*
+     * 每組執行單日流程：狀態彙總 → 報表匯出 → NBITS 未取檔筆數 → 執行統計 JSON → 日對日差異
+     * - 回傳順序與 report.pair-names 相同
+     */
+    public List<PairReport> runDay(LocalDate date, ReportFormat format) {
+        checkDistinctPairPaths();
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(concurrency, pairNames.size()), r -> {
+            Thread t = new Thread(r, "report-pair-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<PairReport>> futures = new ArrayList<>(pairNames.size());
+            for (String name : pairNames) {
+                futures.add(pool.submit(() -> runPair(name, date, format)));
+            }
+            List<PairReport> reports = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                reports.add(join(pairNames.get(i), date, futures.get(i)));
+            }
+            return reports;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // 單組流程（子 Context 用完即關閉，釋放該組連線池）
+    private PairReport runPair(String name, LocalDate date, ReportFormat format) {
+        try (ConfigurableApplicationContext pair = openPairContext(name)) {
+            ReportMetrics metrics = pair.getBean(ReportMetrics.class);
+            metrics.reset();
+            FileStatusResult status = pair.getBean(FileStatusReportService.class).queryByDate(date);
+            Path reportPath = pair.getBean(XlsxExportService.class).exportEmergencyReport(date, format);
+            NbitsDiffExportService nbitsDiff = pair.getBean(NbitsDiffExportService.class);
+            int nbitsNotFetchedCount = nbitsDiff.countNbitsDiff(date);
+            status = status.withDegraded(nbitsDiff.degradedNotes(date));
+
+            String baseName = reportPath.getFileName().toString().replaceFirst("\\.[a-z]+$", "");
+            Path metricsPath = metrics.writeRunSummary(reportPath.resolveSibling(baseName + ".metrics.json"),
+                    Map.of("date", date.toString(), "pair", name));
+            DailyDelta delta = pair.getBean(DailyResultStore.class).delta(date);
+            return new PairReport(name, status, nbitsNotFetchedCount, reportPath, metricsPath, delta, null);
+        } catch (Exception ex) {
+            System.err.println("[ERROR] [" + name + "] 報表產生失敗：" + ex.getMessage());
+            return PairReport.failed(name, date, ex.getMessage());
+        }
+    }
+
+    private static PairReport join(String name, LocalDate date, Future<PairReport> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return PairReport.failed(name, date, "執行被中斷");
+        } catch (ExecutionException ex) {
+            return PairReport.failed(name, date, ex.getCause().getMessage());
+        }
+    }
+
+    /*
+     * 建立單組子 Context
+     * - 繼承主 Context 的 Environment，再以該組設定覆寫 spring.datasource.igal / nbits 與輸出目錄
+     * - 只註冊與資料來源相關的元件；未註冊的 Bean（SourceQueryExecutor 等）由主 Context 提供
+     */
+    ConfigurableApplicationContext openPairContext(String name) {
+        AnnotationConfigApplicationContext pair = new AnnotationConfigApplicationContext();
+        pair.setParent(context);
+        pair.setDisplayName("pair-" + name);
+        MutablePropertySources sources = pair.getEnvironment().getPropertySources();
+        maskDataSourceProperties(sources);
+        sources.addFirst(new MapPropertySource("pair-" + name, pairProperties(name)));
+        // 從上層合併來的 configurationProperties 仍指向上層的設定來源，重新掛到子 Context 自己的來源上
+        ConfigurationPropertySources.attach(pair.getEnvironment());
+        pair.register(PairContextConfig.class,
+                DataSourceConfig.class,
+                ReportMetrics.class,
+                StoreMasterCache.class,
+                IgalScanService.class,
+                NbitsScanService.class,
+                FileStatusReportService.class,
+                FailStoreExportService.class,
+                NbitsDiffExportService.class,
+                DailyResultStore.class,
+                DistributionTimelineService.class,
+                XlsxExportService.class);
+        pair.refresh();
+        return pair;
+    }
+
+    /*
+     * report.pairs.<name>.{igal|nbits}.* 轉成 spring.datasource.{igal|nbits}.*，並指定各組的輸出目錄
+     * - 連線池名稱（igal-<name> 等）只在該組未設定 hikari.pool-name 時補上
+     */
+    private Map<String, Object> pairProperties(String name) {
+        String prefix = PAIR_PREFIX + name + ".";
+        Map<String, Object> props = new LinkedHashMap<>();
+        for (PropertySource<?> source : context.getEnvironment().getPropertySources()) {
+            if (!(source instanceof EnumerablePropertySource<?> enumerable)) {
+                continue;
+            }
+            for (String key : enumerable.getPropertyNames()) {
+                if (key.startsWith(prefix + "igal.") || key.startsWith(prefix + "nbits.")) {
+                    props.putIfAbsent("spring.datasource." + key.substring(prefix.length()), context.getEnvironment().getProperty(key));
+                }
+            }
+        }
+        props.putIfAbsent("spring.datasource.igal.hikari.pool-name", "igal-" + name);
+        props.putIfAbsent("spring.datasource.nbits.hikari.pool-name", "nbits-" + name);
+        props.putIfAbsent("spring.datasource.igal.standby.hikari.pool-name", "igal-standby-" + name);
+        props.putIfAbsent("spring.datasource.nbits.standby.hikari.pool-name", "nbits-standby-" + name);
+        props.put("report.xlsx.output-dir", outputDir.resolve(name).toString());
+        props.put("report.metrics.pair", name);
+        PER_PAIR_PATHS.keySet().forEach(key -> {
+            String path = pairPath(name, key);
+            if (path != null) {
+                props.put(key, path);
+            }
+        });
+
+        for (String source : List.of("igal", "nbits")) {
+            if (!props.containsKey("spring.datasource." + source + ".url")) {
+                throw new IllegalStateException("缺少設定：" + prefix + source + ".url");
+            }
+        }
+        return props;
+    }
+
+    /*
+     * 隱藏從上層合併來的 spring.datasource.igal.* / nbits.*
+     * - Map 型來源（application.yml / app.ini / 環境變數等）換成去掉這些鍵值的複本，環境變數維持寬鬆比對（SPRING_DATASOURCE_IGAL_URL）
+     * - 其他可列舉來源包一層過濾；不可列舉的來源無法得知鍵值，維持原樣
+     */
+    private static void maskDataSourceProperties(MutablePropertySources sources) {
+        for (PropertySource<?> source : sources) {
+            if (source instanceof MapPropertySource map) {
+                Map<String, Object> kept = new LinkedHashMap<>(map.getSource());
+                if (kept.keySet().removeIf(MultiPairReportService::isDataSourceKey)) {
+                    sources.replace(source.getName(), source instanceof SystemEnvironmentPropertySource
+                            ? new SystemEnvironmentPropertySource(source.getName(), kept)
+                            : new MapPropertySource(source.getName(), kept));
+                }
+            } else if (source instanceof EnumerablePropertySource<?> enumerable
+                    && Arrays.stream(enumerable.getPropertyNames()).anyMatch(MultiPairReportService::isDataSourceKey)) {
+                sources.replace(source.getName(), new MaskedPropertySource(enumerable));
+            }
+        }
+    }
+
+    // spring.datasource.igal.* / nbits.*（含環境變數寫法 SPRING_DATASOURCE_IGAL_*）
+    private static boolean isDataSourceKey(String key) {
+        String normalized = key.toLowerCase(Locale.ROOT).replace('_', '.');
+        return normalized.startsWith("spring.datasource.igal.") || normalized.startsWith("spring.datasource.nbits.");
+    }
+
+    // 過濾掉資料來源鍵值的可列舉來源
+    private static final class MaskedPropertySource extends EnumerablePropertySource<EnumerablePropertySource<?>> {
+
+        MaskedPropertySource(EnumerablePropertySource<?> source) {
+            super(source.getName(), source);
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return Arrays.stream(source.getPropertyNames()).filter(key -> !isDataSourceKey(key)).toArray(String[]::new);
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return isDataSourceKey(name) ? null : source.getProperty(name);
+        }
+    }
+
+    /*
+     * 各組的檔案 / 目錄設定
+     * - report.pairs.<name>.<key 去掉 report.> 優先；否則主設定有明確指定時改為其下的 <name> 路徑
+     * - 都未指定時回傳 null（沿用預設值，預設值已位於各組輸出目錄下）
+     */
+    private String pairPath(String name, String key) {
+        Environment env = context.getEnvironment();
+        String own = env.getProperty(PAIR_PREFIX + name + "." + key.substring("report.".length()));
+        if (own != null) {
+            return own;
+        }
+        String shared = env.getProperty(key);
+        return shared == null ? null : PER_PAIR_PATHS.get(key).apply(Paths.get(shared), name).toString();
+    }
+
+    // 兩組解析到同一個快照檔 / 結果目錄時拒絕執行（各組同時寫入會互相覆寫）
+    private void checkDistinctPairPaths() {
+        for (String key : PER_PAIR_PATHS.keySet()) {
+            Map<Path, String> owners = new HashMap<>();
+            for (String name : pairNames) {
+                String path = pairPath(name, key);
+                if (path == null) {
+                    continue;
+                }
+                String other = owners.putIfAbsent(Paths.get(path).toAbsolutePath().normalize(), name);
+                if (other != null) {
+                    throw new IllegalStateException(key + " 不可由多組共用（" + other + "、" + name + "）：" + path);
+                }
+            }
+        }
+    }
+
+    // 子 Context 啟用 @ConfigurationProperties 綁定（DataSourceConfig 的連線池 / JdbcTemplate / 分片參數）
+    @Configuration(proxyBeanMethods = false)
+    @EnableConfigurationProperties
+    static class PairContextConfig {
+    }
+
+    // 單組執行結果（失敗時 error 不為 null，其餘欄位為 0 / null）
+    public record PairReport(String name, FileStatusResult status, int nbitsNotFetchedCount, Path reportPath,
+                             Path metricsPath, DailyDelta delta, String error) {
+
+        static PairReport failed(String name, LocalDate date, String error) {
+            return new PairReport(name, new FileStatusResult(date, 0, 0, 0, 0), 0, null, null, null, error);
+        }
+
+        public boolean ok() {
+            return error == null;
+        }
+    }
+}
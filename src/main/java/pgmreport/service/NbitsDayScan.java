@@ -0,0 +1,86 @@
+package pgmreport.service;
+
+import java.time.LocalDate;
+
+/*
+ * NBITS 單日掃描結果（NbitsScanService 一次讀取 nbit_dllog 後分送的三種結果）
+ * - 取檔成功筆數（與原本 COUNT(*) 相同）
+ * - 取檔成功門市集合（與原本 DISTINCT SUBSTR(term_id, 3, 6) 相同）
+ * - 每分鐘取檔成功筆數（時段分佈依設定的分鐘數再彙總）
+ * - 只保存計數與門市鍵值，不保存明細列
+ */
+public final class NbitsDayScan {
+
+    private final LocalDate date;
+    private final int fetchedCount;
+    private final StoreKeySet fetchedStores;
+    // 每分鐘一格（只由本類別寫入，不對外公開）
+    private final DistributionTimeline perMinute;
+
+    private NbitsDayScan(LocalDate date, int fetchedCount, StoreKeySet fetchedStores, DistributionTimeline perMinute) {
+        this.date = date;
+        this.fetchedCount = fetchedCount;
+        this.fetchedStores = fetchedStores;
+        this.perMinute = perMinute;
+    }
+
+    // 無資料的日期
+    public static NbitsDayScan empty(LocalDate date) {
+        return new NbitsDayScan(date, 0, StoreKeySet.empty(), new DistributionTimeline(date, 1));
+    }
+
+    static Accumulator accumulator(LocalDate date) {
+        return new Accumulator(date);
+    }
+
+    // 合併兩段（門市分片）結果：筆數相加、門市取聯集、時段分佈逐格相加
+    public static NbitsDayScan merge(NbitsDayScan a, NbitsDayScan b) {
+        DistributionTimeline perMinute = new DistributionTimeline(a.date, 1);
+        perMinute.merge(a.perMinute);
+        perMinute.merge(b.perMinute);
+        return new NbitsDayScan(a.date, a.fetchedCount + b.fetchedCount, a.fetchedStores.union(b.fetchedStores), perMinute);
+    }
+
+    public LocalDate date() {
+        return date;
+    }
+
+    public int fetchedCount() {
+        return fetchedCount;
+    }
+
+    public StoreKeySet fetchedStores() {
+        return fetchedStores;
+    }
+
+    // 把每分鐘的取檔成功筆數累加到 target（任意時段長度）
+    public void addTimelineTo(DistributionTimeline target) {
+        for (int i = 0; i < perMinute.bucketCount(); i++) {
+            target.addNbits(i * 60, perMinute.nbitsFetched(i));
+        }
+    }
+
+    // 單日累加器：每一列（一筆取檔成功記錄）分送給計數、門市集合、時段分佈
+    static final class Accumulator {
+
+        private final LocalDate date;
+        private int fetched;
+        private final StoreKeySet.Builder stores = StoreKeySet.builder(1024);
+        private final DistributionTimeline perMinute;
+
+        private Accumulator(LocalDate date) {
+            this.date = date;
+            this.perMinute = new DistributionTimeline(date, 1);
+        }
+
+        void accept(String store, int secondOfDay) {
+            fetched++;
+            stores.add(store);
+            perMinute.addNbits(secondOfDay);
+        }
+
+        NbitsDayScan build() {
+            return new NbitsDayScan(date, fetched, stores.build(), perMinute);
+        }
+    }
+}
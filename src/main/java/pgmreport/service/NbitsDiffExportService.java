@@ -1,146 +1,308 @@
-package pgmreport.service;
-
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.stereotype.Service;
-
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
-import java.util.stream.Collectors;
-
-/*
- * NBITS 差異門市查詢服務
- * 比對 IGAL 配信成功 vs NBITS 取檔成功
- * 找出「IGAL 成功但 NBITS 未取檔」門市
- */
-@Service
-public class NbitsDiffExportService {
-	// 日期格式：yyyyMMdd
-    private static final DateTimeFormatter DATE_YYYYMMDD =
-            DateTimeFormatter.BASIC_ISO_DATE; // yyyyMMdd
-    // IGAL 資料庫
-    private final JdbcTemplate igalJdbc;
-    // NBITS 資料庫
-    private final JdbcTemplate nbitsJdbc;
-    // 輸出目錄
-    private final Path outputDir;
-
-    // igalJdbcTemplate 與 nbitsJdbcTemplate 這兩個 Bean，被注入到 NbitsDiffCsvExportService 裡，供該 Service 內部使用。
-    public NbitsDiffExportService(
-            @Qualifier("igalJdbcTemplate") JdbcTemplate igalJdbcTemplate,
-            @Qualifier("nbitsJdbcTemplate") JdbcTemplate nbitsJdbcTemplate,
-            @Value("${report.xlsx.output-dir}") String outputDir) {
-
-        this.igalJdbc = igalJdbcTemplate;
-        this.nbitsJdbc = nbitsJdbcTemplate;
-        this.outputDir = Paths.get(outputDir);
-    }
-
-    // 查詢「NBITS 未取檔」門市明細（給 Excel 用）
-    public List<Row> findNbitsDiffRows(LocalDate date) {  // 依指定日期找出「IGAL 成功但 NBITS 未成功」的門市明細
-        String dateStr   = date.toString();  // 將 LocalDate 轉成字串，格式為 yyyy-MM-dd（例如 2025-12-17）
-        String likeParam = dateStr + "%";  // // 組成 SQL LIKE 參數（例如 2025-12-17%），用於比對 NBITS log_date 前綴
-
-        // 1. IGAL 配信成功門市
-        List<String> igalStores = queryIgalSuccessStores(dateStr); // 從 IGAL 查出「當日配信成功」的門市清單
-
-        // 2. NBITS 取檔成功門市
-        List<String> nbitsStores = queryNbitsSuccessStores(likeParam); // 從 NBITS 查出「當日取檔成功」的門市清單
-        Set<String> nbitsStoreSet = new HashSet<>(nbitsStores);
-
-        if (igalStores.isEmpty()) { // 若 IGAL 當日沒有任何成功門市
-            return List.of(); // 直接回傳空集合
-        }
-
-        // 3. 差集：IGAL 成功，但 NBITS 沒成功的門市
-        List<String> diffStores = igalStores.stream() // 將 IGAL 成功門市清單轉成 Stream 進行集合運算
-                .filter(s -> !nbitsStoreSet.contains(s))  // 過濾掉「NBITS 也成功」的門市，只保留 NBITS 未成功者
-                .distinct()  // 去除重複門市
-                .collect(Collectors.toList());  // 將結果收集回 List，作為下一步查明細的輸入
-
-        // 4. 查詢門市詳細資料
-        return queryStoreDetails(diffStores);
-    }
-
-    // 僅回傳 NBITS 未取檔門市筆數（給主程式顯示）
-    public int countNbitsDiff(LocalDate date) {
-        return findNbitsDiffRows(date).size();
-    }
-
-    // NBITS：取檔成功門市
-    private List<String> queryNbitsSuccessStores(String likeParam) {
-        String sql = """
-            SELECT DISTINCT SUBSTR(term_id, 3, 6) AS store
-            FROM nbit_dllog
-            WHERE TO_CHAR(log_date, 'YYYY-MM-DD HH24:MI:SS') LIKE ?
-              AND file_id = 'SDTDRCV3'
-              AND status = '2'
-            """;
-
-        return nbitsJdbc.query(sql,
-                (rs, rowNum) -> rs.getString("store"),
-                likeParam);
-    }
-
-    // IGAL：指示檔配信成功門市
-    private List<String> queryIgalSuccessStores(String dateParam) {
-        String sql = """
-            SELECT DISTINCT SUBSTR(s.trm_id, 3, 6) AS store
-            FROM send_file_kanri s
-            JOIN ig_ui_sc_t i
-              ON s.trm_id = i.id
-            WHERE s.unyo_f_name = 'SDCDGETR'
-              AND s.file_sts = '8'
-              AND TO_CHAR(s.kidou_date, 'YYYY-MM-DD') = ?
-            """;
-
-        return igalJdbc.query(sql,
-                (rs, rowNum) -> rs.getString("store"),
-                dateParam);
-    }
-
-    // IGAL：查詢門市明細（TRM_ID / DLF_IP1 / ADSL_1）
-    private List<Row> queryStoreDetails(List<String> stores) {
-    	// 防呆：沒有門市清單就直接回空結果
-    	if (stores == null || stores.isEmpty()) {
-            return List.of();
-        }
-    	// 將門市數量轉成 SQL IN 子句的 ? 佔位符，例如：?, ?, ?
-        String placeholders = stores.stream()
-                .map(s -> "?")
-                .collect(Collectors.joining(","));
-     // SQL查詢
-        String sql = """
-            SELECT SUBSTR(id, 3, 6) AS store,
-                   id AS trm_id,
-                   dlf_ip1,
-                   adsl_1
-            FROM ig_ui_sc_t
-            WHERE SUBSTR(id, 3, 6) IN ( %s )
-            """.formatted(placeholders);
-        
-	    // 使用 JdbcTemplate 執行查詢
-	    // PreparedStatement 建立與參數綁定
-        return igalJdbc.query(con -> {
-                    var ps = con.prepareStatement(sql); // 建立 PreparedStatement
-                    for (int i = 0; i < stores.size(); i++) {
-                        ps.setString(i + 1, stores.get(i));  // 依序綁定門市代碼
-                    }
-                    return ps;  // 回傳已設定完成的 Statement
-                },
-        		// 將每一筆查詢結果轉成 Row DTO
-                (rs, rowNum) -> new Row(
-                        rs.getString("trm_id"), // TRM_ID
-                        rs.getString("dlf_ip1"), // DLF_IP1
-                        rs.getString("adsl_1"), // ADSL_1
-                        rs.getString("store") // 門市代碼
-                ));
-    }
-
-    // NBITS 差異門市明細 DTO
-    public record Row(String trmId, String dlfIp1, String adsl1, String store) {}
-}
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.HedgedQueryExecutor.Outcome;
+import pgmreport.service.SourceQueryExecutor.SourceTask;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * NBITS 差異門市查詢服務
+ * 比對 IGAL 配信成功 vs NBITS 取檔成功
+ * 找出「IGAL 成功但 NBITS 未取檔」門市
+ * - IGAL 成功門市取自 IgalScanService、NBITS 取檔成功門市取自 NbitsScanService 的單次掃描（與計數共用同一次讀取）
+ * - 兩邊的掃描有期限並可對備援資料庫對沖（HedgedQueryExecutor）；由備援回應時以 degradedNotes 標示
+ * - 門市明細為串流查詢，只受 JdbcTemplate query-timeout 限制
+ */
+@Service
+public class NbitsDiffExportService {
+    // IGAL 資料庫（門市明細串流查詢）
+    private final JdbcTemplate igalJdbc;
+    // IGAL 單次掃描（成功門市集合）
+    private final IgalScanService igalScan;
+    // NBITS 單次掃描（取檔成功門市集合）
+    private final NbitsScanService nbitsScan;
+    // IGAL / NBITS 並行查詢
+    private final SourceQueryExecutor queryExecutor;
+    // ig_ui_sc_t 門市主檔快取（門市明細改為記憶體查找）
+    private final StoreMasterCache storeMaster;
+    // 查詢量測
+    private final ReportMetrics metrics;
+    // 依日期快取差異門市集合：每個日期的跨庫查詢只會實際執行一次（明細不快取，使用時逐筆查找）
+    // 存活時間內同一批次的 count 與 XLSX 匯出共用同一份結果
+    private final TtlFutureCache<LocalDate, CachedDiff> diffCache;
+    // 門市明細 SQL（依批次大小快取）
+    private final Map<Integer, String> storeDetailSql = new ConcurrentHashMap<>();
+
+    // igalJdbcTemplate / igalScan / nbitsScan 這幾個 Bean，被注入到 NbitsDiffExportService 裡，供該 Service 內部使用。
+    public NbitsDiffExportService(
+            @Qualifier("igalJdbcTemplate") JdbcTemplate igalJdbcTemplate,
+            IgalScanService igalScan,
+            NbitsScanService nbitsScan,
+            SourceQueryExecutor queryExecutor,
+            StoreMasterCache storeMaster,
+            ReportMetrics metrics,
+            @Value("${report.cache.ttl-seconds:600}") long cacheTtlSeconds) {
+
+        this.igalJdbc = igalJdbcTemplate;
+        this.igalScan = igalScan;
+        this.nbitsScan = nbitsScan;
+        this.queryExecutor = queryExecutor;
+        this.storeMaster = storeMaster;
+        this.metrics = metrics;
+        this.diffCache = new TtlFutureCache<>("NBITS 差異查詢", cacheTtlSeconds * 1000L,
+                date -> new CachedDiff(loadNbitsDiffStores(date), new AtomicInteger(-1)));
+    }
+
+    // 查詢「NBITS 未取檔」門市明細，組成 List（保留給需要整份清單的呼叫端；報表匯出改用 streamNbitsDiffRows）
+    public List<Row> findNbitsDiffRows(LocalDate date) {
+        List<Row> rows = new ArrayList<>();
+        streamNbitsDiffRows(date, (trmId, dlfIp1, adsl1, store) -> rows.add(new Row(trmId, dlfIp1, adsl1, store)));
+        return rows;
+    }
+
+    /*
+     * 依日期串流「NBITS 未取檔」門市明細（提供給串流報表匯出）
+     * - 差異門市集合走日期快取；明細每讀到一筆就直接交給 sink，不建立 Row 與 List
+     * - 依門市代碼遞增輸出，與 findNbitsDiffRows 順序相同
+     * - 回傳推送筆數（同時記入快取，之後的 countNbitsDiff 不再查明細）
+     */
+    public int streamNbitsDiffRows(LocalDate date, ReportRowSink sink) {
+        return streamNbitsDiffRows(date, (trmId, dlfIp1, adsl1, store) -> sink.row(trmId, dlfIp1, adsl1));
+    }
+
+    private int streamNbitsDiffRows(LocalDate date, DetailHandler handler) {
+        CachedDiff entry = cachedDiff(date);
+        int count = forEachStoreDetail(entry.stores().toStoreCodes(), handler, true);
+        entry.detailCount().set(count);
+        return count;
+    }
+
+    // 查詢「NBITS 未取檔」門市集合（跨庫差集結果，依日期快取）
+    public StoreKeySet findNbitsDiffStores(LocalDate date) {
+        return cachedDiff(date).stores();
+    }
+
+    // 僅回傳 NBITS 未取檔明細筆數（給主程式顯示）：與匯出共用差異快取，只計數不建立任何資料列
+    public int countNbitsDiff(LocalDate date) {
+        CachedDiff entry = cachedDiff(date);
+        int count = entry.detailCount().get();
+        if (count < 0) {
+            count = forEachStoreDetail(entry.stores().toStoreCodes(), (trmId, dlfIp1, adsl1, store) -> {}, false);
+            entry.detailCount().set(count);
+        }
+        return count;
+    }
+
+    // 差異結果的降級說明（成功門市由備援資料庫回應時；正常時為空）
+    public List<String> degradedNotes(LocalDate date) {
+        return cachedDiff(date).standby()
+                ? List.of("NBITS 未取檔差異由備援資料庫回應（可能有複寫延遲）")
+                : List.of();
+    }
+
+    // 丟棄某日期的差異快取（常駐模式定期重新整理時，下次呼叫重新查詢）
+    public void invalidate(LocalDate date) {
+        diffCache.invalidate(date);
+    }
+
+    // 取得日期快取項目（差集已完成）
+    // 同一日期在快取有效期間內只查一次 DB，之後的呼叫直接回傳快取結果
+    private CachedDiff cachedDiff(LocalDate date) {
+        return diffCache.get(date);
+    }
+
+    // 實際執行跨庫查詢與差集運算（僅由快取呼叫）
+    private Outcome<StoreKeySet> loadNbitsDiffStores(LocalDate date) {  // 依指定日期找出「IGAL 成功但 NBITS 未成功」的門市
+        ReportDateRange range = ReportDateRange.ofDay(date);  // 轉成半開區間 [當日, 次日)
+        SourceTask<Outcome<Map<LocalDate, StoreKeySet>>> igalTask = queryExecutor.submit("IGAL", () -> queryIgalSuccessStores(range));
+        SourceTask<Outcome<Map<LocalDate, StoreKeySet>>> nbitsTask = queryExecutor.submit("NBITS", () -> queryNbitsSuccessStores(range));
+
+        Outcome<Map<LocalDate, StoreKeySet>> igal = igalTask.join();
+        Outcome<Map<LocalDate, StoreKeySet>> nbits = nbitsTask.join();
+        StoreKeySet igalStores = igal.value().getOrDefault(date, StoreKeySet.empty());
+        StoreKeySet nbitsStores = nbits.value().getOrDefault(date, StoreKeySet.empty());
+        return new Outcome<>(igalStores.minus(nbitsStores), igal.standby() || nbits.standby());
+    }
+
+    /*
+     * 依日期區間查詢「NBITS 未取檔」門市明細（補跑用，不經快取）
+     * - IGAL / NBITS 各一次區間查詢，依日期分組後逐日做差集
+     * - 所有日期的差異門市合併後只查一次門市明細，再依日期拆回
+     * - 回傳區間內每一天（無差異的日期為空清單）
+     */
+    public Map<LocalDate, List<Row>> findNbitsDiffRowsByDay(ReportDateRange range) {
+        // 1. IGAL 配信成功門市 / 2. NBITS 取檔成功門市：兩個資料庫同時查詢
+        SourceTask<Outcome<Map<LocalDate, StoreKeySet>>> igalTask = queryExecutor.submit("IGAL", () -> queryIgalSuccessStores(range));
+        SourceTask<Outcome<Map<LocalDate, StoreKeySet>>> nbitsTask = queryExecutor.submit("NBITS", () -> queryNbitsSuccessStores(range));
+
+        Outcome<Map<LocalDate, StoreKeySet>> igal = igalTask.join(); // 每日「配信成功」的門市集合（失敗 / 逾時時拋出 IGAL 來源例外）
+        Outcome<Map<LocalDate, StoreKeySet>> nbits = nbitsTask.join(); // 每日「取檔成功」的門市集合（失敗 / 逾時時拋出 NBITS 來源例外）
+        if (igal.standby() || nbits.standby()) {
+            System.err.println("[WARN] NBITS 未取檔差異（" + range.from() + " ~ " + range.toExclusive().minusDays(1) + "）由備援資料庫回應，可能有複寫延遲");
+        }
+        Map<LocalDate, StoreKeySet> igalByDay = igal.value();
+        Map<LocalDate, StoreKeySet> nbitsByDay = nbits.value();
+
+        // 3. 差集：IGAL 成功，但 NBITS 沒成功的門市（排序 int[] 合併走訪，已去重）
+        Map<LocalDate, List<String>> diffByDay = new LinkedHashMap<>();
+        StoreKeySet.Builder union = StoreKeySet.builder(1024);
+        for (LocalDate day : range.days()) {
+            StoreKeySet igalStores = igalByDay.getOrDefault(day, StoreKeySet.empty());
+            List<String> diffStores = igalStores.isEmpty()  // 若 IGAL 當日沒有任何成功門市
+                    ? List.of()
+                    : igalStores.minus(nbitsByDay.getOrDefault(day, StoreKeySet.empty())).toStoreCodes();
+            diffByDay.put(day, diffStores);
+            diffStores.forEach(union::add);
+        }
+
+        // 4. 查詢門市詳細資料（所有日期合併查一次），再依門市分組
+        Map<String, List<Row>> detailsByStore = new HashMap<>();
+        forEachStoreDetail(union.build().toStoreCodes(), (trmId, dlfIp1, adsl1, store) ->
+                detailsByStore.computeIfAbsent(store, k -> new ArrayList<>()).add(new Row(trmId, dlfIp1, adsl1, store)), true);
+
+        // 5. 依日期拆回，順序與單日查詢相同（門市代碼遞增）
+        Map<LocalDate, List<Row>> rowsByDay = new LinkedHashMap<>();
+        diffByDay.forEach((day, stores) -> {
+            List<Row> rows = new ArrayList<>();
+            for (String store : stores) {
+                rows.addAll(detailsByStore.getOrDefault(store, List.of()));
+            }
+            rowsByDay.put(day, rows);
+        });
+        return rowsByDay;
+    }
+
+    // NBITS：每日取檔成功門市（取自單次掃描，與取檔成功數 / 時段分佈共用同一次讀取）
+    private Outcome<Map<LocalDate, StoreKeySet>> queryNbitsSuccessStores(ReportDateRange range) {
+        Outcome<Map<LocalDate, NbitsDayScan>> scan = nbitsScan.scan(range);
+        Map<LocalDate, StoreKeySet> byDay = new HashMap<>();
+        scan.value().forEach((day, s) -> byDay.put(day, s.fetchedStores()));
+        return new Outcome<>(byDay, scan.standby());
+    }
+
+    // IGAL：每日指示檔配信成功門市（取自單次掃描，與配信計數 / 失敗門市共用同一次讀取）
+    private Outcome<Map<LocalDate, StoreKeySet>> queryIgalSuccessStores(ReportDateRange range) {
+        Outcome<Map<LocalDate, IgalDayScan>> scan = igalScan.scan(range);
+        Map<LocalDate, StoreKeySet> byDay = new HashMap<>();
+        scan.value().forEach((day, s) -> byDay.put(day, s.successStores()));
+        return new Outcome<>(byDay, scan.standby());
+    }
+
+    /*
+     * IGAL：逐筆走訪門市明細（TRM_ID / DLF_IP1 / ADSL_1），回傳明細筆數
+     * - 門市主檔快取啟用時直接在記憶體查找，不查 DB
+     * - 門市清單依 InListBatcher 切批（每批 ≤ 1000，避免 ORA-01795）
+     * - 每批補齊到固定大小，SQL 文字只有少數幾種，可重用執行計畫
+     * - ordered：依門市清單順序輸出；DB 查詢時只暫存並排序當批結果，不保留全部明細
+     *   （只計數時傳 false，明細直接從 ResultSet 計數，不建立任何資料列）
+     */
+    private int forEachStoreDetail(List<String> stores, DetailHandler handler, boolean ordered) {
+    	// 防呆：沒有門市清單就直接回空結果
+    	if (stores == null || stores.isEmpty()) {
+            return 0;
+        }
+
+        int[] count = {0};
+        if (storeMaster.isEnabled()) {
+            StoreMaster master = storeMaster.get();
+            return metrics.phase("STORE-MASTER", "store-details", stage -> {
+                for (String store : stores) {
+                    master.forEachByCode(store, (id, s, dlfIp1, adsl1) -> {
+                        handler.row(id, dlfIp1, adsl1, store);
+                        count[0]++;
+                    });
+                }
+                stage.rows(count[0]);
+                return count[0];  // 已依門市清單順序
+            });
+        }
+
+        return metrics.query("IGAL", "store-details", stage -> {
+            List<List<String>> batches = InListBatcher.batches(stores);
+            for (List<String> batch : batches) {
+                if (!ordered) {
+                    queryStoreDetailBatch(batch, (trmId, dlfIp1, adsl1, store) -> {
+                        handler.row(trmId, dlfIp1, adsl1, store);
+                        count[0]++;
+                    });
+                    continue;
+                }
+                // 依門市清單順序排序當批結果（同門市維持查詢順序）
+                List<Row> rows = new ArrayList<>();
+                queryStoreDetailBatch(batch, (trmId, dlfIp1, adsl1, store) -> rows.add(new Row(trmId, dlfIp1, adsl1, store)));
+                Map<String, Integer> order = new HashMap<>(batch.size() * 2);
+                for (int i = 0; i < batch.size(); i++) {
+                    order.putIfAbsent(batch.get(i), i);
+                }
+                rows.sort(Comparator.comparingInt(r -> order.getOrDefault(r.store(), Integer.MAX_VALUE)));
+                for (Row r : rows) {
+                    handler.row(r.trmId(), r.dlfIp1(), r.adsl1(), r.store());
+                }
+                count[0] += rows.size();
+            }
+            stage.queries(batches.size()).rows(count[0]);
+            return count[0];
+        });
+    }
+
+    // 單批門市明細查詢（batch 長度為固定大小之一），逐筆交給 handler
+    private void queryStoreDetailBatch(List<String> batch, DetailHandler handler) {
+        // SQL查詢：依批次大小取用（同大小共用同一段 SQL 文字）
+        String sql = storeDetailSql.computeIfAbsent(batch.size(), size -> """
+            SELECT SUBSTR(id, 3, 6) AS store,
+                   id AS trm_id,
+                   dlf_ip1,
+                   adsl_1
+            FROM ig_ui_sc_t
+            WHERE SUBSTR(id, 3, 6) IN ( %s )
+            """.formatted(InListBatcher.placeholders(size)));
+
+	    // 使用 JdbcTemplate 執行查詢
+	    // PreparedStatement 建立與參數綁定
+        igalJdbc.query(con -> {
+                    var ps = con.prepareStatement(sql); // 建立 PreparedStatement
+                    for (int i = 0; i < batch.size(); i++) {
+                        ps.setString(i + 1, batch.get(i));  // 依序綁定門市代碼
+                    }
+                    return ps;  // 回傳已設定完成的 Statement
+                },
+        		// 每一筆查詢結果直接交給 handler，不建立 DTO
+                (RowCallbackHandler) rs -> handler.row(
+                        rs.getString("trm_id"), // TRM_ID
+                        rs.getString("dlf_ip1"), // DLF_IP1
+                        rs.getString("adsl_1"), // ADSL_1
+                        rs.getString("store") // 門市代碼
+                ));
+    }
+
+    // 門市明細單列回呼
+    private interface DetailHandler {
+        void row(String trmId, String dlfIp1, String adsl1, String store);
+    }
+
+    // NBITS 差異門市明細 DTO
+    public record Row(String trmId, String dlfIp1, String adsl1, String store) {}
+
+    // 快取項目：差異門市查詢結果 + 明細筆數（尚未走訪明細時為 -1）
+    private record CachedDiff(Outcome<StoreKeySet> outcome, AtomicInteger detailCount) {
+
+        // 差集結果
+        StoreKeySet stores() {
+            return outcome.value();
+        }
+
+        // 是否由備援資料庫回應
+        boolean standby() {
+            return outcome.standby();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.HedgedQueryExecutor.Outcome;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * NBITS 單次掃描服務（IgalScanService 的 NBITS 版）
+ * - 一次讀取區間內 SDTDRCV3 取檔成功的 nbit_dllog，逐列分送給取檔成功數、取檔成功門市、時段分佈三個消費端
+ * - FileStatusReportService（取檔成功數）、NbitsDiffExportService（取檔成功門市）、DistributionTimelineService（時段分佈）
+ *   共用同一份結果：每次執行 NBITS 只掃描一次 nbit_dllog
+ * - 依日期區間快取（report.cache.ttl-seconds）；同一區間併發呼叫只會實際查詢一次
+ * - 分片時每段各自累加，再依日期合併；整段掃描經過期限 / 備援對沖
+ */
+@Service
+public class NbitsScanService {
+
+    // NBITS 單次掃描 SQL（%s 為門市分片條件）
+    private static final String SCAN_SQL = """
+            SELECT TRUNC(log_date) AS day,
+                   SUBSTR(term_id, 3, 6) AS store,
+                   TO_NUMBER(TO_CHAR(log_date, 'SSSSS')) AS sec
+            FROM nbit_dllog
+            WHERE log_date >= ?
+              AND log_date < ?
+              AND file_id = 'SDTDRCV3'
+              AND status = '2'
+              %s
+            """;
+
+    // NBITS 查詢（期限 / 備援）
+    private final HedgedQueryExecutor nbitsHedge;
+    // NBITS 門市分片
+    private final StoreShardExecutor nbitsShards;
+    // 查詢量測
+    private final ReportMetrics metrics;
+    // 依日期區間快取掃描結果
+    private final TtlFutureCache<ReportDateRange, Outcome<Map<LocalDate, NbitsDayScan>>> cache;
+
+    public NbitsScanService(
+            @Qualifier("nbitsHedge") HedgedQueryExecutor nbitsHedge,
+            @Qualifier("nbitsStoreShards") StoreShardExecutor nbitsShards,
+            ReportMetrics metrics,
+            @Value("${report.cache.ttl-seconds:600}") long cacheTtlSeconds) {
+        this.nbitsHedge = nbitsHedge;
+        this.nbitsShards = nbitsShards;
+        this.metrics = metrics;
+        this.cache = new TtlFutureCache<>("NBITS 掃描", cacheTtlSeconds * 1000L, this::load);
+    }
+
+    // 單日掃描結果
+    public NbitsDayScan scanDay(LocalDate date) {
+        return scan(ReportDateRange.ofDay(date)).value().get(date);
+    }
+
+    /*
+     * 區間掃描結果（區間內每一天都有結果，無資料為空）
+     * - standby = true 表示由備援資料庫回應
+     */
+    public Outcome<Map<LocalDate, NbitsDayScan>> scan(ReportDateRange range) {
+        return cache.get(range);
+    }
+
+    // 丟棄包含該日期的快取（常駐模式重新整理時使用）
+    public void invalidate(LocalDate date) {
+        cache.invalidateIf(range -> !date.isBefore(range.from()) && date.isBefore(range.toExclusive()));
+    }
+
+    // 實際掃描：各分段各自累加，再依日期合併
+    private Outcome<Map<LocalDate, NbitsDayScan>> load(ReportDateRange range) {
+        Map<LocalDate, NbitsDayScan> byDay = new LinkedHashMap<>();
+        range.days().forEach(day -> byDay.put(day, NbitsDayScan.empty(day)));
+        boolean standby = false;
+        for (Outcome<Map<LocalDate, NbitsDayScan>> shard : nbitsShards.map(shardRange -> nbitsHedge.query("day-scan",
+                (jdbc, source) -> metrics.query(source, "day-scan", stage -> {
+            Map<LocalDate, NbitsDayScan.Accumulator> accumulators = new HashMap<>();
+            jdbc.query(SCAN_SQL.formatted(shardRange.condition("SUBSTR(term_id, 3, 6)")),
+                    (RowCallbackHandler) rs -> {
+                        accumulators.computeIfAbsent(rs.getDate("day").toLocalDate(), NbitsDayScan::accumulator)
+                                .accept(rs.getString("store"), rs.getInt("sec"));
+                        stage.addRows(1);
+                    },
+                    shardRange.params(range.params()));
+
+            Map<LocalDate, NbitsDayScan> shardByDay = new HashMap<>();
+            accumulators.forEach((day, acc) -> shardByDay.put(day, acc.build()));
+            return shardByDay;
+        })))) {
+            standby |= shard.standby();
+            shard.value().forEach((day, scan) -> byDay.merge(day, scan, NbitsDayScan::merge));
+        }
+        return new Outcome<>(byDay, standby);
+    }
+}
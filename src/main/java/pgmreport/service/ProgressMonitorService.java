@@ -0,0 +1,355 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.FileStatusReportService.FileStatusResult;
+import pgmreport.service.SourceQueryExecutor.SourceTask;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 配信進度常駐監控服務（--monitor）
+ * - 啟動一次 Spring / 連線池後常駐，依排程間隔輪詢
+ * - 以讀取起點（send_file_kanri.kidou_date / nbit_dllog.log_date）只抓起點之後的資料，不再每次掃整天
+ * - 讀取起點 = 高水位減去 report.monitor.lag-seconds：較晚 commit、時間較舊的資料列仍落在重疊區間內，下次輪詢會讀到
+ * - 起點之前的資料列併入「已確定」計數後不再保存；重疊區間的計數每次輪詢整段重建，記憶體只有計數與門市集合
+ * - 配信狀態會從處理中變成成功 / 失敗：尚未結束（file_sts 非 7 / 8）的資料列會把讀取起點壓在自己之前，結束後才確定
+ * - ig_ui_sc_t 命中筆數每日由門市主檔（StoreMaster）載入一次後在記憶體查找，輪詢 SQL 不 JOIN ig_ui_sc_t
+ * - 讀取起點以 CAST(? AS DATE) 綁定，DATE 欄位不會被隱式轉成 TIMESTAMP，可走索引範圍掃描
+ */
+@Service
+public class ProgressMonitorService {
+
+    private static final DateTimeFormatter TIME_HHMMSS = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    // IGAL：讀取起點之後的配信資料列（命中筆數由門市主檔查找，計數語意與 FileStatusReportService 一致）
+    private static final String IGAL_ROWS_SQL = """
+            SELECT trm_id, unyo_f_name, file_sts, kidou_date
+            FROM send_file_kanri
+            WHERE unyo_f_name LIKE 'SDCDGETR%'
+              AND kidou_date >= CAST(? AS DATE)
+              AND kidou_date < ?
+            """;
+
+    // NBITS：讀取起點之後的取檔成功記錄
+    private static final String NBITS_ROWS_SQL = """
+            SELECT term_id, log_date
+            FROM nbit_dllog
+            WHERE log_date >= CAST(? AS DATE)
+              AND log_date < ?
+              AND file_id = 'SDTDRCV3'
+              AND status = '2'
+            """;
+
+    private final JdbcTemplate igalJdbc;
+    private final JdbcTemplate nbitsJdbc;
+    // ig_ui_sc_t 門市主檔快取（每日取一次命中筆數來源）
+    private final StoreMasterCache storeMaster;
+    private final SourceQueryExecutor queryExecutor;
+    // 輪詢間隔（秒）
+    private final long intervalSeconds;
+    // 重疊區間（秒）：每次從高水位往回重讀的長度
+    private final long lagSeconds;
+
+    public ProgressMonitorService(
+            @Qualifier("igalJdbcTemplate") JdbcTemplate igalJdbcTemplate,
+            @Qualifier("nbitsJdbcTemplate") JdbcTemplate nbitsJdbcTemplate,
+            StoreMasterCache storeMaster,
+            SourceQueryExecutor queryExecutor,
+            @Value("${report.monitor.interval-seconds:300}") long intervalSeconds,
+            @Value("${report.monitor.lag-seconds:300}") long lagSeconds) {
+        this.igalJdbc = igalJdbcTemplate;
+        this.nbitsJdbc = nbitsJdbcTemplate;
+        this.storeMaster = storeMaster;
+        this.queryExecutor = queryExecutor;
+        this.intervalSeconds = intervalSeconds;
+        this.lagSeconds = lagSeconds;
+    }
+
+    /*
+     * 常駐監控（阻塞至程序結束）
+     * - fixedDate 為 null 時跟隨系統日期，跨日自動換新的一天（同時重新取得門市主檔）
+     */
+    public void monitor(LocalDate fixedDate) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "report-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        MonitorDay[] current = { null };
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                LocalDate today = fixedDate != null ? fixedDate : LocalDate.now();
+                if (current[0] == null || !today.equals(current[0].progress().day())) {
+                    // 跨日：重新開始累計，門市主檔當日只取一次
+                    StoreMaster master = storeMaster.isEnabled() ? storeMaster.get() : storeMaster.loadUncached();
+                    current[0] = new MonitorDay(new DayProgress(today, lagSeconds), master);
+                }
+                poll(current[0].progress(), current[0].master());
+                printProgress(current[0].progress());
+            } catch (Exception ex) {
+                // 單次輪詢失敗不結束常駐程序，下次輪詢從同一讀取起點重試
+                System.err.println("[ERROR] 監控輪詢失敗：" + ex.getMessage());
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(scheduler::shutdownNow));
+        scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    // 執行一次增量輪詢：IGAL / NBITS 同時查詢讀取起點之後的資料（只含重疊區間與新資料）
+    void poll(DayProgress progress, StoreMaster master) {
+        Date dayEnd = ReportDateRange.ofDay(progress.day()).end();
+        Timestamp igalFrom = progress.igalReadFrom();
+        Timestamp nbitsFrom = progress.nbitsReadFrom();
+
+        SourceTask<List<IgalRow>> igalTask = queryExecutor.submit("IGAL", () -> {
+            List<IgalRow> rows = new ArrayList<>();
+            igalJdbc.query(IGAL_ROWS_SQL,
+                    (RowCallbackHandler) rs -> {
+                        String trmId = rs.getString("trm_id");
+                        rows.add(new IgalRow(
+                                trmId,
+                                rs.getString("unyo_f_name"),
+                                rs.getString("file_sts"),
+                                rs.getTimestamp("kidou_date"),
+                                master.countById(trmId),
+                                master.countByTrmId(trmId)));
+                    },
+                    igalFrom, dayEnd);
+            return rows;
+        });
+        SourceTask<List<NbitsRow>> nbitsTask = queryExecutor.submit("NBITS", () -> {
+            List<NbitsRow> rows = new ArrayList<>();
+            nbitsJdbc.query(NBITS_ROWS_SQL,
+                    (RowCallbackHandler) rs -> rows.add(new NbitsRow(
+                            rs.getString("term_id"),
+                            rs.getTimestamp("log_date"))),
+                    nbitsFrom, dayEnd);
+            return rows;
+        });
+
+        progress.applyIgal(igalTask.join());
+        progress.applyNbits(nbitsTask.join());
+    }
+
+    // Console 輸出目前進度
+    private void printProgress(DayProgress p) {
+        FileStatusResult r = p.snapshot();
+        System.out.println("[MONITOR] " + LocalTime.now().format(TIME_HHMMSS) + " " + r.date()
+                + " 配信總數:" + r.totalCount()
+                + " 成功:" + r.successCount()
+                + " 失敗:" + r.failCount()
+                + " NBITS取檔成功:" + r.nbitsSuccess()
+                + " NBITS未取檔門市:" + p.nbitsDiffStoreCount()
+                + "（本次讀取 IGAL " + p.lastIgalRows() + " 筆 / NBITS " + p.lastNbitsRows() + " 筆）");
+    }
+
+    // 監控中的一天：累計狀態 + 當日門市主檔
+    private record MonitorDay(DayProgress progress, StoreMaster master) {}
+
+    // IGAL 配信資料列（idHits / storeHits 為 ig_ui_sc_t 依 id / '00' || store 的命中筆數）
+    record IgalRow(String trmId, String unyoFName, String fileSts, Timestamp kidouDate, int idHits, int storeHits) {
+
+        // 總數 / 成功數只計 unyo_f_name = 'SDCDGETR'
+        boolean exactName() {
+            return "SDCDGETR".equals(unyoFName);
+        }
+
+        // 已結束（成功 8 / 失敗 7）的配信不會再變動
+        boolean finished() {
+            return "7".equals(fileSts) || "8".equals(fileSts);
+        }
+    }
+
+    // NBITS 取檔成功記錄
+    record NbitsRow(String termId, Timestamp logDate) {}
+
+    /*
+     * 單日累計狀態（僅由排程執行緒存取）
+     * - settled：讀取起點之前的資料列，已結束且不會再讀到，只累加不扣除
+     * - igalTail / nbitsTail：讀取起點之後（重疊區間）的資料列，每次輪詢整段重讀後重建
+     * - 目前結果 = settled + 兩段 tail；不保存任何資料列
+     */
+    static final class DayProgress {
+
+        private final LocalDate day;
+        private final long lagMillis;
+
+        private final Counters settled = new Counters();
+        private Counters igalTail = new Counters();
+        private Counters nbitsTail = new Counters();
+
+        private Timestamp igalReadFrom;
+        private Timestamp igalWatermark;
+        private Timestamp nbitsReadFrom;
+        private Timestamp nbitsWatermark;
+
+        private int lastIgalRows;
+        private int lastNbitsRows;
+
+        DayProgress(LocalDate day, long lagSeconds) {
+            this.day = day;
+            this.lagMillis = lagSeconds * 1000L;
+            Timestamp start = Timestamp.valueOf(day.atStartOfDay());
+            this.igalReadFrom = start;
+            this.igalWatermark = start;
+            this.nbitsReadFrom = start;
+            this.nbitsWatermark = start;
+        }
+
+        LocalDate day() {
+            return day;
+        }
+
+        Timestamp igalReadFrom() {
+            return igalReadFrom;
+        }
+
+        Timestamp nbitsReadFrom() {
+            return nbitsReadFrom;
+        }
+
+        // 套用 IGAL 輪詢結果（igalReadFrom 之後的全部資料列）
+        void applyIgal(List<IgalRow> rows) {
+            Timestamp watermark = igalWatermark;
+            Timestamp earliestPending = null;
+            for (IgalRow row : rows) {
+                watermark = max(watermark, row.kidouDate());
+                if (!row.finished()) {
+                    earliestPending = earliestPending == null ? row.kidouDate() : min(earliestPending, row.kidouDate());
+                }
+            }
+            // 新起點：高水位減去延遲（不往回退），且不超過最早未結束的列
+            Timestamp next = max(igalReadFrom, minus(watermark, lagMillis));
+            if (earliestPending != null) {
+                next = min(next, earliestPending);
+            }
+
+            Counters tail = new Counters();
+            for (IgalRow row : rows) {
+                (row.kidouDate().before(next) ? settled : tail).addIgal(row);
+            }
+            igalTail = tail;
+            igalReadFrom = next;
+            igalWatermark = watermark;
+            lastIgalRows = rows.size();
+        }
+
+        // 套用 NBITS 輪詢結果（nbitsReadFrom 之後的全部資料列；取檔成功記錄不會再變動）
+        void applyNbits(List<NbitsRow> rows) {
+            Timestamp watermark = nbitsWatermark;
+            for (NbitsRow row : rows) {
+                watermark = max(watermark, row.logDate());
+            }
+            Timestamp next = max(nbitsReadFrom, minus(watermark, lagMillis));
+
+            Counters tail = new Counters();
+            for (NbitsRow row : rows) {
+                (row.logDate().before(next) ? settled : tail).addNbits(row);
+            }
+            nbitsTail = tail;
+            nbitsReadFrom = next;
+            nbitsWatermark = watermark;
+            lastNbitsRows = rows.size();
+        }
+
+        // 目前累計結果
+        FileStatusResult snapshot() {
+            return new FileStatusResult(day,
+                    settled.total + igalTail.total,
+                    settled.success + igalTail.success,
+                    settled.fail + igalTail.fail,
+                    settled.nbitsSuccess + nbitsTail.nbitsSuccess);
+        }
+
+        // IGAL 成功但 NBITS 未取檔的門市數
+        int nbitsDiffStoreCount() {
+            Set<String> stores = new HashSet<>(settled.successStores);
+            stores.addAll(igalTail.successStores);
+            stores.removeAll(settled.nbitsStores);
+            stores.removeAll(nbitsTail.nbitsStores);
+            return stores.size();
+        }
+
+        // 目前失敗的 TRM_ID
+        Set<String> failTrmIds() {
+            Set<String> trmIds = new HashSet<>(settled.failTrmIds);
+            trmIds.addAll(igalTail.failTrmIds);
+            return Collections.unmodifiableSet(trmIds);
+        }
+
+        int lastIgalRows() {
+            return lastIgalRows;
+        }
+
+        int lastNbitsRows() {
+            return lastNbitsRows;
+        }
+
+        private static Timestamp minus(Timestamp t, long millis) {
+            return new Timestamp(t.getTime() - millis);
+        }
+
+        private static Timestamp min(Timestamp a, Timestamp b) {
+            return a.before(b) ? a : b;
+        }
+
+        private static Timestamp max(Timestamp a, Timestamp b) {
+            return a.after(b) ? a : b;
+        }
+    }
+
+    // 計數與門市集合（只累加）
+    private static final class Counters {
+
+        private int total;
+        private int success;
+        private int fail;
+        private int nbitsSuccess;
+        // IGAL 成功門市
+        private final Set<String> successStores = new HashSet<>();
+        // 失敗 TRM_ID
+        private final Set<String> failTrmIds = new HashSet<>();
+        // NBITS 取檔成功門市
+        private final Set<String> nbitsStores = new HashSet<>();
+
+        void addIgal(IgalRow row) {
+            if (row.exactName()) {
+                total += row.idHits();
+                if ("8".equals(row.fileSts()) && row.idHits() > 0) {
+                    success += row.idHits();
+                    addIfPresent(successStores, StoreKeyCodec.storeOf(row.trmId()));
+                }
+            }
+            if ("7".equals(row.fileSts()) && row.storeHits() > 0) {
+                fail += row.storeHits();
+                addIfPresent(failTrmIds, row.trmId());
+            }
+        }
+
+        void addNbits(NbitsRow row) {
+            nbitsSuccess++;
+            addIfPresent(nbitsStores, StoreKeyCodec.storeOf(row.termId()));
+        }
+
+        private static void addIfPresent(Set<String> set, String key) {
+            if (key != null) {
+                set.add(key);
+            }
+        }
+    }
+}
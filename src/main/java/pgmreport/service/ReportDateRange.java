@@ -0,0 +1,54 @@
+package pgmreport.service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/*
+ * 查詢日期區間（半開區間 [from, toExclusive)）
+ * - 將 LocalDate 轉成「當日 00:00 ~ 次日 00:00」的綁定參數
+ * - SQL 一律寫成 col >= ? AND col < ?，不對索引欄位套 TRUNC / TO_CHAR，讓 Oracle 可走索引範圍掃描
+ */
+public record ReportDateRange(LocalDate from, LocalDate toExclusive) {
+
+    public ReportDateRange {
+        if (!from.isBefore(toExclusive)) {
+            throw new IllegalArgumentException("日期區間無效：" + from + " ~ " + toExclusive);
+        }
+    }
+
+    // 單日區間：[date 00:00, date+1 00:00)
+    public static ReportDateRange ofDay(LocalDate date) {
+        return new ReportDateRange(date, date.plusDays(1));
+    }
+
+    // 多日區間：[from 00:00, toInclusive+1 00:00)（補跑用）
+    public static ReportDateRange ofDays(LocalDate from, LocalDate toInclusive) {
+        return new ReportDateRange(from, toInclusive.plusDays(1));
+    }
+
+    // 區間內每一天（依日期遞增）
+    public List<LocalDate> days() {
+        return from.datesUntil(toExclusive).toList();
+    }
+
+    // 區間起點綁定值
+    public Date start() {
+        return Date.valueOf(from);
+    }
+
+    // 區間終點綁定值（不含）
+    public Date end() {
+        return Date.valueOf(toExclusive);
+    }
+
+    /*
+     * JdbcTemplate 綁定參數（依序對應 >= ? 與 < ?）
+     * - 使用 java.sql.Date：ojdbc 以 DATE 型別綁定，
+     *   避免以 TIMESTAMP 綁定時 Oracle 把 DATE 欄位隱式轉型而無法使用索引
+     * - 邊界皆為午夜，DATE 精度已足夠
+     */
+    public Object[] params() {
+        return new Object[] { start(), end() };
+    }
+}
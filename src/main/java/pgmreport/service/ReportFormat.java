@@ -0,0 +1,46 @@
+package pgmreport.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/*
+ * 報表輸出格式
+ * - XLSX：POI（記憶體 / 串流模式由 report.xlsx.streaming.enabled 決定）
+ * - CSV / TSV：純文字串流輸出，UTF-8 含 BOM（Excel 直接開啟中文不亂碼）
+ */
+public enum ReportFormat {
+
+    XLSX("xlsx"),
+    CSV("csv"),
+    TSV("tsv");
+
+    // 副檔名
+    private final String extension;
+
+    ReportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    // 依名稱解析（不分大小寫），例如 --format=csv
+    public static ReportFormat parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("不支援的輸出格式：" + name + "（可用 xlsx / csv / tsv）", ex);
+        }
+    }
+
+    // 建立 CSV / TSV 輸出端（XLSX 由 XlsxExportService 依設定建立）
+    ReportWriter openDelimited(Path file) throws IOException {
+        return switch (this) {
+            case CSV -> new DelimitedReportWriter(file, ',');
+            case TSV -> new DelimitedReportWriter(file, '\t');
+            case XLSX -> throw new IllegalStateException("XLSX 不是分隔字元格式");
+        };
+    }
+}
@@ -0,0 +1,349 @@
+package pgmreport.service;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.FileStatusReportService.FileStatusResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+ * 唯讀 HTTP 查詢服務（--serve）
+ * - 使用 JDK 內建 HttpServer，不引入 Web 框架；Spring 仍維持 web-application-type: none
+ * - 依排程間隔重新查詢當日結果，組成記憶體快照（JSON 與 ETag 在重新整理時一次算好），讀取端不碰資料庫
+ * - 只提供監看日期往前 retain-days 天（含當日）的視窗：前幾天由排程執行緒預先載入一次，視窗外或尚未載入的日期回 404
+ *   請求執行緒永遠不查詢資料庫，外部請求無法對 Oracle 加壓或卡住排程重新整理
+ * - 預設只監聽 127.0.0.1（沒有驗證，回應含門市 IP），對外提供時需明確設定 report.http.host
+ * - 支援 ETag / If-None-Match：內容未變時回 304；ETag 只依內容計算，重新整理但資料不變時不會改變
+ *
+ * 端點（GET / HEAD，date 省略時為目前監看的日期）：
+ * - /api/status?date=yyyy-MM-dd：配信狀態彙總（FileStatusResult + NBITS 未取檔筆數 + 降級說明 degraded）
+ * - /api/fail-stores?date=yyyy-MM-dd：指示檔配信失敗門市
+ * - /api/nbits-diff?date=yyyy-MM-dd：NBITS 未取檔門市
+ * - /api/timeline?date=yyyy-MM-dd：配信進度時段分佈（report.timeline.enabled=false 時回 404）
+ */
+@Service
+public class ReportHttpService {
+
+    private final IgalScanService igalScan;
+    private final NbitsScanService nbitsScan;
+    private final FileStatusReportService reportService;
+    private final FailStoreExportService failStoreService;
+    private final NbitsDiffExportService nbitsDiffService;
+    private final DistributionTimelineService timelineService;
+    // 監聽位址 / 埠號
+    private final String host;
+    private final int port;
+    // 當日快照重新整理間隔（秒）
+    private final long refreshSeconds;
+    // 處理請求的執行緒數
+    private final int threads;
+    // 保留天數（含監看日期）
+    private final int retainDays;
+    // 依日期保存的快照（只由排程執行緒寫入）
+    private final NavigableMap<LocalDate, DaySnapshot> snapshots = new ConcurrentSkipListMap<>();
+    // 目前監看的日期（排程重新整理的對象）
+    private volatile LocalDate currentDay = LocalDate.now();
+
+    public ReportHttpService(
+            IgalScanService igalScan,
+            NbitsScanService nbitsScan,
+            FileStatusReportService reportService,
+            FailStoreExportService failStoreService,
+            NbitsDiffExportService nbitsDiffService,
+            DistributionTimelineService timelineService,
+            @Value("${report.http.host:127.0.0.1}") String host,
+            @Value("${report.http.port:8080}") int port,
+            @Value("${report.http.refresh-seconds:300}") long refreshSeconds,
+            @Value("${report.http.retain-days:7}") int retainDays,
+            @Value("${report.http.threads:4}") int threads) {
+        this.igalScan = igalScan;
+        this.nbitsScan = nbitsScan;
+        this.reportService = reportService;
+        this.failStoreService = failStoreService;
+        this.nbitsDiffService = nbitsDiffService;
+        this.timelineService = timelineService;
+        this.host = host;
+        this.port = port;
+        this.refreshSeconds = refreshSeconds;
+        this.threads = Math.max(1, threads);
+        this.retainDays = Math.max(1, retainDays);
+    }
+
+    /*
+     * 常駐提供 HTTP 查詢（阻塞至程序結束）
+     * - fixedDate 為 null 時跟隨系統日期，跨日後改為重新整理新的一天（前一天的快照留在視窗內）
+     */
+    public void serve(LocalDate fixedDate) throws IOException, InterruptedException {
+        currentDay = fixedDate != null ? fixedDate : LocalDate.now();
+        HttpServer server = start();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "report-http-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            refreshWindow(fixedDate != null ? fixedDate : LocalDate.now());
+        }, 0, refreshSeconds, TimeUnit.SECONDS);
+
+        System.out.println("[INFO] HTTP 查詢服務啟動：http://" + host + ":" + server.getAddress().getPort() + "/api/status");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdownNow();
+            server.stop(0);
+        }));
+        scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    // 建立並啟動 HttpServer（port = 0 時由系統指定）
+    HttpServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "report-http-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        server.start();
+        return server;
+    }
+
+    /*
+     * 排程一次：重新查詢監看日期，補載視窗內尚未載入的前幾天，丟棄視窗外的快照
+     * - 監看日期永遠在視窗內，不會被丟棄
+     * - 單日失敗時保留上一份快照（或維持未載入），下次排程再試
+     */
+    void refreshWindow(LocalDate day) {
+        currentDay = day;
+        LocalDate windowStart = day.minusDays(retainDays - 1L);
+        snapshots.headMap(windowStart).clear();
+        snapshots.tailMap(day, false).clear();
+        refresh(day);
+        for (LocalDate d = windowStart; d.isBefore(day); d = d.plusDays(1)) {
+            if (!snapshots.containsKey(d)) {
+                refresh(d);
+            }
+        }
+    }
+
+    // 重新查詢某日並取代快照
+    private void refresh(LocalDate date) {
+        try {
+            snapshots.put(date, load(date));
+        } catch (Exception ex) {
+            System.err.println("[ERROR] 快照重新整理失敗（" + date + "）：" + ex.getMessage());
+        }
+    }
+
+    /*
+     * 查詢並組成單日快照
+     * - 失敗門市 / NBITS 未取檔明細從 ResultSet 逐筆寫成 JSON，不建立資料列 List
+     * - 先丟棄 IGAL / NBITS 掃描與 NBITS 差異快取，確保每次重新整理都是最新資料（之後各查詢共用同一次掃描）
+     */
+    private DaySnapshot load(LocalDate date) {
+        igalScan.invalidate(date);
+        nbitsScan.invalidate(date);
+        nbitsDiffService.invalidate(date);
+        FileStatusResult status = reportService.queryByDate(date);
+
+        JsonWriter fail = new JsonWriter().beginObject().field("date", date.toString());
+        fail.name("rows").beginArray();
+        int failCount = failStoreService.streamFailStores(date, (trmId, dlfIp1, adsl1) -> row(fail, trmId, dlfIp1, adsl1));
+        fail.endArray().field("count", failCount).endObject();
+
+        JsonWriter diff = new JsonWriter().beginObject().field("date", date.toString());
+        diff.name("rows").beginArray();
+        int diffCount = nbitsDiffService.streamNbitsDiffRows(date, (trmId, dlfIp1, adsl1) -> row(diff, trmId, dlfIp1, adsl1));
+        diff.endArray().field("count", diffCount).endObject();
+        status = status.withDegraded(nbitsDiffService.degradedNotes(date));
+
+        JsonWriter statusJson = new JsonWriter().beginObject()
+                .field("date", date.toString())
+                .field("totalCount", status.totalCount())
+                .field("successCount", status.successCount())
+                .field("failCount", status.failCount())
+                .field("nbitsSuccess", status.nbitsSuccess())
+                .field("nbitsNotFetched", diffCount);
+        // 查詢失敗 / 由備援資料庫回應的說明（正常時為空陣列）
+        statusJson.name("degraded").beginArray();
+        status.degraded().forEach(statusJson::value);
+        statusJson.endArray().endObject();
+
+        // 時段分佈：IGAL / NBITS 各串流一次，累加在固定長度陣列（未啟用時為 null）
+        Resource timeline = timelineService.isEnabled() ? Resource.of(timelineService.timeline(date).toJson()) : null;
+
+        return new DaySnapshot(date, Instant.now(),
+                Resource.of(statusJson.toString()), Resource.of(fail.toString()), Resource.of(diff.toString()), timeline);
+    }
+
+    private static void row(JsonWriter json, String trmId, String dlfIp1, String adsl1) {
+        json.beginObject()
+                .field("trmId", trmId)
+                .field("dlfIp1", dlfIp1)
+                .field("adsl1", adsl1)
+                .endObject();
+    }
+
+    // 處理單一請求（任何錯誤都以 JSON 回應，不讓例外中斷伺服器執行緒）
+    private void handle(HttpExchange exchange) {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Function<DaySnapshot, Resource> part = switch (path) {
+                case "/api/status" -> DaySnapshot::status;
+                case "/api/fail-stores" -> DaySnapshot::failStores;
+                case "/api/nbits-diff" -> DaySnapshot::nbitsDiff;
+                case "/api/timeline" -> DaySnapshot::timeline;
+                default -> null;
+            };
+            if (part == null) {
+                sendError(exchange, 404, "未知的路徑：" + path);
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "只支援 GET / HEAD");
+                return;
+            }
+
+            LocalDate date;
+            try {
+                String dateParam = queryParam(exchange, "date");
+                date = dateParam != null ? LocalDate.parse(dateParam) : currentDay;
+            } catch (DateTimeParseException ex) {
+                sendError(exchange, 400, "日期格式需為 yyyy-MM-dd");
+                return;
+            }
+            if (date.isAfter(LocalDate.now())) {
+                sendError(exchange, 400, "不可查詢未來日期：" + date);
+                return;
+            }
+            DaySnapshot snapshot = snapshots.get(date);
+            if (snapshot == null) {
+                // 不在請求執行緒載入：只提供排程已載入的視窗
+                sendError(exchange, 404, "沒有該日期的快照（只提供 " + currentDay.minusDays(retainDays - 1L)
+                        + " ~ " + currentDay + "，載入中的日期請稍後再試）：" + date);
+                return;
+            }
+            send(exchange, snapshot, part);
+        } catch (Exception ex) {
+            System.err.println("[ERROR] HTTP 請求處理失敗：" + ex.getMessage());
+            sendError(exchange, 500, ex.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // 回應快照內容；If-None-Match 命中時回 304（不送內容）
+    private void send(HttpExchange exchange, DaySnapshot snapshot, Function<DaySnapshot, Resource> part) throws IOException {
+        Resource resource = part.apply(snapshot);
+        if (resource == null) {
+            sendError(exchange, 404, "配信時段分佈未啟用（report.timeline.enabled）");
+            return;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=UTF-8");
+        headers.set("ETag", resource.etag());
+        headers.set("Cache-Control", "no-cache");
+        headers.set("X-Snapshot-Refreshed-At", snapshot.refreshedAt().toString());
+
+        if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), resource.etag())) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, resource.body().length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(resource.body());
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            byte[] body = new JsonWriter().beginObject().field("error", message).endObject()
+                    .toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException ex) {
+            // 用戶端已斷線或回應標頭已送出：無法再回應，忽略
+        }
+    }
+
+    // If-None-Match：逗號分隔的 ETag 清單或 *，比對時忽略弱 ETag 前綴 W/
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 取得查詢字串參數（未指定回傳 null）
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // 單日快照（各端點的回應內容；timeline 未啟用時為 null）
+    record DaySnapshot(LocalDate date, Instant refreshedAt, Resource status, Resource failStores, Resource nbitsDiff,
+                       Resource timeline) {}
+
+    // 回應內容與 ETag（內容 SHA-256 前 16 bytes）
+    record Resource(byte[] body, String etag) {
+
+        static Resource of(String json) {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+                return new Resource(body, "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);  // 所有 JDK 都必須提供 SHA-256
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package pgmreport.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 報表各階段量測（Micrometer）
+ * - 每個查詢 / 匯出階段記錄到 MeterRegistry（tag：source / stage）：
+ *   report.stage（Timer，另以 outcome=success|error 區分失敗）、report.stage.rows / report.stage.queries（Counter）、
+ *   report.stage.bytes-written / report.stage.allocated（DistributionSummary，位元組）
+ * - queries 為實際送出的 SQL 次數（IN 清單分批等由 stage.queries() 設定），不再以 fetch size 估算往返次數
+ * - 執行結束後由 registry 內容輸出 JSON 執行摘要（放在 XLSX 旁邊），供容量規劃與效能回歸比對
+ * - Context 中有 MeterRegistry Bean（actuator / Prometheus 等）時同時記錄到該 registry，可由外部匯出與告警；
+ *   外部 registry 的值跨執行累計（reset 只清除本次執行的摘要），並加上 pair tag（多組模式各組分開，單組為 default）
+ */
+@Component
+public class ReportMetrics {
+
+    private static final String STAGE = "report.stage";
+    private static final String ROWS = "report.stage.rows";
+    private static final String QUERIES = "report.stage.queries";
+    private static final String BYTES_WRITTEN = "report.stage.bytes-written";
+    private static final String ALLOCATED = "report.stage.allocated";
+    // 最大耗時保留一整次執行（預設只保留最近幾分鐘，常駐 / 多日模式會歸零）
+    private static final Duration MAX_EXPIRY = Duration.ofDays(1);
+
+    // 本次執行的量測值（JSON 摘要來源）
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    // 記錄對象：本次執行 registry + 外部 registry（有的話；不用 CompositeMeterRegistry，其 clear 會一併移除外部的值）
+    private final List<MeterRegistry> targets;
+    // 組合名稱（pair tag）
+    private final String pair;
+    // 本次執行開始時間
+    private volatile Instant startedAt = Instant.now();
+
+    // 單獨使用（測試 / 量測）：只記錄在本身的 registry
+    public ReportMetrics() {
+        this((MeterRegistry) null, "default");
+    }
+
+    @Autowired
+    public ReportMetrics(ObjectProvider<MeterRegistry> external,
+                         @Value("${report.metrics.pair:default}") String pair) {
+        this(external.getIfAvailable(), pair);
+    }
+
+    ReportMetrics(MeterRegistry external, String pair) {
+        this.pair = pair;
+        this.targets = external == null ? List.of(registry) : List.of(registry, external);
+    }
+
+    // 階段內容（可拋出查詢 / 寫檔例外）
+    @FunctionalInterface
+    public interface StageBody<T, E extends Exception> {
+        T run(Stage stage) throws E;
+    }
+
+    /*
+     * 量測一個資料庫查詢階段（預設 1 次查詢，可由 stage.queries() 調整）
+     * - 例外照常拋出，但計入該階段失敗次數
+     */
+    public <T, E extends Exception> T query(String source, String name, StageBody<T, E> body) throws E {
+        Stage stage = new Stage(source, name);
+        stage.queries(1);
+        return run(stage, body);
+    }
+
+    // 量測一個非查詢階段（XLSX 寫出、記憶體查找等）
+    public <T, E extends Exception> T phase(String source, String name, StageBody<T, E> body) throws E {
+        return run(new Stage(source, name), body);
+    }
+
+    private <T, E extends Exception> T run(Stage stage, StageBody<T, E> body) throws E {
+        boolean ok = false;
+        try {
+            T result = body.run(stage);
+            ok = true;
+            return result;
+        } finally {
+            stage.finish();
+            record(stage, ok);
+        }
+    }
+
+    private void record(Stage stage, boolean ok) {
+        Tags tags = Tags.of("source", stage.source, "stage", stage.name, "pair", pair);
+        for (MeterRegistry target : targets) {
+            Timer.builder(STAGE).tags(tags).tag("outcome", ok ? "success" : "error")
+                    .distributionStatisticExpiry(MAX_EXPIRY).distributionStatisticBufferLength(1)
+                    .register(target).record(stage.elapsedNanos, TimeUnit.NANOSECONDS);
+            Counter.builder(ROWS).tags(tags).register(target).increment(stage.rows);
+            Counter.builder(QUERIES).tags(tags).register(target).increment(stage.queries);
+            DistributionSummary.builder(BYTES_WRITTEN).baseUnit("bytes").tags(tags)
+                    .distributionStatisticExpiry(MAX_EXPIRY).distributionStatisticBufferLength(1)
+                    .register(target).record(stage.bytes);
+            DistributionSummary.builder(ALLOCATED).baseUnit("bytes").tags(tags)
+                    .distributionStatisticExpiry(MAX_EXPIRY).distributionStatisticBufferLength(1)
+                    .register(target).record(stage.allocated);
+        }
+    }
+
+    // 本次執行的量測值
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    // 清除累計值，開始新的一次執行
+    public void reset() {
+        registry.clear();
+        startedAt = Instant.now();
+    }
+
+    // 目前各階段累計值（依名稱排序）
+    public List<StageSummary> snapshot() {
+        Map<String, StageSummary> byName = new TreeMap<>();
+        for (Timer timer : registry.find(STAGE).timers()) {
+            String source = timer.getId().getTag("source");
+            String stage = timer.getId().getTag("stage");
+            byName.computeIfAbsent(source + "." + stage, name -> summary(name, Tags.of("source", source, "stage", stage)));
+        }
+        return new ArrayList<>(byName.values());
+    }
+
+    // 彙整同一來源 / 階段的成功與失敗 Timer 及其 Counter / DistributionSummary
+    private StageSummary summary(String name, Tags tags) {
+        long count = 0;
+        long errors = 0;
+        double totalNanos = 0;
+        double maxNanos = 0;
+        for (Timer timer : registry.find(STAGE).tags(tags).timers()) {
+            count += timer.count();
+            if ("error".equals(timer.getId().getTag("outcome"))) {
+                errors += timer.count();
+            }
+            totalNanos += timer.totalTime(TimeUnit.NANOSECONDS);
+            maxNanos = Math.max(maxNanos, timer.max(TimeUnit.NANOSECONDS));
+        }
+        return new StageSummary(name, count, errors, (long) totalNanos, (long) maxNanos,
+                (long) counted(ROWS, tags), (long) counted(QUERIES, tags),
+                (long) summed(BYTES_WRITTEN, tags), (long) summed(ALLOCATED, tags));
+    }
+
+    private double counted(String meter, Tags tags) {
+        Counter counter = registry.find(meter).tags(tags).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private double summed(String meter, Tags tags) {
+        DistributionSummary summary = registry.find(meter).tags(tags).summary();
+        return summary == null ? 0 : summary.totalAmount();
+    }
+
+    /*
+     * 輸出 JSON 執行摘要
+     * - labels：本次執行的識別資訊（日期 / 區間等）
+     */
+    public Path writeRunSummary(Path file, Map<String, String> labels) throws IOException {
+        JsonWriter json = new JsonWriter().beginObject()
+                .field("startedAt", startedAt.toString())
+                .field("finishedAt", Instant.now().toString());
+        json.name("labels").beginObject();
+        labels.forEach(json::field);
+        json.endObject();
+        json.name("stages").beginArray();
+        for (StageSummary s : snapshot()) {
+            json.beginObject()
+                    .field("name", s.name())
+                    .field("count", s.count())
+                    .field("errors", s.errors())
+                    .field("totalMillis", s.totalNanos() / 1_000_000.0)
+                    .field("maxMillis", s.maxNanos() / 1_000_000.0)
+                    .field("rows", s.rows())
+                    .field("queries", s.queries())
+                    .field("bytesWritten", s.bytesWritten())
+                    .field("allocatedBytes", s.allocatedBytes())
+                    .endObject();
+        }
+        json.endArray().endObject();
+
+        AtomicFileWrite.writeString(file, json.toString());
+        return file;
+    }
+
+    // 各階段累計值
+    public record StageSummary(String name, long count, long errors, long totalNanos, long maxNanos,
+                               long rows, long queries, long bytesWritten, long allocatedBytes) {}
+
+    /*
+     * 單次階段量測（由執行階段的執行緒單獨使用）
+     * - 配置位元組只計算執行 body 的執行緒（HotSpot ThreadMXBean，不支援時為 0）
+     */
+    public static final class Stage {
+
+        private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+        private final String source;
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private final long startAllocated = allocatedBytes();
+        private long rows;
+        private long queries;
+        private long bytes;
+        private long elapsedNanos;
+        private long allocated;
+
+        private Stage(String source, String name) {
+            this.source = source;
+            this.name = name;
+        }
+
+        // 讀取 / 寫出列數
+        public Stage rows(long rows) {
+            this.rows = rows;
+            return this;
+        }
+
+        public Stage addRows(long rows) {
+            this.rows += rows;
+            return this;
+        }
+
+        // 實際送出的查詢次數（IN 清單分批等）
+        public Stage queries(long queries) {
+            this.queries = queries;
+            return this;
+        }
+
+        // 寫出位元組
+        public Stage bytes(long bytes) {
+            this.bytes = bytes;
+            return this;
+        }
+
+        private void finish() {
+            this.elapsedNanos = System.nanoTime() - startNanos;
+            long end = allocatedBytes();
+            this.allocated = end < 0 || startAllocated < 0 ? 0 : end - startAllocated;
+        }
+
+        private static long allocatedBytes() {
+            return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+        }
+
+        private static com.sun.management.ThreadMXBean threadBean() {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean;
+            }
+            return null;
+        }
+    }
+}
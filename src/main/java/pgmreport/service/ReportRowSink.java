@@ -0,0 +1,13 @@
+package pgmreport.service;
+
+/*
+ * 報表資料列接收端
+ * - 查詢結果逐筆從 ResultSet 推送給輸出端（例如 XLSX Sheet），不先組成 List
+ * - 欄位固定為 TRM_ID / DLF_IP1 / ADSL_1，與報表表頭一致
+ */
+@FunctionalInterface
+public interface ReportRowSink {
+
+    // 接收一筆資料列
+    void row(String trmId, String dlfIp1, String adsl1);
+}
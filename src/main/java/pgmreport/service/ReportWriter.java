@@ -0,0 +1,31 @@
+package pgmreport.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * 報表輸出端（XLSX / CSV / TSV 共用介面）
+ * - 依序呼叫：startSheet → row ...（可多個 Sheet）→ finish → close
+ * - row 直接接收 ResultSet 推送的欄位，不先組成 List；寫檔錯誤以 UncheckedIOException 拋出
+ * - 統計類 Sheet（如時段分佈）以 startSheet(名稱, 表頭...) 開始，資料列用 countRow（標籤 + 數值）
+ * - 未呼叫 finish 就 close 時只釋放資源（輸出檔內容不完整）
+ */
+public interface ReportWriter extends ReportRowSink, Closeable {
+
+    // 門市明細 Sheet 的表頭
+    String[] STORE_HEADERS = { "TRM_ID", "DLF_IP1", "ADSL_1" };
+
+    // 開始新的門市明細 Sheet（寫入表頭）
+    default void startSheet(String sheetName) throws IOException {
+        startSheet(sheetName, STORE_HEADERS);
+    }
+
+    // 開始指定表頭的 Sheet
+    void startSheet(String sheetName, String... headers) throws IOException;
+
+    // 寫入一筆統計列：第一欄為標籤，其後為數值
+    void countRow(String label, long... counts);
+
+    // 完成輸出（寫出 / flush 到檔案）
+    void finish() throws IOException;
+}
@@ -0,0 +1,110 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * IGAL / NBITS 查詢並行執行器
+ * - 兩個資料庫互不相依，查詢可同時送出，總耗時約等於最慢的單一來源
+ * - 使用有界執行緒池，避免同時開太多連線；池滿時由呼叫端執行緒直接執行（巢狀提交也不會互相等待而卡死）
+ * - join 時套用逾時；失敗時以 SourceQueryException 標示是哪個來源出錯
+ * - report.concurrency.enabled=false 時退回呼叫端執行緒依序執行
+ */
+@Component
+public class SourceQueryExecutor implements DisposableBean {
+
+    // 並行模式的執行緒池（同步模式為 null）
+    private final ExecutorService pool;
+    // 等待單一來源結果的逾時（毫秒）
+    private final long timeoutMillis;
+
+    public SourceQueryExecutor(
+            @Value("${report.concurrency.enabled:true}") boolean enabled,
+            @Value("${report.concurrency.threads:4}") int threads,
+            @Value("${report.concurrency.timeout-seconds:300}") long timeoutSeconds) {
+        this.pool = enabled ? newPool(threads) : null;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+    }
+
+    // 同步模式（測試或除錯用）：所有任務在呼叫端執行緒依序執行
+    public static SourceQueryExecutor sequential() {
+        return new SourceQueryExecutor(false, 1, Long.MAX_VALUE / 1000);
+    }
+
+    // 提交一個來源的查詢，回傳可 join 的任務
+    public <T> SourceTask<T> submit(String source, Callable<T> query) {
+        if (pool == null) {
+            FutureTask<T> task = new FutureTask<>(query);
+            task.run();  // 同步執行，例外保留在 Future 內，join 時再依來源拋出
+            return new SourceTask<>(source, task, timeoutMillis);
+        }
+        return new SourceTask<>(source, pool.submit(query), timeoutMillis);
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * 建立有界執行緒池
+     * - SynchronousQueue 不排隊：有空閒執行緒就交給它，否則 CallerRunsPolicy 讓呼叫端自己執行
+     * - daemon 執行緒，避免批次結束後 JVM 無法退出
+     */
+    private static ExecutorService newPool(int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "report-query-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // 單一來源的查詢任務
+    public record SourceTask<T>(String source, Future<T> future, long timeoutMillis) {
+
+        // 等待結果；逾時、中斷或查詢例外一律包成 SourceQueryException
+        public T join() {
+            try {
+                return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+                throw new SourceQueryException(source, "查詢逾時（" + timeoutMillis + " ms）", ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                throw new SourceQueryException(source, "查詢被中斷", ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof SourceQueryException sqe) {
+                    throw sqe;  // 巢狀任務已標示來源，直接往上拋
+                }
+                throw new SourceQueryException(source, cause.getMessage(), cause);
+            }
+        }
+    }
+
+    // 標示失敗來源的查詢例外
+    public static class SourceQueryException extends RuntimeException {
+
+        private final String source;
+
+        public SourceQueryException(String source, String message, Throwable cause) {
+            super("[" + source + "] " + message, cause);
+            this.source = source;
+        }
+
+        public String source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package pgmreport.service;
+
+/*
+ * 門市代碼編碼器
+ * - 門市代碼為 SUBSTR(..., 3, 6) 取出的固定 6 位數字，直接轉成 int 比對
+ * - 以 int 陣列取代 String / HashSet，省下每筆門市的字串與雜湊節點配置
+ */
+public final class StoreKeyCodec {
+
+    // 無法編碼（非 6 位數字）
+    public static final int INVALID = -1;
+    // 門市代碼長度
+    private static final int LENGTH = 6;
+
+    private StoreKeyCodec() {
+    }
+
+    // "000123" → 123；非 6 位數字回傳 INVALID
+    public static int encode(String store) {
+        if (store == null || store.length() != LENGTH) {
+            return INVALID;
+        }
+        int key = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = store.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    // SUBSTR(termId, 3, 6) 的 Java 版本（長度不足 3 時同 Oracle 回傳 null）
+    public static String storeOf(String termId) {
+        if (termId == null || termId.length() < 3) {
+            return null;
+        }
+        return termId.substring(2, Math.min(2 + LENGTH, termId.length()));
+    }
+
+    // 123 → "000123"
+    public static String decode(int key) {
+        if (key < 0 || key > 999_999) {
+            throw new IllegalArgumentException("門市鍵值超出範圍：" + key);
+        }
+        char[] buf = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            buf[i] = (char) ('0' + key % 10);
+            key /= 10;
+        }
+        return new String(buf);
+    }
+}
@@ -0,0 +1,152 @@
+package pgmreport.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * 門市次數表（primitive）
+ * - 與 StoreKeySet 相同，6 位數字門市代碼以 StoreKeyCodec 轉成排序 int[]，另以平行 int[] 保存出現次數
+ * - 同一門市重複出現只增加次數：記憶體只與門市數有關，與資料列數無關
+ * - 少數非 6 位數字的代碼另存於 irregular（依加入順序）
+ */
+public final class StoreKeyCounts {
+
+    private static final StoreKeyCounts EMPTY = new StoreKeyCounts(new int[0], new int[0], Map.of());
+
+    // 排序且不重複的門市鍵值
+    private final int[] keys;
+    // keys 對應的出現次數
+    private final int[] counts;
+    // 無法編碼的門市代碼 → 出現次數（通常為空）
+    private final Map<String, Integer> irregular;
+
+    private StoreKeyCounts(int[] keys, int[] counts, Map<String, Integer> irregular) {
+        this.keys = keys;
+        this.counts = counts;
+        this.irregular = irregular;
+    }
+
+    public static StoreKeyCounts empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    // 門市數（不重複）
+    public int size() {
+        return keys.length + irregular.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // 各門市出現次數合計
+    public int total() {
+        int total = 0;
+        for (int c : counts) {
+            total += c;
+        }
+        for (int c : irregular.values()) {
+            total += c;
+        }
+        return total;
+    }
+
+    // 依鍵值遞增逐筆回呼（非數字代碼排在最後）
+    public void forEach(CountConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            consumer.accept(StoreKeyCodec.decode(keys[i]), counts[i]);
+        }
+        irregular.forEach(consumer::accept);
+    }
+
+    // 合併：兩個排序陣列同步走訪，同一門市次數相加
+    public StoreKeyCounts merge(StoreKeyCounts other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        int[] k = new int[keys.length + other.keys.length];
+        int[] c = new int[k.length];
+        int i = 0, j = 0, n = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                k[n] = keys[i];
+                c[n++] = counts[i++];
+            } else if (i == keys.length || other.keys[j] < keys[i]) {
+                k[n] = other.keys[j];
+                c[n++] = other.counts[j++];
+            } else {
+                k[n] = keys[i];
+                c[n++] = counts[i++] + other.counts[j++];
+            }
+        }
+        Map<String, Integer> irr = irregular;
+        if (!other.irregular.isEmpty()) {
+            Map<String, Integer> merged = new LinkedHashMap<>(irregular);
+            other.irregular.forEach((store, count) -> merged.merge(store, count, Integer::sum));
+            irr = merged;
+        }
+        return new StoreKeyCounts(Arrays.copyOf(k, n), Arrays.copyOf(c, n), irr);
+    }
+
+    // 門市單筆回呼
+    @FunctionalInterface
+    public interface CountConsumer {
+        void accept(String store, int count);
+    }
+
+    // 逐筆加入門市代碼，build 時排序並計算次數
+    public static final class Builder {
+
+        private int[] buf;
+        private int size;
+        private Map<String, Integer> irregular = Map.of();
+
+        private Builder(int expectedSize) {
+            this.buf = new int[Math.max(16, expectedSize)];
+        }
+
+        public Builder add(String store) {
+            if (store == null) {
+                return this;
+            }
+            int key = StoreKeyCodec.encode(store);
+            if (key == StoreKeyCodec.INVALID) {
+                if (irregular.isEmpty()) {
+                    irregular = new LinkedHashMap<>();
+                }
+                irregular.merge(store, 1, Integer::sum);
+                return this;
+            }
+            if (size == buf.length) {
+                buf = Arrays.copyOf(buf, size + (size >> 1));
+            }
+            buf[size++] = key;
+            return this;
+        }
+
+        public StoreKeyCounts build() {
+            int[] sorted = Arrays.copyOf(buf, size);
+            Arrays.sort(sorted);
+            int[] keys = new int[sorted.length];
+            int[] counts = new int[sorted.length];
+            int n = 0;
+            for (int key : sorted) {
+                if (n > 0 && keys[n - 1] == key) {
+                    counts[n - 1]++;
+                } else {
+                    keys[n] = key;
+                    counts[n++] = 1;
+                }
+            }
+            return new StoreKeyCounts(Arrays.copyOf(keys, n), Arrays.copyOf(counts, n), irregular);
+        }
+    }
+}
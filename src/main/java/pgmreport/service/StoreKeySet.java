@@ -0,0 +1,223 @@
+package pgmreport.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/*
+ * 門市集合（primitive）
+ * - 6 位數字門市代碼以 StoreKeyCodec 轉成 int，存成排序且不重複的 int[]
+ * - 差集以兩個排序陣列合併走訪（merge-diff）計算，不建立 HashSet
+ * - 少數非 6 位數字的代碼另存於 irregular，結果與字串比對完全一致
+ */
+public final class StoreKeySet {
+
+    private static final StoreKeySet EMPTY = new StoreKeySet(new int[0], Set.of());
+
+    // 排序且不重複的門市鍵值
+    private final int[] keys;
+    // 無法編碼的門市代碼（通常為空）
+    private final Set<String> irregular;
+
+    private StoreKeySet(int[] keys, Set<String> irregular) {
+        this.keys = keys;
+        this.irregular = irregular;
+    }
+
+    public static StoreKeySet empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    // 由門市代碼清單建立（重複值與 null 會被忽略）
+    public static StoreKeySet of(Collection<String> stores) {
+        Builder builder = builder(stores.size());
+        stores.forEach(builder::add);
+        return builder.build();
+    }
+
+    // 門市數
+    public int size() {
+        return keys.length + irregular.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(String store) {
+        int key = StoreKeyCodec.encode(store);
+        return key == StoreKeyCodec.INVALID
+                ? irregular.contains(store)
+                : Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    // 差集：this - other（兩個排序陣列同步走訪，O(n + m)）
+    public StoreKeySet minus(StoreKeySet other) {
+        int[] a = keys;
+        int[] b = other.keys;
+        int[] out = new int[a.length];
+        int n = 0;
+        int j = 0;
+        for (int key : a) {
+            while (j < b.length && b[j] < key) {
+                j++;
+            }
+            if (j >= b.length || b[j] != key) {
+                out[n++] = key;
+            }
+        }
+
+        Set<String> restIrregular = irregular;
+        if (!irregular.isEmpty() && !other.irregular.isEmpty()) {
+            restIrregular = new LinkedHashSet<>(irregular);
+            restIrregular.removeAll(other.irregular);
+        }
+        return new StoreKeySet(n == a.length ? a : Arrays.copyOf(out, n), restIrregular);
+    }
+
+    // 交集：this ∩ other（同樣以合併走訪計算）
+    public StoreKeySet intersect(StoreKeySet other) {
+        int[] a = keys;
+        int[] b = other.keys;
+        int[] out = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        Set<String> common = Set.of();
+        if (!irregular.isEmpty() && !other.irregular.isEmpty()) {
+            common = new LinkedHashSet<>(irregular);
+            common.retainAll(other.irregular);
+        }
+        return new StoreKeySet(Arrays.copyOf(out, n), common);
+    }
+
+    // 聯集：this ∪ other（合併走訪，分片查詢結果合併用）
+    public StoreKeySet union(StoreKeySet other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        int[] a = keys;
+        int[] b = other.keys;
+        int[] out = new int[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                out[n++] = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        Set<String> all = irregular;
+        if (!other.irregular.isEmpty()) {
+            all = new LinkedHashSet<>(irregular);
+            all.addAll(other.irregular);
+        }
+        return new StoreKeySet(n == out.length ? out : Arrays.copyOf(out, n), all);
+    }
+
+    // 二進位輸出：鍵值數 + 鍵值（遞增）+ 非數字代碼數 + 代碼
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(keys.length);
+        for (int key : keys) {
+            out.writeInt(key);
+        }
+        out.writeInt(irregular.size());
+        for (String store : irregular) {
+            out.writeUTF(store);
+        }
+    }
+
+    // 讀回 writeTo 的輸出
+    static StoreKeySet readFrom(DataInput in) throws IOException {
+        int[] keys = new int[in.readInt()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = in.readInt();
+        }
+        int irregularCount = in.readInt();
+        Set<String> irregular = irregularCount == 0 ? Set.of() : new LinkedHashSet<>();
+        for (int i = 0; i < irregularCount; i++) {
+            irregular.add(in.readUTF());
+        }
+        return new StoreKeySet(keys, irregular);
+    }
+
+    // 轉回門市代碼清單（依鍵值遞增，非數字代碼排在最後）
+    public List<String> toStoreCodes() {
+        List<String> stores = new ArrayList<>(size());
+        for (int key : keys) {
+            stores.add(StoreKeyCodec.decode(key));
+        }
+        stores.addAll(irregular);
+        return stores;
+    }
+
+    // 逐筆加入門市代碼，build 時排序去重
+    public static final class Builder {
+
+        private int[] buf;
+        private int size;
+        private Set<String> irregular = Set.of();
+
+        private Builder(int expectedSize) {
+            this.buf = new int[Math.max(16, expectedSize)];
+        }
+
+        public Builder add(String store) {
+            if (store == null) {
+                return this;
+            }
+            int key = StoreKeyCodec.encode(store);
+            if (key == StoreKeyCodec.INVALID) {
+                if (irregular.isEmpty()) {
+                    irregular = new LinkedHashSet<>();
+                }
+                irregular.add(store);
+                return this;
+            }
+            if (size == buf.length) {
+                buf = Arrays.copyOf(buf, size + (size >> 1));
+            }
+            buf[size++] = key;
+            return this;
+        }
+
+        public StoreKeySet build() {
+            int[] keys = Arrays.copyOf(buf, size);
+            Arrays.sort(keys);
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (n == 0 || keys[n - 1] != keys[i]) {
+                    keys[n++] = keys[i];
+                }
+            }
+            return new StoreKeySet(n == keys.length ? keys : Arrays.copyOf(keys, n), irregular);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package pgmreport.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*
+ * ig_ui_sc_t 門市主檔快照（不可變）
+ * - 欄位以平行陣列保存（id / store / dlf_ip1 / adsl_1），不建立每列物件
+ * - 兩個索引：
+ *   byCode  ：SUBSTR(id, 3, 6) → 對應 NBITS 差異門市明細查詢
+ *   byStore ：store 欄位 → 對應 send_file_kanri.trm_id = '00' || store 的 JOIN
+ * - 可寫出 / 讀入二進位快照檔（讀入時以 memory-mapped 方式解碼）
+ */
+public final class StoreMaster {
+
+    // 快照檔識別碼 "PGMS" 與格式版本
+    private static final int MAGIC = 0x50474D53;
+    private static final int VERSION = 1;
+
+    private final Signature signature;
+    private final String[] ids;
+    private final String[] stores;
+    private final String[] dlfIp1s;
+    private final String[] adsl1s;
+    private final KeyIndex byCode;
+    private final KeyIndex byStore;
+
+    private StoreMaster(Signature signature, String[] ids, String[] stores, String[] dlfIp1s, String[] adsl1s) {
+        this.signature = signature;
+        this.ids = ids;
+        this.stores = stores;
+        this.dlfIp1s = dlfIp1s;
+        this.adsl1s = adsl1s;
+
+        String[] codes = new String[ids.length];
+        String[] storeKeys = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            codes[i] = StoreKeyCodec.storeOf(ids[i]);
+            storeKeys[i] = stores[i] == null ? "" : stores[i]; // Oracle：'00' || NULL = '00'
+        }
+        this.byCode = new KeyIndex(codes);
+        this.byStore = new KeyIndex(storeKeys);
+    }
+
+    public static Builder builder(Signature signature) {
+        return new Builder(signature);
+    }
+
+    // 主檔變更簽章（資料筆數 + 最大 ORA_ROWSCN）
+    public Signature signature() {
+        return signature;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    // 依門市代碼（SUBSTR(id, 3, 6)）逐筆回呼，回傳命中筆數
+    public int forEachByCode(String code, EntryConsumer consumer) {
+        return forEach(byCode.lookup(code), consumer);
+    }
+
+    // 依 TRM_ID（= '00' || store）逐筆回呼，回傳命中筆數
+    public int forEachByTrmId(String trmId, EntryConsumer consumer) {
+        if (trmId == null || !trmId.startsWith("00")) {
+            return 0;
+        }
+        return forEach(byStore.lookup(trmId.substring(2)), consumer);
+    }
+
+    // ig_ui_sc_t.id = trmId 的筆數（對應 JOIN (SELECT id, COUNT(*) ... GROUP BY id)）
+    public int countById(String trmId) {
+        if (trmId == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int row : byCode.lookup(StoreKeyCodec.storeOf(trmId))) {
+            if (trmId.equals(ids[row])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // '00' || store = trmId 的筆數（對應 JOIN (SELECT '00' || store ... GROUP BY store)）
+    public int countByTrmId(String trmId) {
+        if (trmId == null || !trmId.startsWith("00")) {
+            return 0;
+        }
+        return byStore.lookup(trmId.substring(2)).length;
+    }
+
+    private int forEach(int[] rows, EntryConsumer consumer) {
+        for (int row : rows) {
+            consumer.accept(ids[row], stores[row], dlfIp1s[row], adsl1s[row]);
+        }
+        return rows.length;
+    }
+
+    // 主檔單列回呼
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(String id, String store, String dlfIp1, String adsl1);
+    }
+
+    // 寫出二進位快照（先寫暫存檔再置換，讀取端不會看到寫到一半的檔案）
+    public void write(Path file) throws IOException {
+        Path tmp = AtomicFileWrite.tempFileFor(file);
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(signature.rowCount());
+                out.writeLong(signature.changeScn());
+                out.writeInt(ids.length);
+                for (int i = 0; i < ids.length; i++) {
+                    writeString(out, ids[i]);
+                    writeString(out, stores[i]);
+                    writeString(out, dlfIp1s[i]);
+                    writeString(out, adsl1s[i]);
+                }
+            }
+            AtomicFileWrite.commit(tmp, file);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // 讀入二進位快照（格式不符時拋出 IOException，由呼叫端改從 DB 載入）
+    public static StoreMaster read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            try {
+                if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                    throw new IOException("門市主檔快照格式不符：" + file);
+                }
+                Builder builder = builder(new Signature(buf.getLong(), buf.getLong()));
+                int n = buf.getInt();
+                for (int i = 0; i < n; i++) {
+                    builder.add(readString(buf), readString(buf), readString(buf), readString(buf));
+                }
+                return builder.build();
+            } catch (BufferUnderflowException | IllegalArgumentException ex) {
+                throw new IOException("門市主檔快照損毀：" + file, ex);
+            }
+        }
+    }
+
+    // 字串：長度（-1 = null）+ UTF-8 位元組
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 主檔變更簽章
+    public record Signature(long rowCount, long changeScn) {}
+
+    // 依序加入主檔資料列
+    public static final class Builder {
+
+        private final Signature signature;
+        private final List<String> ids = new ArrayList<>();
+        private final List<String> stores = new ArrayList<>();
+        private final List<String> dlfIp1s = new ArrayList<>();
+        private final List<String> adsl1s = new ArrayList<>();
+
+        private Builder(Signature signature) {
+            this.signature = signature;
+        }
+
+        public Builder add(String id, String store, String dlfIp1, String adsl1) {
+            ids.add(id);
+            stores.add(store);
+            dlfIp1s.add(dlfIp1);
+            adsl1s.add(adsl1);
+            return this;
+        }
+
+        public StoreMaster build() {
+            return new StoreMaster(signature,
+                    ids.toArray(String[]::new),
+                    stores.toArray(String[]::new),
+                    dlfIp1s.toArray(String[]::new),
+                    adsl1s.toArray(String[]::new));
+        }
+    }
+
+    /*
+     * 門市代碼索引
+     * - 6 位數字代碼：排序後的 int 鍵值 + 對應列號，二分搜尋
+     * - 其他代碼（非 6 位數字）：少量，放 HashMap
+     * - 同一代碼多列時依載入順序回傳
+     */
+    private static final class KeyIndex {
+
+        private static final int[] NONE = new int[0];
+
+        private final int[] keys;
+        private final int[] rows;
+        private final Map<String, int[]> irregular = new HashMap<>();
+
+        KeyIndex(String[] codes) {
+            long[] packed = new long[codes.length];
+            int n = 0;
+            Map<String, List<Integer>> others = new HashMap<>();
+            for (int row = 0; row < codes.length; row++) {
+                if (codes[row] == null) {
+                    continue;  // NULL 代碼不會被任何條件命中
+                }
+                int key = StoreKeyCodec.encode(codes[row]);
+                if (key == StoreKeyCodec.INVALID) {
+                    others.computeIfAbsent(codes[row], k -> new ArrayList<>()).add(row);
+                } else {
+                    packed[n++] = ((long) key << 32) | row;  // 鍵值在高位、列號在低位，排序後同鍵值維持載入順序
+                }
+            }
+            Arrays.sort(packed, 0, n);
+            this.keys = new int[n];
+            this.rows = new int[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = (int) (packed[i] >>> 32);
+                rows[i] = (int) packed[i];
+            }
+            others.forEach((code, list) -> irregular.put(code, list.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        int[] lookup(String code) {
+            if (code == null) {
+                return NONE;
+            }
+            int key = StoreKeyCodec.encode(code);
+            if (key == StoreKeyCodec.INVALID) {
+                return irregular.getOrDefault(code, NONE);
+            }
+            // 下界二分搜尋
+            int lo = 0;
+            int hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int end = lo;
+            while (end < keys.length && keys[end] == key) {
+                end++;
+            }
+            return end == lo ? NONE : Arrays.copyOfRange(rows, lo, end);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import pgmreport.service.StoreMaster.Signature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ * ig_ui_sc_t 門市主檔快取
+ * - 第一次使用時優先讀本機快照檔；快照不存在 / 損毀才整表載入
+ * - 每隔 TTL 以簽章（COUNT(*) + MAX(ORA_ROWSCN)）確認主檔是否異動，未異動只延長有效期，異動才整表重載並更新快照
+ * - 簽章查詢失敗時沿用現有快取（主檔極少異動），完全沒有資料時才拋出例外
+ * - report.store-master.enabled=false 時各服務改回直接 JOIN / 查詢 ig_ui_sc_t
+ */
+@Component
+public class StoreMasterCache {
+
+    // 主檔變更簽章：任一資料區塊異動 ORA_ROWSCN 都會變大，刪除則筆數改變
+    private static final String SIGNATURE_SQL = """
+            SELECT COUNT(*) AS cnt, NVL(MAX(ORA_ROWSCN), 0) AS scn
+            FROM ig_ui_sc_t
+            """;
+
+    private static final String LOAD_SQL = """
+            SELECT id, store, dlf_ip1, adsl_1
+            FROM ig_ui_sc_t
+            """;
+
+    // IGAL 資料庫
+    private final JdbcTemplate igalJdbc;
+    // 查詢量測
+    private final ReportMetrics metrics;
+    // 是否啟用
+    private final boolean enabled;
+    // 簽章確認間隔（毫秒）
+    private final long ttlMillis;
+    // 本機快照檔
+    private final Path snapshotFile;
+
+    private volatile StoreMaster master;
+    private volatile long checkedUntil;
+
+    public StoreMasterCache(
+            @Qualifier("igalJdbcTemplate") JdbcTemplate igalJdbcTemplate,
+            ReportMetrics metrics,
+            @Value("${report.store-master.enabled:true}") boolean enabled,
+            @Value("${report.store-master.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${report.store-master.snapshot-file:${report.xlsx.output-dir}/.store-master.bin}") String snapshotFile) {
+        this.igalJdbc = igalJdbcTemplate;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.snapshotFile = Paths.get(snapshotFile);
+    }
+
+    // 停用快取（測試 / 不使用主檔快取時）
+    public static StoreMasterCache disabled() {
+        return new StoreMasterCache(null, null, false, 0, "");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // 取得目前有效的主檔（必要時確認簽章 / 重載）
+    public StoreMaster get() {
+        StoreMaster current = master;
+        if (current != null && System.currentTimeMillis() < checkedUntil) {
+            return current;
+        }
+        synchronized (this) {
+            if (master == null || System.currentTimeMillis() >= checkedUntil) {
+                refresh();
+            }
+            return master;
+        }
+    }
+
+    // 不經快取 / 快照直接整表載入一次（主檔快取停用時，常駐監控每日呼叫一次）
+    public StoreMaster loadUncached() {
+        return load(new Signature(0, 0));
+    }
+
+    private void refresh() {
+        try {
+            if (master == null) {
+                master = readSnapshot();
+            }
+            Signature signature = metrics.query("IGAL", "store-master-signature",
+                    stage -> igalJdbc.queryForObject(SIGNATURE_SQL,
+                            (rs, rowNum) -> new Signature(rs.getLong("cnt"), rs.getLong("scn"))));
+            if (master == null || !master.signature().equals(signature)) {
+                master = load(signature);
+                writeSnapshot(master);
+            }
+        } catch (RuntimeException ex) {
+            if (master == null) {
+                throw ex;
+            }
+            System.err.println("[WARN] 門市主檔簽章確認失敗，沿用現有快取：" + ex.getMessage());
+        }
+        checkedUntil = System.currentTimeMillis() + ttlMillis;
+    }
+
+    // 整表載入（逐筆寫入 Builder，不經 List<Map>）
+    private StoreMaster load(Signature signature) {
+        StoreMaster loaded = metrics.query("IGAL", "store-master-load", stage -> {
+            StoreMaster.Builder builder = StoreMaster.builder(signature);
+            igalJdbc.query(LOAD_SQL, (RowCallbackHandler) rs -> builder.add(
+                    rs.getString("id"),
+                    rs.getString("store"),
+                    rs.getString("dlf_ip1"),
+                    rs.getString("adsl_1")));
+            StoreMaster master = builder.build();
+            stage.rows(master.size());
+            return master;
+        });
+        System.out.println("[INFO] 門市主檔載入完成：" + loaded.size() + " 筆");
+        return loaded;
+    }
+
+    private StoreMaster readSnapshot() {
+        if (!Files.isRegularFile(snapshotFile)) {
+            return null;
+        }
+        try {
+            return StoreMaster.read(snapshotFile);
+        } catch (IOException ex) {
+            System.err.println("[WARN] 門市主檔快照無法讀取，改由資料庫載入：" + ex.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSnapshot(StoreMaster loaded) {
+        try {
+            loaded.write(snapshotFile);
+        } catch (IOException ex) {
+            // 快照只影響下次啟動速度，寫入失敗不影響本次結果
+            System.err.println("[WARN] 門市主檔快照寫入失敗：" + ex.getMessage());
+        }
+    }
+}
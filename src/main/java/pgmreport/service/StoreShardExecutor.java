@@ -0,0 +1,162 @@
+package pgmreport.service;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import pgmreport.service.SourceQueryExecutor.SourceQueryException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 門市代碼分片查詢執行器（每個資料來源一個）
+ * - 依門市代碼（SUBSTR(..., 3, 6)）字串順序把門市切成 count 段，同一個查詢拆成每段一條 SQL
+ * - 各段在該來源專用的有界執行緒池上執行（最多 concurrency 條同時進行，其餘排隊），避免單一長時間掃描逾時
+ * - 第一段包含門市代碼為 NULL 的資料、最後一段沒有上限：各段互不重疊且涵蓋全部資料，合併結果與不分片相同
+ * - count = 1 時不加任何條件、不經執行緒池，SQL 與原本完全相同
+ * - 併發數需小於該來源連線池大小，保留連線給其他同時進行的查詢
+ */
+public class StoreShardExecutor implements DisposableBean {
+
+    // 門市代碼為 6 位數字，分段邊界依數值平均切分
+    private static final int STORE_SPACE = 1_000_000;
+
+    // 來源名稱（例外訊息 / 執行緒名稱用）
+    private final String source;
+    // 各段門市代碼範圍
+    private final List<StoreRange> ranges;
+    // 分段執行緒池（只有一段時為 null）
+    private final ExecutorService pool;
+
+    public StoreShardExecutor(String source, int count, int concurrency) {
+        this.source = source;
+        this.ranges = StoreRange.split(Math.max(1, count));
+        this.pool = ranges.size() == 1 ? null : newPool(source, Math.max(1, Math.min(concurrency, ranges.size())));
+    }
+
+    // 不分片（測試或未設定時）
+    public static StoreShardExecutor single(String source) {
+        return new StoreShardExecutor(source, 1, 1);
+    }
+
+    public int shardCount() {
+        return ranges.size();
+    }
+
+    /*
+     * 每一段執行一次 query，依分段順序回傳各段結果
+     * - 任一段失敗時取消其餘各段，以 SourceQueryException 標示來源與分段
+     */
+    public <T> List<T> map(ShardQuery<T> query) {
+        if (pool == null) {
+            return List.of(query.run(ranges.get(0)));
+        }
+
+        List<Future<T>> futures = new ArrayList<>(ranges.size());
+        for (StoreRange range : ranges) {
+            futures.add(pool.submit(() -> query.run(range)));
+        }
+        List<T> results = new ArrayList<>(ranges.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(join(futures.get(i), i));
+            }
+        } finally {
+            futures.forEach(f -> f.cancel(true));  // 已完成的任務 cancel 為 no-op
+        }
+        return results;
+    }
+
+    private <T> T join(Future<T> future, int shard) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SourceQueryException(source, "分片 " + (shard + 1) + "/" + ranges.size() + " 查詢被中斷", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SourceQueryException sqe) {
+                throw sqe;
+            }
+            throw new SourceQueryException(source,
+                    "分片 " + (shard + 1) + "/" + ranges.size() + " 查詢失敗：" + cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    // 固定大小執行緒池：超出併發數的分段排隊等待；daemon 執行緒，避免批次結束後 JVM 無法退出
+    private static ExecutorService newPool(String source, int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "report-shard-" + source.toLowerCase() + "-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    // 單一分段的查詢
+    @FunctionalInterface
+    public interface ShardQuery<T> {
+        T run(StoreRange range);
+    }
+
+    /*
+     * 門市代碼範圍 [from, to)（字串比較）
+     * - from = null：沒有下限，且包含門市代碼為 NULL 的資料
+     * - to = null：沒有上限
+     */
+    public record StoreRange(String from, String to) {
+
+        // 切成 count 段（count = 1 時為不限範圍）
+        static List<StoreRange> split(int count) {
+            List<StoreRange> ranges = new ArrayList<>(count);
+            String from = null;
+            for (int i = 1; i < count; i++) {
+                String to = String.format("%06d", (int) ((long) STORE_SPACE * i / count));
+                ranges.add(new StoreRange(from, to));
+                from = to;
+            }
+            ranges.add(new StoreRange(from, null));
+            return ranges;
+        }
+
+        /*
+         * 分段條件（接在 WHERE 之後，以 AND 開頭；不限範圍時為空字串）
+         * - storeExpr：門市代碼運算式，例如 SUBSTR(s.trm_id, 3, 6)
+         */
+        public String condition(String storeExpr) {
+            if (from == null && to == null) {
+                return "";
+            }
+            if (from == null) {
+                return "AND (" + storeExpr + " < ? OR " + storeExpr + " IS NULL)";
+            }
+            if (to == null) {
+                return "AND " + storeExpr + " >= ?";
+            }
+            return "AND " + storeExpr + " >= ? AND " + storeExpr + " < ?";
+        }
+
+        // 綁定參數：原查詢參數後接分段邊界（與 condition 的 ? 順序一致）
+        public Object[] params(Object... leading) {
+            List<Object> params = new ArrayList<>(Arrays.asList(leading));
+            if (from != null) {
+                params.add(from);
+            }
+            if (to != null) {
+                params.add(to);
+            }
+            return params.toArray();
+        }
+    }
+}
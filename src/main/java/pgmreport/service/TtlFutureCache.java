@@ -0,0 +1,66 @@
+package pgmreport.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/*
+ * 有存活時間的載入結果快取（IGAL / NBITS 掃描、NBITS 差異共用）
+ * - 同一鍵值併發呼叫時只放入一個 FutureTask，只會實際載入一次，其餘呼叫等待同一份結果
+ * - 每次呼叫先清除過期項目，避免常駐程序無限累積
+ * - 載入失敗不快取：移除該項目後拋出原本的 RuntimeException，下次呼叫重新載入
+ */
+final class TtlFutureCache<K, V> {
+
+    // 錯誤訊息用名稱（例如「IGAL 掃描」）
+    private final String name;
+    // 存活時間（毫秒；0 = 每次呼叫都重新載入）
+    private final long ttlMillis;
+    private final Function<K, V> loader;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    TtlFutureCache(String name, long ttlMillis, Function<K, V> loader) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.loader = loader;
+    }
+
+    // 取得鍵值對應的結果（未快取 / 已過期時載入）
+    V get(K key) {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(e -> e.expiresAt() <= now);
+
+        Entry<V> entry = entries.computeIfAbsent(key,
+                k -> new Entry<>(new FutureTask<>(() -> loader.apply(k)), now + ttlMillis));
+        entry.task().run();  // 只會實際執行一次，重複呼叫為 no-op
+
+        try {
+            return entry.task().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(name + "被中斷", ex);
+        } catch (ExecutionException ex) {
+            entries.remove(key, entry);  // 失敗結果不快取
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(name + "失敗", ex.getCause());
+        }
+    }
+
+    // 丟棄單一鍵值
+    void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    // 丟棄符合條件的鍵值
+    void invalidateIf(Predicate<K> condition) {
+        entries.keySet().removeIf(condition);
+    }
+
+    // 快取項目：載入任務 + 到期時間
+    private record Entry<V>(FutureTask<V> task, long expiresAt) {}
+}
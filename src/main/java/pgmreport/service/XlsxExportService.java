@@ -1,120 +1,231 @@
-package pgmreport.service;
-
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Service;
-
-import java.io.IOException;
-import java.nio.file.*;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-
-/*
- * 緊急復舊失敗門市 Excel 匯出服務
- * - 組合多來源資料
- * - 產出單一 XLSX（多 Sheet）
- */
-@Service
-public class XlsxExportService {
-	// 檔名用日期格式：yyyyMMdd
-    private static final DateTimeFormatter DATE_YYYYMMDD =
-            DateTimeFormatter.BASIC_ISO_DATE; // yyyyMMdd
-    
-    // 失敗門市資料來源
-    private final FailStoreExportService failStoreService;
-    // NBITS 未取檔資料來源
-    private final NbitsDiffExportService nbitsDiffService;
-    // XLSX 輸出目錄（由設定檔注入）
-    private final Path outputDir;
-
-    public XlsxExportService(
-            FailStoreExportService failStoreService,
-            NbitsDiffExportService nbitsDiffService,
-            @Value("${report.xlsx.output-dir}") String outputDir) { //Value來自app.ini
-        this.failStoreService = failStoreService;
-        this.nbitsDiffService = nbitsDiffService;
-        this.outputDir = Paths.get(outputDir);
-    }
-
-    /*
-     * 產生緊急復舊 XLSX
-     * - Sheet1：指示檔配信失敗門市
-     * - Sheet2：NBITS 未取檔門市
-     */
-    public Path exportEmergencyXlsx(LocalDate date) throws IOException {
-    	// 查詢資料
-        List<FailStoreExportService.FailStoreRow> failRows =  // 宣告並取得「配信失敗」資料列集合
-                failStoreService.findFailStores(date);  // 呼叫 failStoreService 依日期查詢失敗門市
-
-        List<NbitsDiffExportService.Row> nbitsDiffRows =  // 宣告並取得「NBITS 未取檔」資料列集合
-                nbitsDiffService.findNbitsDiffRows(date);  // 呼叫 nbitsDiffService 依日期查詢差異/未取檔
-
-        // 組輸出檔名與路徑
-        Files.createDirectories(outputDir);  // 確保輸出資料夾存在（不存在就建立，已存在不報錯）
-        String dateStr = date.format(DATE_YYYYMMDD);  // 將日期格式化成 yyyyMMdd
-        String fileName = dateStr + "緊急復舊配信失敗門市.xlsx";  // 組出輸出檔名（含日期前綴）
-        Path xlsxPath = outputDir.resolve(fileName);  // 在 outputDir 底下組成完整檔案路徑
-
-        try (Workbook workbook = new XSSFWorkbook()) {  // 建立 XLSX 工作簿，try-with-resources 自動關閉資源
-            // Sheet1：指示檔配信失敗門市
-            Sheet sheet1 = workbook.createSheet("指示檔配信失敗門市"); // 建立第一張工作表並命名
-            createHeaderRow(sheet1); // 建立表頭列（第 0 列
-            int rowIdx = 1; // 從第 1 列開始填資料（第 0 列留給表頭）
-            for (FailStoreExportService.FailStoreRow r : failRows) { // 逐筆確認失敗門市資料
-                Row row = sheet1.createRow(rowIdx++); // 建立新資料列並將 rowIdx 自增
-                row.createCell(0).setCellValue(nullSafe(r.trmId())); // 第 0 欄：TRM_ID
-                row.createCell(1).setCellValue(nullSafe(r.dlfIp1())); // 第 1 欄：DLF_IP1
-                row.createCell(2).setCellValue(nullSafe(r.adsl1())); // 第 2 欄：ADSL_1
-            }
-
-            // Sheet2：NBITS 未取檔門市
-            Sheet sheet2 = workbook.createSheet("NBITS未取檔門市"); // 建立第二張工作表並命名
-            createHeaderRow(sheet2); // 建立表頭列（第 0 列）
-            rowIdx = 1; // 重設 rowIdx，從第 1 列開始填第二張表
-            for (NbitsDiffExportService.Row r : nbitsDiffRows) { // 逐筆確認 NBITS 差異/未取檔資料
-                Row row = sheet2.createRow(rowIdx++); // 建立新資料列並將 rowIdx 自增
-                row.createCell(0).setCellValue(nullSafe(r.trmId())); // 第 0 欄：TRM_ID
-                row.createCell(1).setCellValue(nullSafe(r.dlfIp1())); // 第 1 欄：DLF_IP1
-                row.createCell(2).setCellValue(nullSafe(r.adsl1())); // 第 2 欄：ADSL_1
-            }
-            
-            // 自動調整欄寬,共3欄
-            autoSizeColumns(sheet1, 3);
-            autoSizeColumns(sheet2, 3);
-            
-            // 寫出 XLSX
-            try (var out = Files.newOutputStream(xlsxPath,  // 開啟輸出串流，指向目標 XLSX 路徑
-                    StandardOpenOption.CREATE,  // 若檔案不存在則建立
-                    StandardOpenOption.TRUNCATE_EXISTING,   // 若檔案已存在則清空後重寫
-                    StandardOpenOption.WRITE)) {   // 以寫入模式開啟檔案
-                workbook.write(out);  // 將記憶體中的 Workbook 內容寫入檔案
-            }
-        }
-        // 回傳產生的 XLSX 檔案路徑
-        return xlsxPath;
-    }
-    
-    // 建立表頭列
-    private void createHeaderRow(Sheet sheet) { //在指定 sheet 建立表頭
-        Row header = sheet.createRow(0);  // 建立第 0 列作為表頭列
-        header.createCell(0).setCellValue("TRM_ID");  // 表頭第 0 欄名稱
-        header.createCell(1).setCellValue("DLF_IP1");  // 表頭第 1 欄名稱
-        header.createCell(2).setCellValue("ADSL_1");  // 表頭第 2 欄名稱
-    }
-
-    // 欄寬自動調整
-    private void autoSizeColumns(Sheet sheet, int columnCount) { // 自動調整指定欄數的欄寬
-        for (int i = 0; i < columnCount; i++) { // 迴圈走訪 0..columnCount-1
-            sheet.autoSizeColumn(i);  // 讓 Excel 欄寬依內容自動調整
-        }
-    }
-    
-    // 防止 null 寫入 Excel
-    private String nullSafe(String v) {
-        return v == null ? "" : v;
-    }
-}
+package pgmreport.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import pgmreport.service.SourceQueryExecutor.SourceQueryException;
+import pgmreport.service.SourceQueryExecutor.SourceTask;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * 緊急復舊失敗門市報表匯出服務
+ * - 組合多來源資料
+ * - 產出單一報表檔（XLSX 多 Sheet，或 CSV / TSV 以第一欄區分 Sheet）
+ * - 輸出格式由 report.output.format 決定，每次執行可用 --format 覆寫
+ */
+@Service
+public class XlsxExportService {
+	// 檔名用日期格式：yyyyMMdd
+    private static final DateTimeFormatter DATE_YYYYMMDD =
+            DateTimeFormatter.BASIC_ISO_DATE; // yyyyMMdd
+    // Sheet 名稱
+    private static final String FAIL_SHEET = "指示檔配信失敗門市";
+    private static final String NBITS_DIFF_SHEET = "NBITS未取檔門市";
+    private static final String TIMELINE_SHEET = "配信時段分佈";
+    private static final String[] TIMELINE_HEADERS = { "時段", "配信成功", "配信失敗", "NBITS取檔成功" };
+    
+    // 失敗門市資料來源
+    private final FailStoreExportService failStoreService;
+    // NBITS 未取檔資料來源
+    private final NbitsDiffExportService nbitsDiffService;
+    // 兩個 Sheet 的資料查詢並行執行
+    private final SourceQueryExecutor queryExecutor;
+    // 匯出階段量測
+    private final ReportMetrics metrics;
+    // 每日結果保存（失敗 / 未取檔門市集合，供日對日差異）
+    private final DailyResultStore resultStore;
+    // 配信進度時段分佈（第三個 Sheet + JSON）
+    private final DistributionTimelineService timelineService;
+    // XLSX 輸出目錄（由設定檔注入）
+    private final Path outputDir;
+    // 是否使用串流模式（SXSSFWorkbook）
+    private final boolean streaming;
+    // 串流模式記憶體內保留的列數，超過即寫入暫存檔
+    private final int streamingWindowSize;
+    // 各欄最小欄寬（字元數），實際欄寬由 ColumnWidthCalculator 依內容計算
+    private final int[] columnWidths;
+    // 預設輸出格式
+    private final ReportFormat defaultFormat;
+
+    public XlsxExportService(
+            FailStoreExportService failStoreService,
+            NbitsDiffExportService nbitsDiffService,
+            SourceQueryExecutor queryExecutor,
+            ReportMetrics metrics,
+            DailyResultStore resultStore,
+            DistributionTimelineService timelineService,
+            @Value("${report.xlsx.output-dir}") String outputDir, //Value來自app.ini
+            @Value("${report.xlsx.streaming.enabled:false}") boolean streaming,
+            @Value("${report.xlsx.streaming.window-size:100}") int streamingWindowSize,
+            @Value("${report.xlsx.column-widths:10,10,10}") String columnWidths,
+            @Value("${report.output.format:xlsx}") String defaultFormat) {
+        this.failStoreService = failStoreService;
+        this.nbitsDiffService = nbitsDiffService;
+        this.queryExecutor = queryExecutor;
+        this.metrics = metrics;
+        this.resultStore = resultStore;
+        this.timelineService = timelineService;
+        this.outputDir = Paths.get(outputDir);
+        this.streaming = streaming;
+        this.streamingWindowSize = streamingWindowSize;
+        this.columnWidths = Arrays.stream(columnWidths.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        this.defaultFormat = ReportFormat.parse(defaultFormat);
+    }
+
+    public ReportFormat defaultFormat() {
+        return defaultFormat;
+    }
+
+    // 以預設格式產生緊急復舊報表
+    public Path exportEmergencyXlsx(LocalDate date) throws IOException {
+        return exportEmergencyReport(date, defaultFormat);
+    }
+
+    /*
+     * 產生緊急復舊報表
+     * - Sheet1：指示檔配信失敗門市（從 ResultSet 逐筆寫入，不先組成 List）
+     * - Sheet2：NBITS 未取檔門市（跨庫差集於背景查詢，與 count 共用日期快取；門市明細同樣逐筆寫入）
+     * - 差集查詢與 Sheet1 同時進行；Workbook 非執行緒安全，Sheet 依序寫入，Sheet2 只在 Sheet1 寫完時才等待差集結果
+     * - 輸出檔先寫暫存檔再原子搬移，目標路徑不會出現寫到一半的檔案
+     * - 量測耗時包含 Sheet1 的查詢（邊讀邊寫無法拆開）
+     * - 寫出時同時收集兩個 Sheet 的門市集合，保存為當日結果
+     * - Sheet3：配信時段分佈（report.timeline.enabled），與前兩個 Sheet 同時查詢；同一份結果另存 <報表檔名>.timeline.json
+     *   時段分佈查詢失敗只略過該 Sheet，不影響報表
+     */
+    public Path exportEmergencyReport(LocalDate date, ReportFormat format) throws IOException {
+        Path path = resolvePath(date, format);
+        SourceTask<StoreKeySet> diffTask =
+                queryExecutor.submit("NBITS-DIFF", () -> nbitsDiffService.findNbitsDiffStores(date));
+        SourceTask<DistributionTimeline> timelineTask = timelineService.isEnabled()
+                ? queryExecutor.submit("TIMELINE", () -> timelineService.timeline(date))
+                : null;
+        DistributionTimeline[] timeline = {null};
+
+        StoreKeySet.Builder failStores = StoreKeySet.builder(256);
+        StoreKeySet diffStores = metrics.phase(format.name(), "write", stage -> {
+            try (ReportWriter writer = openWriter(format, path)) {
+                writer.startSheet(FAIL_SHEET);
+                int failCount = failStoreService.streamFailStores(date, (trmId, dlfIp1, adsl1) -> {
+                    failStores.add(StoreKeyCodec.storeOf(trmId));
+                    writer.row(trmId, dlfIp1, adsl1);
+                });
+                StoreKeySet stores = diffTask.join();
+                writer.startSheet(NBITS_DIFF_SHEET);
+                int diffCount = nbitsDiffService.streamNbitsDiffRows(date, writer);
+                timeline[0] = joinTimeline(timelineTask);
+                if (timeline[0] != null) {
+                    writeTimeline(writer, timeline[0]);
+                }
+                writer.finish();
+                stage.rows(failCount + diffCount).bytes(Files.size(path));
+                return stores;
+            }
+        });
+        saveResult(date, failStores.build(), diffStores);
+        if (timeline[0] != null) {
+            writeTimelineJson(path, timeline[0]);
+        }
+        // 回傳產生的報表檔案路徑
+        return path;
+    }
+
+    // 以已查好的資料產生報表（補跑模式：區間查詢後依日期拆分的結果）
+    public Path exportEmergencyReport(LocalDate date, ReportFormat format,
+                                      List<FailStoreExportService.FailStoreRow> failRows,
+                                      List<NbitsDiffExportService.Row> nbitsDiffRows) throws IOException {
+        Path path = resolvePath(date, format);
+        metrics.phase(format.name(), "write", stage -> {
+            try (ReportWriter writer = openWriter(format, path)) {
+                writer.startSheet(FAIL_SHEET);
+                for (FailStoreExportService.FailStoreRow r : failRows) {
+                    writer.row(r.trmId(), r.dlfIp1(), r.adsl1());
+                }
+                writeNbitsDiff(writer, nbitsDiffRows);
+                writer.finish();
+                return stage.rows(failRows.size() + nbitsDiffRows.size()).bytes(Files.size(path));
+            }
+        });
+        StoreKeySet.Builder failStores = StoreKeySet.builder(failRows.size());
+        failRows.forEach(r -> failStores.add(StoreKeyCodec.storeOf(r.trmId())));
+        StoreKeySet.Builder diffStores = StoreKeySet.builder(nbitsDiffRows.size());
+        nbitsDiffRows.forEach(r -> diffStores.add(r.store()));
+        saveResult(date, failStores.build(), diffStores.build());
+        return path;
+    }
+
+    // 保存當日門市集合（失敗只影響差異計算，不影響報表）
+    private void saveResult(LocalDate date, StoreKeySet failStores, StoreKeySet diffStores) {
+        try {
+            resultStore.save(date, failStores, diffStores);
+        } catch (IOException ex) {
+            System.err.println("[WARN] 每日結果保存失敗（" + date + "）：" + ex.getMessage());
+        }
+    }
+
+    // 等待時段分佈結果（未啟用或查詢失敗時為 null）
+    private static DistributionTimeline joinTimeline(SourceTask<DistributionTimeline> task) {
+        if (task == null) {
+            return null;
+        }
+        try {
+            return task.join();
+        } catch (SourceQueryException ex) {
+            System.err.println("[WARN] 配信時段分佈查詢失敗，報表略過該 Sheet：" + ex.getMessage());
+            return null;
+        }
+    }
+
+    // 時段分佈 Sheet：每格一列，最後一列為合計
+    private static void writeTimeline(ReportWriter writer, DistributionTimeline timeline) throws IOException {
+        writer.startSheet(TIMELINE_SHEET, TIMELINE_HEADERS);
+        for (int i = 0; i < timeline.bucketCount(); i++) {
+            writer.countRow(timeline.label(i), timeline.delivered(i), timeline.failed(i), timeline.nbitsFetched(i));
+        }
+        writer.countRow("合計", timeline.totalDelivered(), timeline.totalFailed(), timeline.totalNbitsFetched());
+    }
+
+    // 時段分佈 JSON（與報表同目錄、同檔名前綴；失敗不影響報表）
+    private static void writeTimelineJson(Path reportPath, DistributionTimeline timeline) {
+        String baseName = reportPath.getFileName().toString().replaceFirst("\\.[a-z]+$", "");
+        Path file = reportPath.resolveSibling(baseName + ".timeline.json");
+        try {
+            AtomicFileWrite.writeString(file, timeline.toJson());
+            System.out.println("配信時段分佈 JSON 輸出路徑: " + file);
+        } catch (IOException ex) {
+            System.err.println("[WARN] 配信時段分佈 JSON 輸出失敗：" + ex.getMessage());
+        }
+    }
+
+    private void writeNbitsDiff(ReportWriter writer, List<NbitsDiffExportService.Row> rows) throws IOException {
+        writer.startSheet(NBITS_DIFF_SHEET);
+        for (NbitsDiffExportService.Row r : rows) {
+            writer.row(r.trmId(), r.dlfIp1(), r.adsl1());
+        }
+    }
+
+    // 依格式建立輸出端
+    private ReportWriter openWriter(ReportFormat format, Path path) throws IOException {
+        if (format == ReportFormat.XLSX) {
+            // report.xlsx.streaming.enabled=true 時改用 SXSSFWorkbook 串流寫出
+            return new XlsxReportWriter(path, streaming, streamingWindowSize, columnWidths);
+        }
+        return format.openDelimited(path);
+    }
+
+    // 組輸出檔名與路徑
+    private Path resolvePath(LocalDate date, ReportFormat format) throws IOException {
+        Files.createDirectories(outputDir);  // 確保輸出資料夾存在（不存在就建立，已存在不報錯）
+        String dateStr = date.format(DATE_YYYYMMDD);  // 將日期格式化成 yyyyMMdd
+        String fileName = dateStr + "緊急復舊配信失敗門市." + format.extension();  // 組出輸出檔名（含日期前綴）
+        return outputDir.resolve(fileName);  // 在 outputDir 底下組成完整檔案路徑
+    }
+}
@@ -0,0 +1,113 @@
+package pgmreport.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * XLSX 輸出（門市明細 Sheet：TRM_ID / DLF_IP1 / ADSL_1；統計 Sheet：標籤 + 數值欄，數值以數字儲存格寫入）
+ * - 記憶體模式：XSSFWorkbook，全部組好後一次寫出
+ * - 串流模式：SXSSFWorkbook，記憶體內只保留 windowSize 列，其餘寫入壓縮暫存檔
+ * - 欄寬於寫入時計算（串流模式已寫出的列無法 autoSizeColumn）
+ * - 經 1 MiB 緩衝寫到同目錄暫存檔，完成後再原子搬移到目標路徑
+ */
+final class XlsxReportWriter implements ReportWriter {
+
+    // 寫檔緩衝大小
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private final Path file;
+    private final Workbook workbook;
+    // 各欄最小欄寬（字元數）
+    private final int[] minColumnWidths;
+    private Sheet sheet;
+    private ColumnWidthCalculator widths;
+    private int rowIdx;
+
+    XlsxReportWriter(Path file, boolean streaming, int streamingWindowSize, int[] minColumnWidths) {
+        this.file = file;
+        // 串流參數：無範本 / 視窗列數 / 壓縮暫存檔 / 不使用共用字串表（inline string）
+        this.workbook = streaming
+                ? new SXSSFWorkbook(null, streamingWindowSize, true, false)
+                : new XSSFWorkbook();
+        this.minColumnWidths = minColumnWidths;
+    }
+
+    @Override
+    public void startSheet(String sheetName, String... headers) {
+        applyWidths();
+        sheet = workbook.createSheet(sheetName);
+        widths = new ColumnWidthCalculator(headers.length);
+        rowIdx = 0;
+        // 表頭列（第 0 列）
+        Row header = sheet.createRow(rowIdx++);
+        for (int i = 0; i < headers.length; i++) {
+            header.createCell(i).setCellValue(headers[i]);
+        }
+        widths.acceptRow(headers);
+    }
+
+    // 建立一筆資料列（同時記錄欄寬）
+    @Override
+    public void row(String trmId, String dlfIp1, String adsl1) {
+        Row row = sheet.createRow(rowIdx++);
+        row.createCell(0).setCellValue(nullSafe(trmId)); // 第 0 欄：TRM_ID
+        row.createCell(1).setCellValue(nullSafe(dlfIp1)); // 第 1 欄：DLF_IP1
+        row.createCell(2).setCellValue(nullSafe(adsl1)); // 第 2 欄：ADSL_1
+        widths.acceptRow(trmId, dlfIp1, adsl1);
+    }
+
+    // 建立一筆統計列（標籤為文字，其餘為數字儲存格）
+    @Override
+    public void countRow(String label, long... counts) {
+        Row row = sheet.createRow(rowIdx++);
+        row.createCell(0).setCellValue(nullSafe(label));
+        widths.accept(0, label);
+        for (int i = 0; i < counts.length; i++) {
+            row.createCell(i + 1).setCellValue(counts[i]);
+            widths.accept(i + 1, Long.toString(counts[i]));
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        applyWidths();
+        Path temp = AtomicFileWrite.tempFileFor(file);
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), WRITE_BUFFER_BYTES)) {
+                workbook.write(out);
+            }
+            AtomicFileWrite.commit(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);  // 已搬移時為 no-op
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (workbook instanceof SXSSFWorkbook sxssf) {
+            sxssf.dispose();  // 刪除暫存檔
+        }
+        workbook.close();
+    }
+
+    // 套用目前 Sheet 寫入時計算的欄寬
+    private void applyWidths() {
+        if (sheet != null) {
+            widths.applyTo(sheet, minColumnWidths);
+        }
+    }
+
+    // 防止 null 寫入 Excel
+    private static String nullSafe(String v) {
+        return v == null ? "" : v;
+    }
+}
@@ -0,0 +1,33 @@
+package pgmreport.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnWidthCalculatorTest {
+
+	@Test
+	void cjkCharactersCountDouble() {
+		assertThat(ColumnWidthCalculator.displayWidth("TRM_ID")).isEqualTo(6);
+		assertThat(ColumnWidthCalculator.displayWidth("指示檔配信失敗門市")).isEqualTo(18);
+		assertThat(ColumnWidthCalculator.displayWidth("NBITS未取檔門市")).isEqualTo(5 + 10);
+	}
+
+	@Test
+	void widthFollowsLongestValueWithFloor() throws Exception {
+		ColumnWidthCalculator widths = new ColumnWidthCalculator(3);
+		widths.acceptRow("TRM_ID", "DLF_IP1", "ADSL_1");
+		widths.acceptRow("00123456", "192.168.100.200", null);
+
+		try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+			Sheet sheet = workbook.createSheet();
+			widths.applyTo(sheet, new int[] { 10, 10, 10 });
+
+			assertThat(sheet.getColumnWidth(0)).isEqualTo(10 * 256);
+			assertThat(sheet.getColumnWidth(1)).isEqualTo((15 + 2) * 256);
+			assertThat(sheet.getColumnWidth(2)).isEqualTo(10 * 256);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pgmreport.service.DailyResultStore.DailyDelta;
+import pgmreport.service.DailyResultStore.DayResult;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DailyResultStoreTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void savedResultRoundTrips() throws Exception {
+		DailyResultStore store = new DailyResultStore(true, dir.toString(), 3);
+		LocalDate day = LocalDate.of(2025, 3, 10);
+
+		store.save(day, StoreKeySet.of(List.of("000003", "000001")), StoreKeySet.of(List.of("000009")));
+
+		DayResult result = store.load(day);
+		assertThat(result.failStores().toStoreCodes()).containsExactly("000001", "000003");
+		assertThat(result.nbitsDiffStores().toStoreCodes()).containsExactly("000009");
+		assertThat(store.load(day.plusDays(1))).isNull();
+		assertThat(dir).isDirectoryNotContaining("glob:**.tmp");
+	}
+
+	@Test
+	void deltaSplitsNewRecoveredAndChronicStores() throws Exception {
+		DailyResultStore store = new DailyResultStore(true, dir.toString(), 3);
+		LocalDate day = LocalDate.of(2025, 3, 10);
+		store.save(day.minusDays(2), StoreKeySet.of(List.of("000001", "000002", "000005")), StoreKeySet.empty());
+		store.save(day.minusDays(1), StoreKeySet.of(List.of("000001", "000002", "000003")), StoreKeySet.of(List.of("000007")));
+		store.save(day, StoreKeySet.of(List.of("000001", "000003", "000004")), StoreKeySet.of(List.of("000007")));
+
+		DailyDelta delta = store.delta(day);
+
+		assertThat(delta.chronicDays()).isEqualTo(3);
+		assertThat(delta.fail().newStores().toStoreCodes()).containsExactly("000004");
+		assertThat(delta.fail().recoveredStores().toStoreCodes()).containsExactly("000002");
+		assertThat(delta.fail().chronicStores().toStoreCodes()).containsExactly("000001");
+		assertThat(delta.nbitsDiff().newStores().isEmpty()).isTrue();
+		assertThat(delta.nbitsDiff().chronicStores().isEmpty()).isTrue();
+	}
+
+	@Test
+	void chronicWindowStopsAtMissingDay() throws Exception {
+		DailyResultStore store = new DailyResultStore(true, dir.toString(), 5);
+		LocalDate day = LocalDate.of(2025, 3, 10);
+		store.save(day.minusDays(1), StoreKeySet.of(List.of("000001", "000002")), StoreKeySet.empty());
+		store.save(day, StoreKeySet.of(List.of("000001")), StoreKeySet.empty());
+
+		DailyDelta delta = store.delta(day);
+
+		assertThat(delta.chronicDays()).isEqualTo(2);
+		assertThat(delta.fail().chronicStores().toStoreCodes()).containsExactly("000001");
+		assertThat(store.delta(day.minusDays(1))).isNull();
+	}
+
+	@Test
+	void disabledStoreNeverWrites() throws Exception {
+		DailyResultStore store = DailyResultStore.disabled();
+		store.save(LocalDate.of(2025, 3, 10), StoreKeySet.of(List.of("000001")), StoreKeySet.empty());
+
+		assertThat(store.load(LocalDate.of(2025, 3, 10))).isNull();
+		assertThat(store.delta(LocalDate.of(2025, 3, 10))).isNull();
+	}
+}
@@ -0,0 +1,96 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+class DistributionTimelineServiceTest {
+
+	private static final LocalDate DATE = LocalDate.of(2025, 12, 17);
+
+	// IGAL：trm_id / unyo_f_name / file_sts / id_hits / store_hits / sec
+	private static final Object[][] IGAL_ROWS = {
+			{"00000001", "SDCDGETR", "8", 1, 0, 0},           // 00:00 成功
+			{"00000002", "SDCDGETR", "8", 1, 0, 3_599},       // 00:59 成功
+			{"00000003", "SDCDGETR", "8", 1, 0, 3_600},       // 01:00 成功
+			{"00000004", "SDCDGETR", "7", 1, 2, 86_399},      // 23:59 失敗（門市主檔 2 筆）
+			{"00000005", "SDCDGETR", "7", 1, 0, 7_200},       // 主檔未命中：不計失敗
+	};
+
+	// NBITS：store / sec
+	private static final Object[][] NBITS_ROWS = {
+			{"000001", 60},
+			{"000002", 3_660},
+			{"000003", 3_661},
+	};
+
+	private final JdbcTemplate igal = mock(JdbcTemplate.class, inv -> igalRows(inv.getArgument(1)));
+	private final JdbcTemplate nbits = mock(JdbcTemplate.class, inv -> nbitsRows(inv.getArgument(1)));
+
+	@Test
+	void bucketsComeFromSharedScansAndTotalsMatchCounts() {
+		IgalScanService igalScan = new IgalScanService(HedgedQueryExecutor.direct("IGAL", igal),
+				StoreShardExecutor.single("IGAL"), new ReportMetrics(), 600);
+		NbitsScanService nbitsScan = new NbitsScanService(HedgedQueryExecutor.direct("NBITS", nbits),
+				StoreShardExecutor.single("NBITS"), new ReportMetrics(), 600);
+		FileStatusReportService status = new FileStatusReportService(igalScan, nbitsScan, SourceQueryExecutor.sequential());
+		DistributionTimelineService service = new DistributionTimelineService(igalScan, nbitsScan,
+				SourceQueryExecutor.sequential(), true, 60);
+
+		FileStatusReportService.FileStatusResult result = status.queryByDate(DATE);
+		DistributionTimeline hourly = service.timeline(DATE);
+		DistributionTimeline halfHourly = service.timeline(DATE, 30);
+
+		assertThat(hourly.delivered(0)).isEqualTo(2);
+		assertThat(hourly.delivered(1)).isEqualTo(1);
+		assertThat(hourly.failed(23)).isEqualTo(2);
+		assertThat(hourly.nbitsFetched(0)).isEqualTo(1);
+		assertThat(hourly.nbitsFetched(1)).isEqualTo(2);
+		assertThat(halfHourly.delivered(1)).isEqualTo(1);
+		assertThat(halfHourly.failed(47)).isEqualTo(2);
+
+		// 時段合計與報表計數一致
+		assertThat(hourly.totalDelivered()).isEqualTo(result.successCount());
+		assertThat(hourly.totalFailed()).isEqualTo(result.failCount());
+		assertThat(hourly.totalNbitsFetched()).isEqualTo(result.nbitsSuccess());
+		// 計數與兩種時段長度共用同一次掃描：不另外查詢 send_file_kanri / nbit_dllog
+		assertThat(mockingDetails(igal).getInvocations()).hasSize(1);
+		assertThat(mockingDetails(nbits).getInvocations()).hasSize(1);
+	}
+
+	// 模擬 IGAL 單次掃描
+	private static Object igalRows(RowCallbackHandler handler) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		for (Object[] row : IGAL_ROWS) {
+			when(rs.getDate("day")).thenReturn(java.sql.Date.valueOf(DATE));
+			when(rs.getString("trm_id")).thenReturn((String) row[0]);
+			when(rs.getString("unyo_f_name")).thenReturn((String) row[1]);
+			when(rs.getString("file_sts")).thenReturn((String) row[2]);
+			when(rs.getInt("id_hits")).thenReturn((Integer) row[3]);
+			when(rs.getInt("store_hits")).thenReturn((Integer) row[4]);
+			when(rs.getInt("sec")).thenReturn((Integer) row[5]);
+			handler.processRow(rs);
+		}
+		return null;
+	}
+
+	// 模擬 NBITS 單次掃描
+	private static Object nbitsRows(RowCallbackHandler handler) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		for (Object[] row : NBITS_ROWS) {
+			when(rs.getDate("day")).thenReturn(java.sql.Date.valueOf(DATE));
+			when(rs.getString("store")).thenReturn((String) row[0]);
+			when(rs.getInt("sec")).thenReturn((Integer) row[1]);
+			handler.processRow(rs);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,56 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DistributionTimelineTest {
+
+	private static final LocalDate DATE = LocalDate.of(2025, 12, 17);
+
+	@Test
+	void bucketsBySecondOfDay() {
+		DistributionTimeline timeline = new DistributionTimeline(DATE, 60);
+		timeline.addIgal(0, 1, 0);
+		timeline.addIgal(3_599, 2, 1);
+		timeline.addIgal(3_600, 4, 0);
+		timeline.addNbits(86_399);
+
+		assertThat(timeline.bucketCount()).isEqualTo(24);
+		assertThat(timeline.delivered(0)).isEqualTo(3);
+		assertThat(timeline.failed(0)).isEqualTo(1);
+		assertThat(timeline.delivered(1)).isEqualTo(4);
+		assertThat(timeline.nbitsFetched(23)).isEqualTo(1);
+		assertThat(timeline.label(1)).isEqualTo("01:00-02:00");
+		assertThat(timeline.label(23)).isEqualTo("23:00-24:00");
+		assertThat(timeline.totalDelivered()).isEqualTo(7);
+	}
+
+	@Test
+	void lastBucketIsShorterWhenMinutesDoNotDivideDay() {
+		DistributionTimeline timeline = new DistributionTimeline(DATE, 7);
+
+		assertThat(timeline.bucketCount()).isEqualTo(206);
+		assertThat(timeline.label(205)).isEqualTo("23:55-24:00");
+	}
+
+	@Test
+	void mergeAddsShardCounts() {
+		DistributionTimeline a = new DistributionTimeline(DATE, 15);
+		DistributionTimeline b = new DistributionTimeline(DATE, 15);
+		a.addIgal(900, 1, 0);
+		b.addIgal(901, 2, 3);
+		b.addNbits(60);
+
+		a.merge(b);
+
+		assertThat(a.delivered(1)).isEqualTo(3);
+		assertThat(a.failed(1)).isEqualTo(3);
+		assertThat(a.nbitsFetched(0)).isEqualTo(1);
+		assertThatThrownBy(() -> a.merge(new DistributionTimeline(DATE, 30))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new DistributionTimeline(DATE, 0)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
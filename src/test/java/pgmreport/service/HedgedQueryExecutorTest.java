@@ -0,0 +1,203 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pgmreport.service.HedgedQueryExecutor.Outcome;
+import pgmreport.service.SourceQueryExecutor.SourceQueryException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HedgedQueryExecutorTest {
+
+	private final JdbcTemplate primary = mock(JdbcTemplate.class);
+	private final JdbcTemplate standby = mock(JdbcTemplate.class);
+
+	@Test
+	void directRunsOnPrimaryWithoutHedging() {
+		HedgedQueryExecutor hedge = HedgedQueryExecutor.direct("IGAL", primary);
+
+		Outcome<String> outcome = hedge.query("q", (jdbc, source) -> jdbc == primary ? source : "standby");
+
+		assertThat(outcome).isEqualTo(new Outcome<>("IGAL", false));
+	}
+
+	@Test
+	void slowPrimaryIsHedgedToStandby() {
+		HedgedQueryExecutor hedge = new HedgedQueryExecutor("IGAL", primary, standby, 2, 10, 95, 0, 50, 8);
+		try {
+			Outcome<String> outcome = hedge.query("q", (jdbc, source) -> {
+				if (source.equals("IGAL")) {
+					sleep(5_000);
+				}
+				return source;
+			});
+
+			assertThat(outcome).isEqualTo(new Outcome<>("IGAL-STANDBY", true));
+		} finally {
+			hedge.destroy();
+		}
+	}
+
+	@Test
+	void failedPrimaryFallsBackToStandbyImmediately() {
+		HedgedQueryExecutor hedge = new HedgedQueryExecutor("NBITS", primary, standby, 2, 10, 95, 0, 60_000, 8);
+		try {
+			long start = System.nanoTime();
+			Outcome<Integer> outcome = hedge.query("q", (jdbc, source) -> {
+				if (source.equals("NBITS")) {
+					throw new IllegalStateException("ORA-03113");
+				}
+				return 7;
+			});
+
+			assertThat(outcome).isEqualTo(new Outcome<>(7, true));
+			assertThat(System.nanoTime() - start).isLessThan(5_000_000_000L);
+		} finally {
+			hedge.destroy();
+		}
+	}
+
+	@Test
+	void deadlineFailsInsteadOfHanging() {
+		HedgedQueryExecutor hedge = new HedgedQueryExecutor("IGAL", primary, null, 1, 1, 95, 0, 0, 8);
+		try {
+			assertThatThrownBy(() -> hedge.query("status-counts", (jdbc, source) -> {
+				sleep(30_000);
+				return 0;
+			}))
+					.isInstanceOf(SourceQueryException.class)
+					.hasMessageContaining("[IGAL]")
+					.hasMessageContaining("status-counts 查詢逾時");
+		} finally {
+			hedge.destroy();
+		}
+	}
+
+	@Test
+	void bothSidesFailingReportsSource() {
+		HedgedQueryExecutor hedge = new HedgedQueryExecutor("NBITS", primary, standby, 2, 10, 95, 0, 60_000, 8);
+		try {
+			assertThatThrownBy(() -> hedge.query("q", (jdbc, source) -> {
+				throw new IllegalStateException(source + " down");
+			}))
+					.isInstanceOf(SourceQueryException.class)
+					.hasMessageContaining("[NBITS]")
+					.hasMessageContaining("NBITS-STANDBY down");
+		} finally {
+			hedge.destroy();
+		}
+	}
+
+	@Test
+	void losingPrimaryStatementIsCancelledOnTheDatabase() throws Exception {
+		CountDownLatch executing = new CountDownLatch(1);
+		PreparedStatement ps = mock(PreparedStatement.class);
+		when(ps.executeQuery()).thenAnswer(inv -> {
+			executing.countDown();
+			sleep(5_000);
+			return null;
+		});
+		Connection conn = mock(Connection.class);
+		when(conn.prepareStatement(anyString())).thenReturn(ps);
+		DataSource ds = mock(DataSource.class);
+		when(ds.getConnection()).thenReturn(conn);
+
+		HedgedQueryExecutor hedge = new HedgedQueryExecutor("IGAL", new JdbcTemplate(ds), standby, 2, 10, 95, 0, 50, 8);
+		try {
+			Outcome<Integer> outcome = hedge.query("q", (jdbc, source) -> source.equals("IGAL")
+					? jdbc.queryForObject("SELECT COUNT(*) FROM ig_ui_sc_t WHERE store = ?", Integer.class, "0001")
+					: awaitThen(executing, 3));
+
+			assertThat(outcome).isEqualTo(new Outcome<>(3, true));
+			verify(ps, timeout(1_000)).cancel();
+		} finally {
+			hedge.destroy();
+		}
+	}
+
+	@Test
+	void concurrentStandbyQueriesAreCappedAtStandbyPoolSize() throws Exception {
+		HedgedQueryExecutor hedge = new HedgedQueryExecutor("IGAL", primary, standby, 1, 10, 95, 0, 0, 8);
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		ExecutorService callers = Executors.newFixedThreadPool(3);
+		try {
+			List<Future<Outcome<String>>> results = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				results.add(callers.submit(() -> hedge.query("q", (jdbc, source) -> {
+					if (source.equals("IGAL")) {
+						sleep(5_000);
+						return source;
+					}
+					peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+					sleep(100);
+					active.decrementAndGet();
+					return source;
+				})));
+			}
+
+			for (Future<Outcome<String>> result : results) {
+				assertThat(result.get()).isEqualTo(new Outcome<>("IGAL-STANDBY", true));
+			}
+			assertThat(peak).hasValue(1);
+		} finally {
+			callers.shutdownNow();
+			hedge.destroy();
+		}
+	}
+
+	@Test
+	void hedgeDelayFollowsRecentPercentile() {
+		HedgedQueryExecutor hedge = new HedgedQueryExecutor("IGAL", primary, standby, 2, 10, 50, 0, 1_234, 8);
+		try {
+			assertThat(hedge.hedgeDelayMillis("q")).isEqualTo(1_234);  // 樣本不足
+
+			for (int i = 0; i < 6; i++) {
+				hedge.query("q", (jdbc, source) -> 1);
+			}
+
+			assertThat(hedge.hedgeDelayMillis("q")).isLessThan(1_234);
+			assertThat(hedge.hedgeDelayMillis("other")).isEqualTo(1_234);
+		} finally {
+			hedge.destroy();
+		}
+	}
+
+	// 等主庫 SQL 已送出後才回傳備援結果
+	private static <T> T awaitThen(CountDownLatch latch, T value) {
+		try {
+			latch.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", ex);
+		}
+		return value;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", ex);
+		}
+	}
+}
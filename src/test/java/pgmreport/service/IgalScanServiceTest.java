@@ -0,0 +1,208 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+class IgalScanServiceTest {
+
+	private static final LocalDate DATE = LocalDate.of(2025, 12, 17);
+
+	// trm_id / unyo_f_name / file_sts / id_hits / store_hits / sec
+	private static final Object[][] SCAN_ROWS = {
+			{"00000001", "SDCDGETR", "8", 2, 0, 3_600},
+			{"00000002", "SDCDGETR", "8", 0, 0, 0},
+			// 失敗：門市主檔命中 2 筆
+			{"00000003", "SDCDGETR", "7", 1, 2, 7_200},
+			// 失敗：門市主檔未命中，不列入失敗門市
+			{"00000004", "SDCDGETR", "7", 1, 0, 0},
+			// 非 SDCDGETR 本體：不計總數，但仍列入失敗
+			{"00000005", "SDCDGETR2", "7", 1, 1, 7_200},
+			// 同一門市第二筆失敗記錄
+			{"00000003", "SDCDGETR2", "7", 0, 2, 7_260},
+	};
+
+	// store / dlf_ip1 / adsl_1（門市明細查詢）
+	private static final String[][] DETAIL_ROWS = {
+			{"000003", "10.0.0.3", "adsl-a"},
+			{"000005", "10.0.0.5", "adsl-c"},
+			{"000003", "10.0.0.4", "adsl-b"},
+	};
+
+	private final JdbcTemplate igal = mock(JdbcTemplate.class, inv -> inv.getArgument(0) instanceof String
+			? scanRows(inv.getArgument(1))
+			: detailRows(inv.getArgument(1)));
+
+	@Test
+	void oneScanFeedsCountsFailStoresSuccessStoresAndTimeline() {
+		IgalDayScan scan = service(600).scanDay(DATE);
+
+		assertThat(scan.totalCount()).isEqualTo(4);
+		assertThat(scan.successCount()).isEqualTo(2);
+		assertThat(scan.failCount()).isEqualTo(5);
+		assertThat(scan.successStores().toStoreCodes()).containsExactly("000001");
+		List<String> failStores = new ArrayList<>();
+		scan.failStores().forEach((store, times) -> failStores.add(store + "x" + times));
+		assertThat(failStores).containsExactly("000003x2", "000005x1");
+
+		DistributionTimeline timeline = new DistributionTimeline(DATE, 60);
+		scan.addTimelineTo(timeline);
+		assertThat(timeline.delivered(1)).isEqualTo(2);
+		assertThat(timeline.failed(2)).isEqualTo(5);
+		assertThat(timeline.totalDelivered()).isEqualTo(scan.successCount());
+		assertThat(timeline.totalFailed()).isEqualTo(scan.failCount());
+	}
+
+	@Test
+	void servicesShareOneScanAndFailRowsMatchFailCount() {
+		IgalScanService igalScan = service(600);
+		NbitsScanService nbitsScan = new NbitsScanService(HedgedQueryExecutor.direct("NBITS", mock(JdbcTemplate.class)),
+				StoreShardExecutor.single("NBITS"), new ReportMetrics(), 600);
+		FileStatusReportService status = new FileStatusReportService(igalScan, nbitsScan, SourceQueryExecutor.sequential());
+		FailStoreExportService failStores = failStores(igalScan);
+
+		FileStatusReportService.FileStatusResult result = status.queryByDate(DATE);
+		List<String> exported = new ArrayList<>();
+		int streamed = failStores.streamFailStores(DATE, (trmId, dlfIp1, adsl1) -> exported.add(trmId + "/" + dlfIp1));
+
+		assertThat(result.totalCount()).isEqualTo(4);
+		assertThat(result.failCount()).isEqualTo(streamed);
+		// 依門市代碼遞增；失敗 2 次的門市輸出 2 份明細
+		assertThat(exported).containsExactly(
+				"00000003/10.0.0.3", "00000003/10.0.0.3", "00000003/10.0.0.4", "00000003/10.0.0.4",
+				"00000005/10.0.0.5");
+		// IGAL：單次掃描 + 門市明細，各一次
+		assertThat(mockingDetails(igal).getInvocations()).hasSize(2);
+	}
+
+	@Test
+	void rangeFailRowsAreGroupedByDay() {
+		IgalScanService igalScan = service(600);
+
+		var byDay = failStores(igalScan).findFailStoresByDay(ReportDateRange.ofDays(DATE.minusDays(1), DATE));
+
+		assertThat(byDay.keySet()).containsExactly(DATE.minusDays(1), DATE);
+		assertThat(byDay.get(DATE.minusDays(1))).isEmpty();
+		assertThat(byDay.get(DATE)).extracting(FailStoreExportService.FailStoreRow::adsl1)
+				.containsExactly("adsl-a", "adsl-a", "adsl-b", "adsl-b", "adsl-c");
+	}
+
+	@Test
+	void nullStoreFailRowsAreLookedUpWithIsNull() {
+		// Oracle：'00' || NULL = '00'，trm_id = '00' 的失敗記錄命中 store 為 NULL 的主檔列
+		JdbcTemplate jdbc = mock(JdbcTemplate.class, inv -> {
+			String sql = inv.getArgument(0) instanceof String s ? s : "";
+			RowCallbackHandler handler = inv.getArgument(1);
+			ResultSet rs = mock(ResultSet.class);
+			if (sql.contains("store IS NULL")) {
+				when(rs.getString("dlf_ip1")).thenReturn("10.0.0.9");
+				when(rs.getString("adsl_1")).thenReturn("adsl-n");
+			} else {
+				when(rs.getDate("day")).thenReturn(java.sql.Date.valueOf(DATE));
+				when(rs.getString("trm_id")).thenReturn("00");
+				when(rs.getString("unyo_f_name")).thenReturn("SDCDGETR");
+				when(rs.getString("file_sts")).thenReturn("7");
+				when(rs.getInt("store_hits")).thenReturn(1);
+			}
+			handler.processRow(rs);
+			return null;
+		});
+		IgalScanService igalScan = new IgalScanService(HedgedQueryExecutor.direct("IGAL", jdbc),
+				StoreShardExecutor.single("IGAL"), new ReportMetrics(), 600);
+		FailStoreExportService failStores = new FailStoreExportService(igalScan, jdbc, StoreMasterCache.disabled(),
+				new ReportMetrics());
+
+		List<String> exported = new ArrayList<>();
+		int streamed = failStores.streamFailStores(DATE, (trmId, dlfIp1, adsl1) -> exported.add(trmId + "/" + dlfIp1));
+
+		assertThat(streamed).isEqualTo(igalScan.scanDay(DATE).failCount());
+		assertThat(exported).containsExactly("00/10.0.0.9");
+	}
+
+	@Test
+	void invalidateAndExpiryQueryAgain() {
+		IgalScanService cached = service(600);
+		cached.scanDay(DATE);
+		cached.scanDay(DATE);
+		cached.invalidate(DATE);
+		cached.scanDay(DATE);
+		assertThat(mockingDetails(igal).getInvocations()).hasSize(2);
+
+		IgalScanService expired = service(0);
+		expired.scanDay(DATE);
+		expired.scanDay(DATE);
+		assertThat(mockingDetails(igal).getInvocations()).hasSize(4);
+	}
+
+	@Test
+	void shardedScanMergesToSameResult() {
+		StoreShardExecutor igalShards = new StoreShardExecutor("IGAL", 2, 2);
+		try {
+			IgalScanService service = new IgalScanService(HedgedQueryExecutor.direct("IGAL", igal), igalShards,
+					new ReportMetrics(), 600);
+
+			// 兩個分段都回傳同一批列：計數與失敗次數加倍，成功門市聯集不變
+			IgalDayScan scan = service.scanDay(DATE);
+			assertThat(scan.totalCount()).isEqualTo(8);
+			assertThat(scan.failCount()).isEqualTo(10);
+			assertThat(scan.failStores().total()).isEqualTo(6);
+			assertThat(scan.successStores().toStoreCodes()).containsExactly("000001");
+			// 分段條件同時套用到 ig_ui_sc_t 的兩個彙總子查詢：子查詢各 1 個上下界 + 日期 2 個 + 外層 1 個
+			assertThat(mockingDetails(igal).getInvocations()).allSatisfy(inv -> {
+				assertThat((String) inv.getArgument(0))
+						.contains("SUBSTR(id, 3, 6)", "SUBSTR(s.trm_id, 3, 6)")
+						.containsPattern("store (<|>=) \\?");
+				assertThat(inv.getArguments()).hasSize(2 + 5);  // SQL + RowCallbackHandler + 綁定參數（Mockito 展開 varargs）
+			});
+		} finally {
+			igalShards.destroy();
+		}
+	}
+
+	private IgalScanService service(long ttlSeconds) {
+		return new IgalScanService(HedgedQueryExecutor.direct("IGAL", igal), StoreShardExecutor.single("IGAL"),
+				new ReportMetrics(), ttlSeconds);
+	}
+
+	private FailStoreExportService failStores(IgalScanService igalScan) {
+		return new FailStoreExportService(igalScan, igal, StoreMasterCache.disabled(), new ReportMetrics());
+	}
+
+	// 模擬 IGAL 單次掃描：逐筆把 SCAN_ROWS 推給 RowCallbackHandler
+	private static Object scanRows(RowCallbackHandler handler) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		for (Object[] row : SCAN_ROWS) {
+			when(rs.getDate("day")).thenReturn(java.sql.Date.valueOf(DATE));
+			when(rs.getString("trm_id")).thenReturn((String) row[0]);
+			when(rs.getString("unyo_f_name")).thenReturn((String) row[1]);
+			when(rs.getString("file_sts")).thenReturn((String) row[2]);
+			when(rs.getInt("id_hits")).thenReturn((Integer) row[3]);
+			when(rs.getInt("store_hits")).thenReturn((Integer) row[4]);
+			when(rs.getInt("sec")).thenReturn((Integer) row[5]);
+			handler.processRow(rs);
+		}
+		return null;
+	}
+
+	// 模擬門市明細分批查詢（IN 條件不保證順序）
+	private static Object detailRows(RowCallbackHandler handler) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		for (String[] row : DETAIL_ROWS) {
+			when(rs.getString("store")).thenReturn(row[0]);
+			when(rs.getString("dlf_ip1")).thenReturn(row[1]);
+			when(rs.getString("adsl_1")).thenReturn(row[2]);
+			handler.processRow(rs);
+		}
+		return null;
+	}
+}
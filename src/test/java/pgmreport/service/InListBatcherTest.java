@@ -0,0 +1,40 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InListBatcherTest {
+
+	@Test
+	void splitsLargeListsIntoOracleSafeCanonicalBatches() {
+		List<String> stores = IntStream.range(0, 12_345)
+				.mapToObj(i -> String.format("%06d", i))
+				.toList();
+
+		List<List<String>> batches = InListBatcher.batches(stores);
+
+		assertThat(batches).hasSize(13);
+		assertThat(batches).allSatisfy(b -> assertThat(b.size()).isIn(16, 64, 256, 1000));
+		// 去掉補齊值後，依序還原成原清單
+		List<String> restored = new ArrayList<>();
+		for (List<String> batch : batches) {
+			restored.addAll(new LinkedHashSet<>(batch));
+		}
+		assertThat(restored).isEqualTo(stores);
+	}
+
+	@Test
+	void smallListIsPaddedWithItsLastValue() {
+		List<List<String>> batches = InListBatcher.batches(List.of("000001", "000002"));
+
+		assertThat(batches).hasSize(1);
+		assertThat(batches.get(0)).hasSize(16).endsWith("000002");
+		assertThat(InListBatcher.placeholders(3)).isEqualTo("?,?,?");
+	}
+}
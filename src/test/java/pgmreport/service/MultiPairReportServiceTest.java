@@ -0,0 +1,149 @@
+package pgmreport.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import pgmreport.service.MultiPairReportService.PairReport;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultiPairReportServiceTest {
+
+	@TempDir
+	Path outputDir;
+
+	private final GenericApplicationContext parent = new GenericApplicationContext();
+
+	@AfterEach
+	void tearDown() {
+		parent.close();
+	}
+
+	@Test
+	void pairContextGetsOwnPoolAndOutputDir() {
+		MultiPairReportService service = service("north, south ,north");
+
+		assertThat(service.pairNames()).containsExactly("north", "south");
+		try (ConfigurableApplicationContext north = service.openPairContext("north")) {
+			HikariDataSource igal = north.getBean("igalDataSource", HikariDataSource.class);
+			HikariDataSource nbits = north.getBean("nbitsDataSource", HikariDataSource.class);
+			assertThat(igal.getJdbcUrl()).isEqualTo("jdbc:oracle:thin:@igal-north:1521/IGAL");
+			assertThat(igal.getPoolName()).isEqualTo("igal-north");
+			assertThat(igal.getMaximumPoolSize()).isEqualTo(3);
+			assertThat(nbits.getJdbcUrl()).isEqualTo("jdbc:oracle:thin:@nbits-north:1521/NBITS");
+			assertThat(north.getBean("igalStoreShards", StoreShardExecutor.class).shardCount()).isEqualTo(4);
+			// 並行執行器沿用主 Context；量測與匯出服務為該組專用
+			assertThat(north.getBean(SourceQueryExecutor.class)).isSameAs(parent.getBean(SourceQueryExecutor.class));
+			assertThat(north.getBean(XlsxExportService.class)).isNotNull();
+			assertThat(north.getEnvironment().getProperty("report.xlsx.output-dir"))
+					.isEqualTo(outputDir.resolve("north").toString());
+		}
+	}
+
+	@Test
+	void topLevelDataSourceKeysAreNotInherited() {
+		MultiPairReportService service = service("north", Map.of(
+				"spring.datasource.igal.username", "default-user",
+				"spring.datasource.igal.standby.url", "jdbc:oracle:thin:@igal-default-standby:1521/IGAL",
+				"spring.datasource.igal.hedge.deadline-seconds", "5",
+				"report.pairs.north.nbits.hikari.pool-name", "north-nbits-custom"));
+
+		try (ConfigurableApplicationContext north = service.openPairContext("north")) {
+			assertThat(north.getEnvironment().getProperty("spring.datasource.igal.username")).isNull();
+			assertThat(north.getEnvironment().getProperty("spring.datasource.igal.standby.url")).isNull();
+			assertThat(north.getEnvironment().getProperty("spring.datasource.igal.hedge.deadline-seconds")).isNull();
+			assertThat(north.getBean("igalHedge", HedgedQueryExecutor.class).hasStandby()).isFalse();
+			// 該組自己設定的連線池名稱優先於自動產生的名稱
+			assertThat(north.getBean("nbitsDataSource", HikariDataSource.class).getPoolName()).isEqualTo("north-nbits-custom");
+			assertThat(north.getBean("igalDataSource", HikariDataSource.class).getPoolName()).isEqualTo("igal-north");
+		}
+	}
+
+	@Test
+	void pairStandbyIsCreatedOnlyWhenItsUrlIsSet() {
+		MultiPairReportService service = service("north", Map.of(
+				"report.pairs.north.igal.standby.url", "jdbc:oracle:thin:@igal-north-standby:1521/IGAL",
+				"report.pairs.north.igal.standby.driver-class-name", "oracle.jdbc.OracleDriver"));
+
+		try (ConfigurableApplicationContext north = service.openPairContext("north")) {
+			assertThat(north.getBean("igalHedge", HedgedQueryExecutor.class).hasStandby()).isTrue();
+			assertThat(north.getBean("igalStandbyDataSource", HikariDataSource.class).getPoolName()).isEqualTo("igal-standby-north");
+			assertThat(north.getBean("nbitsHedge", HedgedQueryExecutor.class).hasStandby()).isFalse();
+		}
+	}
+
+	@Test
+	void misconfiguredPairFailsAlone() {
+		MultiPairReportService service = service("broken");
+
+		List<PairReport> reports = service.runDay(LocalDate.of(2025, 12, 17), ReportFormat.CSV);
+
+		assertThat(reports).singleElement().satisfies(r -> {
+			assertThat(r.ok()).isFalse();
+			assertThat(r.error()).contains("report.pairs.broken.igal.url");
+		});
+	}
+
+	@Test
+	void sharedSnapshotAndResultPathsAreSplitPerPair() {
+		Path shared = outputDir.resolve("cache");
+		MultiPairReportService service = service("north", Map.of(
+				"report.store-master.snapshot-file", shared.resolve("master.bin").toString(),
+				"report.result-store.dir", shared.resolve("results").toString()));
+
+		try (ConfigurableApplicationContext north = service.openPairContext("north")) {
+			assertThat(north.getEnvironment().getProperty("report.store-master.snapshot-file"))
+					.isEqualTo(shared.resolve("north").resolve("master.bin").toString());
+			assertThat(north.getEnvironment().getProperty("report.result-store.dir"))
+					.isEqualTo(shared.resolve("results").resolve("north").toString());
+		}
+	}
+
+	@Test
+	void pairsSharingOneSnapshotFileAreRejected() {
+		String file = outputDir.resolve("master.bin").toString();
+		MultiPairReportService service = service("north,south", Map.of(
+				"report.pairs.north.store-master.snapshot-file", file,
+				"report.pairs.south.store-master.snapshot-file", file));
+
+		assertThatThrownBy(() -> service.runDay(LocalDate.of(2025, 12, 17), ReportFormat.CSV))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("report.store-master.snapshot-file")
+				.hasMessageContaining("north")
+				.hasMessageContaining("south");
+	}
+
+	private MultiPairReportService service(String names) {
+		return service(names, Map.of());
+	}
+
+	private MultiPairReportService service(String names, Map<String, Object> extra) {
+		Map<String, Object> props = new HashMap<>(extra);
+		props.putAll(Map.of(
+				"report.xlsx.output-dir", outputDir.toString(),
+				"report.pairs.north.igal.url", "jdbc:oracle:thin:@igal-north:1521/IGAL",
+				"report.pairs.north.igal.driver-class-name", "oracle.jdbc.OracleDriver",
+				"report.pairs.north.igal.hikari.maximum-pool-size", "3",
+				"report.pairs.north.igal.shard.count", "4",
+				"report.pairs.north.nbits.url", "jdbc:oracle:thin:@nbits-north:1521/NBITS",
+				"report.pairs.north.nbits.driver-class-name", "oracle.jdbc.OracleDriver"));
+		parent.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", props));
+		ConfigurationPropertySources.attach(parent.getEnvironment());  // 與 Spring Boot 主 Context 相同
+		parent.registerBean(SourceQueryExecutor.class, SourceQueryExecutor::sequential);
+		parent.refresh();
+		return new MultiPairReportService(parent, names, 2, outputDir.toString());
+	}
+}
@@ -0,0 +1,144 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+class NbitsDiffExportServiceTest {
+
+	private static final LocalDate DATE = LocalDate.of(2025, 12, 17);
+
+	// IGAL：成功門市 000001 / 000002；明細查詢回傳 000002 一筆
+	private final JdbcTemplate igal = mock(JdbcTemplate.class, inv -> {
+		if (inv.getArgument(0) instanceof String) {
+			return scanRows(inv.getArgument(1), "000001", "000002");
+		}
+		return details(inv.getArgument(1), new NbitsDiffExportService.Row("00000002", "10.0.0.2", "adsl", "000002"));
+	});
+	// NBITS：僅 000001 取檔成功
+	private final JdbcTemplate nbits = mock(JdbcTemplate.class, inv -> stores(inv.getArgument(1), "000001"));
+
+	@Test
+	void countAndExportShareOneQueryPerDate() {
+		NbitsDiffExportService service = new NbitsDiffExportService(igal, scan(igal, StoreShardExecutor.single("IGAL")), nbitsScan(StoreShardExecutor.single("NBITS"), 600), SourceQueryExecutor.sequential(), StoreMasterCache.disabled(), new ReportMetrics(), 600);
+
+		// 與主程式相同順序：先串流匯出，再取筆數
+		List<String> exported = new ArrayList<>();
+		int streamed = service.streamNbitsDiffRows(DATE, (trmId, dlfIp1, adsl1) -> exported.add(trmId));
+		int count = service.countNbitsDiff(DATE);
+
+		assertThat(streamed).isEqualTo(1);
+		assertThat(count).isEqualTo(1);
+		assertThat(exported).containsExactly("00000002");
+		// IGAL：單次掃描 + 門市明細，各一次；NBITS：單次掃描，一次
+		assertThat(mockingDetails(igal).getInvocations()).hasSize(2);
+		assertThat(mockingDetails(nbits).getInvocations()).hasSize(1);
+	}
+
+	@Test
+	void expiredEntryIsQueriedAgain() {
+		NbitsDiffExportService service = new NbitsDiffExportService(igal, scan(igal, StoreShardExecutor.single("IGAL")), nbitsScan(StoreShardExecutor.single("NBITS"), 0), SourceQueryExecutor.sequential(), StoreMasterCache.disabled(), new ReportMetrics(), 0);
+
+		service.countNbitsDiff(DATE);
+		service.findNbitsDiffRows(DATE);
+
+		assertThat(mockingDetails(nbits).getInvocations()).hasSize(2);
+	}
+
+	@Test
+	void countStreamsDetailsAndRowsKeepStoreOrder() {
+		JdbcTemplate igal = mock(JdbcTemplate.class, inv -> {
+			if (inv.getArgument(0) instanceof String) {
+				return scanRows(inv.getArgument(1), "000001", "000002", "000003");
+			}
+			// IN 條件查詢不保證順序：明細以相反順序回傳
+			return details(inv.getArgument(1),
+					new NbitsDiffExportService.Row("00000003", "10.0.0.3", "adsl", "000003"),
+					new NbitsDiffExportService.Row("00000002", "10.0.0.2", "adsl", "000002"));
+		});
+		NbitsDiffExportService service = new NbitsDiffExportService(igal, scan(igal, StoreShardExecutor.single("IGAL")), nbitsScan(StoreShardExecutor.single("NBITS"), 600), SourceQueryExecutor.sequential(), StoreMasterCache.disabled(), new ReportMetrics(), 600);
+
+		assertThat(service.countNbitsDiff(DATE)).isEqualTo(2);
+		assertThat(service.findNbitsDiffStores(DATE).toStoreCodes()).containsExactly("000002", "000003");
+		assertThat(service.findNbitsDiffRows(DATE)).extracting(NbitsDiffExportService.Row::trmId)
+				.containsExactly("00000002", "00000003");
+		assertThat(mockingDetails(nbits).getInvocations()).hasSize(1);
+	}
+
+	@Test
+	void shardedQueriesMergeToSameDiff() {
+		StoreShardExecutor igalShards = new StoreShardExecutor("IGAL", 2, 2);
+		StoreShardExecutor nbitsShards = new StoreShardExecutor("NBITS", 2, 2);
+		try {
+			NbitsDiffExportService service = new NbitsDiffExportService(igal, scan(igal, igalShards), nbitsScan(nbitsShards, 600), SourceQueryExecutor.sequential(), StoreMasterCache.disabled(), new ReportMetrics(), 600);
+
+			assertThat(service.findNbitsDiffStores(DATE).toStoreCodes()).containsExactly("000002");
+			// 每個分段各一次查詢，SQL 帶分段條件
+			assertThat(mockingDetails(nbits).getInvocations()).hasSize(2);
+			assertThat(mockingDetails(nbits).getInvocations())
+					.allSatisfy(inv -> assertThat((String) inv.getArgument(0)).contains("SUBSTR(term_id, 3, 6)"));
+		} finally {
+			igalShards.destroy();
+			nbitsShards.destroy();
+		}
+	}
+
+	// 模擬門市明細查詢：逐筆把明細欄位推給 RowCallbackHandler
+	private static Object details(RowCallbackHandler handler, NbitsDiffExportService.Row... rows) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		for (NbitsDiffExportService.Row row : rows) {
+			when(rs.getString("trm_id")).thenReturn(row.trmId());
+			when(rs.getString("dlf_ip1")).thenReturn(row.dlfIp1());
+			when(rs.getString("adsl_1")).thenReturn(row.adsl1());
+			when(rs.getString("store")).thenReturn(row.store());
+			handler.processRow(rs);
+		}
+		return null;
+	}
+
+	private static IgalScanService scan(JdbcTemplate igal, StoreShardExecutor igalShards) {
+		return new IgalScanService(HedgedQueryExecutor.direct("IGAL", igal), igalShards, new ReportMetrics(), 600);
+	}
+
+	// NBITS 掃描與差異快取使用相同存活時間（0 秒時兩者都每次重新查詢）
+	private NbitsScanService nbitsScan(StoreShardExecutor nbitsShards, long ttlSeconds) {
+		return new NbitsScanService(HedgedQueryExecutor.direct("NBITS", nbits), nbitsShards, new ReportMetrics(), ttlSeconds);
+	}
+
+	// 模擬 IGAL 單次掃描：每個門市一筆取檔成功（file_sts = 8、ig_ui_sc_t 有對應）的 SDCDGETR 列
+	private static Object scanRows(RowCallbackHandler handler, String... stores) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		for (String store : stores) {
+			when(rs.getDate("day")).thenReturn(java.sql.Date.valueOf(DATE));
+			when(rs.getString("trm_id")).thenReturn("00" + store);
+			when(rs.getString("unyo_f_name")).thenReturn("SDCDGETR");
+			when(rs.getString("file_sts")).thenReturn("8");
+			when(rs.getInt("id_hits")).thenReturn(1);
+			when(rs.getInt("store_hits")).thenReturn(0);
+			when(rs.getInt("sec")).thenReturn(0);
+			handler.processRow(rs);
+		}
+		return null;
+	}
+
+	// 模擬 NBITS 單次掃描：逐筆把 store 欄位推給 RowCallbackHandler（sec 預設 0）
+	private static Object stores(RowCallbackHandler handler, String... stores) throws Exception {
+		ResultSet rs = mock(ResultSet.class);
+		for (String store : stores) {
+			when(rs.getString("store")).thenReturn(store);
+			when(rs.getDate("day")).thenReturn(java.sql.Date.valueOf(DATE));
+			handler.processRow(rs);
+		}
+		return null;
+	}
+}
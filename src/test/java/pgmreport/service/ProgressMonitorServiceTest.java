@@ -0,0 +1,88 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import pgmreport.service.ProgressMonitorService.DayProgress;
+import pgmreport.service.ProgressMonitorService.IgalRow;
+import pgmreport.service.ProgressMonitorService.NbitsRow;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProgressMonitorServiceTest {
+
+	private static final LocalDate DAY = LocalDate.of(2025, 12, 17);
+	private static final long LAG_SECONDS = 300;
+
+	@Test
+	void pendingRowIsReReadAndReplacedWhenItFinishes() {
+		DayProgress progress = new DayProgress(DAY, LAG_SECONDS);
+		Timestamp t1 = at("08:00:00");
+		Timestamp t2 = at("08:05:00");
+
+		progress.applyIgal(List.of(
+				new IgalRow("00123456", "SDCDGETR", "1", t1, 1, 1),
+				new IgalRow("00654321", "SDCDGETR", "8", t2, 1, 1)));
+
+		// 未結束的列壓低下次讀取起點
+		assertThat(progress.igalReadFrom()).isEqualTo(t1);
+		assertThat(progress.snapshot().totalCount()).isEqualTo(2);
+		assertThat(progress.snapshot().successCount()).isEqualTo(1);
+
+		// 重讀：第一列轉為失敗，第二列原封不動
+		progress.applyIgal(List.of(
+				new IgalRow("00123456", "SDCDGETR", "7", t1, 1, 1),
+				new IgalRow("00654321", "SDCDGETR", "8", t2, 1, 1)));
+
+		assertThat(progress.snapshot().totalCount()).isEqualTo(2);
+		assertThat(progress.snapshot().successCount()).isEqualTo(1);
+		assertThat(progress.snapshot().failCount()).isEqualTo(1);
+		assertThat(progress.failTrmIds()).containsExactly("00123456");
+		// 都已結束：起點只退回高水位減去延遲
+		assertThat(progress.igalReadFrom()).isEqualTo(at("08:00:00"));
+	}
+
+	@Test
+	void overlapWindowPicksUpLateRowsWithoutCountingTwice() {
+		DayProgress progress = new DayProgress(DAY, LAG_SECONDS);
+		IgalRow early = new IgalRow("00000001", "SDCDGETR", "8", at("09:00:00"), 1, 0);
+		IgalRow latest = new IgalRow("00000002", "SDCDGETR", "8", at("09:10:00"), 1, 0);
+
+		progress.applyIgal(List.of(early, latest));
+		// 起點 = 09:10 - 5 分：09:00 的列已確定，之後不再讀到
+		assertThat(progress.igalReadFrom()).isEqualTo(at("09:05:00"));
+
+		// 較晚 commit 但 kidou_date 較舊（仍在重疊區間內）的列，與重讀的 09:10 列一起回來
+		IgalRow late = new IgalRow("00000003", "SDCDGETR", "8", at("09:06:00"), 1, 0);
+		progress.applyIgal(List.of(late, latest));
+
+		assertThat(progress.snapshot().totalCount()).isEqualTo(3);
+		assertThat(progress.snapshot().successCount()).isEqualTo(3);
+
+		// 再讀一次相同內容：計數不變
+		progress.applyIgal(List.of(late, latest));
+		assertThat(progress.snapshot().totalCount()).isEqualTo(3);
+	}
+
+	@Test
+	void nbitsOverlapRowsAreCountedOnce() {
+		DayProgress progress = new DayProgress(DAY, LAG_SECONDS);
+		Timestamp t1 = at("09:00:00");
+		progress.applyIgal(List.of(new IgalRow("00123456", "SDCDGETR", "8", t1, 1, 0)));
+
+		progress.applyNbits(List.of(new NbitsRow("00999999", t1)));
+		// 重疊區間重讀同一記錄，並帶出同時間點的新記錄
+		progress.applyNbits(List.of(new NbitsRow("00999999", t1), new NbitsRow("00123456", t1)));
+
+		assertThat(progress.snapshot().nbitsSuccess()).isEqualTo(2);
+		assertThat(progress.nbitsDiffStoreCount()).isZero();
+		assertThat(progress.nbitsReadFrom()).isEqualTo(at("08:55:00"));
+	}
+
+	private static Timestamp at(String time) {
+		return Timestamp.valueOf(DAY + " " + time);
+	}
+}
@@ -0,0 +1,29 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReportDateRangeTest {
+
+	@Test
+	void singleDayIsHalfOpenUntilNextMidnight() {
+		ReportDateRange range = ReportDateRange.ofDay(LocalDate.of(2025, 12, 31));
+
+		assertThat(range.params()).containsExactly(
+				Date.valueOf("2025-12-31"),
+				Date.valueOf("2026-01-01"));
+	}
+
+	@Test
+	void emptyRangeIsRejected() {
+		LocalDate day = LocalDate.of(2025, 12, 17);
+
+		assertThatThrownBy(() -> new ReportDateRange(day, day))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,158 @@
+package pgmreport.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import pgmreport.service.FileStatusReportService.FileStatusResult;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReportHttpServiceTest {
+
+	private static final LocalDate DAY0 = LocalDate.of(2025, 12, 15);
+	private static final LocalDate DAY1 = LocalDate.of(2025, 12, 16);
+	private static final LocalDate DAY2 = LocalDate.of(2025, 12, 17);
+	private static final LocalDate DAY3 = LocalDate.of(2025, 12, 18);
+
+	private final IgalScanService igalScan = mock(IgalScanService.class);
+	private final NbitsScanService nbitsScan = mock(NbitsScanService.class);
+	private final FileStatusReportService reportService = mock(FileStatusReportService.class);
+	private final FailStoreExportService failStoreService = mock(FailStoreExportService.class);
+	private final NbitsDiffExportService nbitsDiffService = mock(NbitsDiffExportService.class);
+	private final DistributionTimelineService timelineService = mock(DistributionTimelineService.class);
+	private final HttpClient client = HttpClient.newHttpClient();
+	private ReportHttpService service;
+	private HttpServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		when(reportService.queryByDate(any())).thenAnswer(inv -> new FileStatusResult(inv.getArgument(0), 10, 8, 2, 7));
+		doAnswer(inv -> {
+			ReportRowSink sink = inv.getArgument(1);
+			sink.row("00000001", "10.0.0.1", "a\"b");
+			sink.row("00000002", null, "adsl");
+			return 2;
+		}).when(failStoreService).streamFailStores(any(), any());
+		doAnswer(inv -> {
+			ReportRowSink sink = inv.getArgument(1);
+			sink.row("00000777", "10.0.7.7", "adsl");
+			return 1;
+		}).when(nbitsDiffService).streamNbitsDiffRows(any(), any());
+
+		// 保留 2 天：監看日期與前一天
+		service = new ReportHttpService(igalScan, nbitsScan, reportService, failStoreService, nbitsDiffService, timelineService,
+				"127.0.0.1", 0, 300, 2, 2);
+		server = service.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	void servesSnapshotJsonAndHonoursIfNoneMatch() throws Exception {
+		service.refreshWindow(DAY2);
+
+		HttpResponse<String> status = get("/api/status?date=2025-12-17", null);
+		assertThat(status.statusCode()).isEqualTo(200);
+		assertThat(status.body()).isEqualTo("{\"date\":\"2025-12-17\",\"totalCount\":10,\"successCount\":8,"
+				+ "\"failCount\":2,\"nbitsSuccess\":7,\"nbitsNotFetched\":1,\"degraded\":[]}");
+		String etag = status.headers().firstValue("ETag").orElseThrow();
+
+		HttpResponse<String> notModified = get("/api/status?date=2025-12-17", etag);
+		assertThat(notModified.statusCode()).isEqualTo(304);
+		assertThat(notModified.body()).isEmpty();
+
+		HttpResponse<String> fail = get("/api/fail-stores?date=2025-12-17", null);
+		assertThat(fail.body()).isEqualTo("{\"date\":\"2025-12-17\",\"rows\":["
+				+ "{\"trmId\":\"00000001\",\"dlfIp1\":\"10.0.0.1\",\"adsl1\":\"a\\\"b\"},"
+				+ "{\"trmId\":\"00000002\",\"dlfIp1\":null,\"adsl1\":\"adsl\"}],\"count\":2}");
+		assertThat(fail.headers().firstValue("ETag")).isNotEqualTo(status.headers().firstValue("ETag"));
+
+		// 三個端點共用同一份快照：資料庫只查一次
+		verify(reportService, times(1)).queryByDate(DAY2);
+		verify(failStoreService, times(1)).streamFailStores(eq(DAY2), any());
+	}
+
+	@Test
+	void servesOnlyPreloadedWindowWithoutQueryingOnRequest() throws Exception {
+		assertThat(get("/api/status?date=2025-12-17", null).statusCode()).isEqualTo(404);  // 尚未載入
+
+		// 監看日期每次重新查詢，前一天只預先載入一次
+		service.refreshWindow(DAY2);
+		service.refreshWindow(DAY2);
+		assertThat(get("/api/status?date=2025-12-16", null).statusCode()).isEqualTo(200);
+		assertThat(get("/api/status?date=2025-12-15", null).statusCode()).isEqualTo(404);  // 視窗外
+		verify(reportService, times(2)).queryByDate(DAY2);
+		verify(reportService, times(1)).queryByDate(DAY1);
+		verify(reportService, never()).queryByDate(DAY0);
+
+		// 跨日：視窗移動，最舊的一天丟棄，前一個監看日期保留
+		service.refreshWindow(DAY3);
+		assertThat(get("/api/status?date=2025-12-16", null).statusCode()).isEqualTo(404);
+		assertThat(get("/api/status?date=2025-12-17", null).statusCode()).isEqualTo(200);
+		assertThat(get("/api/status", null).body()).contains("\"date\":\"2025-12-18\"");
+		verify(reportService, times(2)).queryByDate(DAY2);
+	}
+
+	@Test
+	void rejectsBadRequests() throws Exception {
+		service.refreshWindow(DAY2);
+		assertThat(get("/api/status?date=2025-13-01", null).statusCode()).isEqualTo(400);
+		assertThat(get("/api/unknown", null).statusCode()).isEqualTo(404);
+		assertThat(get("/api/timeline?date=2025-12-17", null).statusCode()).isEqualTo(404);  // 時段分佈未啟用
+		assertThat(client.send(HttpRequest.newBuilder(uri("/api/status")).POST(HttpRequest.BodyPublishers.noBody()).build(),
+				HttpResponse.BodyHandlers.ofString()).statusCode()).isEqualTo(405);
+	}
+
+	@Test
+	void servesTimelineWhenEnabled() throws Exception {
+		DistributionTimeline timeline = new DistributionTimeline(DAY2, 720);
+		timeline.addIgal(60, 3, 1);
+		when(timelineService.isEnabled()).thenReturn(true);
+		when(timelineService.timeline(any())).thenReturn(timeline);
+		service.refreshWindow(DAY2);
+
+		HttpResponse<String> response = get("/api/timeline?date=2025-12-17", null);
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(response.body()).isEqualTo(timeline.toJson());
+	}
+
+	@Test
+	void ifNoneMatchAcceptsListsWeakTagsAndWildcard() {
+		assertThat(ReportHttpService.etagMatches("\"a\", W/\"b\"", "\"b\"")).isTrue();
+		assertThat(ReportHttpService.etagMatches("*", "\"b\"")).isTrue();
+		assertThat(ReportHttpService.etagMatches("\"a\"", "\"b\"")).isFalse();
+		assertThat(ReportHttpService.etagMatches(null, "\"b\"")).isFalse();
+	}
+
+	private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri(path)).GET();
+		if (ifNoneMatch != null) {
+			request.header("If-None-Match", ifNoneMatch);
+		}
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+}
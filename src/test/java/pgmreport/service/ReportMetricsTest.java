@@ -0,0 +1,94 @@
+package pgmreport.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ReportMetricsTest {
+
+	private final ReportMetrics metrics = new ReportMetrics();
+
+	@Test
+	void stagesRecordActualQueriesRowsAndBytes() {
+		metrics.query("IGAL", "fail-stores", stage -> stage.rows(1200));
+		metrics.query("IGAL", "fail-stores", stage -> stage.queries(3).rows(800));
+		metrics.query("NBITS", "success-stores", stage -> stage.rows(250));
+		metrics.phase("XLSX", "write", stage -> stage.rows(10).bytes(4096));
+
+		assertThat(metrics.snapshot())
+				.extracting(ReportMetrics.StageSummary::name, ReportMetrics.StageSummary::count,
+						ReportMetrics.StageSummary::rows, ReportMetrics.StageSummary::queries,
+						ReportMetrics.StageSummary::bytesWritten)
+				.containsExactly(
+						tuple("IGAL.fail-stores", 2L, 2000L, 4L, 0L),
+						tuple("NBITS.success-stores", 1L, 250L, 1L, 0L),
+						tuple("XLSX.write", 1L, 10L, 0L, 4096L));
+		assertThat(metrics.registry().find("report.stage").tags("source", "IGAL", "stage", "fail-stores").timer())
+				.satisfies(timer -> assertThat(timer.count()).isEqualTo(2));
+	}
+
+	@Test
+	void failedStageIsCountedAndRethrown() {
+		assertThatThrownBy(() -> metrics.query("IGAL", "status-counts", stage -> {
+			throw new IllegalStateException("ORA-01013");
+		})).hasMessage("ORA-01013");
+
+		assertThat(metrics.snapshot()).singleElement()
+				.satisfies(s -> {
+					assertThat(s.count()).isEqualTo(1);
+					assertThat(s.errors()).isEqualTo(1);
+				});
+	}
+
+	@Test
+	void resetClearsTheRegistry() {
+		metrics.query("IGAL", "status-counts", stage -> stage.rows(1));
+
+		metrics.reset();
+
+		assertThat(metrics.snapshot()).isEmpty();
+		assertThat(metrics.registry().getMeters()).isEmpty();
+	}
+
+	@Test
+	void injectedRegistryReceivesPairTaggedMetersAcrossRuns() {
+		SimpleMeterRegistry external = new SimpleMeterRegistry();
+		ReportMetrics north = new ReportMetrics(external, "north");
+
+		north.query("IGAL", "status-counts", stage -> stage.rows(5));
+		north.reset();
+		north.query("IGAL", "status-counts", stage -> stage.rows(7));
+
+		assertThat(north.snapshot()).singleElement().satisfies(s -> assertThat(s.rows()).isEqualTo(7));
+		assertThat(external.find("report.stage.rows").tags("pair", "north", "source", "IGAL").counter())
+				.satisfies(counter -> assertThat(counter.count()).isEqualTo(12.0));
+		assertThat(external.find("report.stage").tags("pair", "north").timer())
+				.satisfies(timer -> assertThat(timer.count()).isEqualTo(2));
+	}
+
+	@Test
+	void runSummaryIsWrittenAsJson(@TempDir Path dir) throws Exception {
+		metrics.query("IGAL", "status-counts", stage -> stage.rows(1));
+
+		Path file = metrics.writeRunSummary(dir.resolve("run.metrics.json"), Map.of("date", "2025-12-17"));
+
+		String json = Files.readString(file);
+		assertThat(json).startsWith("{\"startedAt\":\"")
+				.contains("\"labels\":{\"date\":\"2025-12-17\"}")
+				.contains("\"stages\":[{\"name\":\"IGAL.status-counts\",\"count\":1,\"errors\":0,")
+				.contains("\"rows\":1,\"queries\":1,")
+				.endsWith("}]}");
+		try (Stream<Path> files = Files.list(dir)) {
+			assertThat(files).containsExactly(file);  // 暫存檔已搬移
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import pgmreport.service.SourceQueryExecutor.SourceQueryException;
+import pgmreport.service.SourceQueryExecutor.SourceTask;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SourceQueryExecutorTest {
+
+	@Test
+	void sourcesRunConcurrently() throws Exception {
+		SourceQueryExecutor executor = new SourceQueryExecutor(true, 2, 5);
+		try {
+			// 兩邊互相等待對方開始：若依序執行會逾時
+			CountDownLatch started = new CountDownLatch(2);
+			SourceTask<Boolean> igal = executor.submit("IGAL", () -> {
+				started.countDown();
+				return started.await(2, TimeUnit.SECONDS);
+			});
+			SourceTask<Boolean> nbits = executor.submit("NBITS", () -> {
+				started.countDown();
+				return started.await(2, TimeUnit.SECONDS);
+			});
+
+			assertThat(igal.join()).isTrue();
+			assertThat(nbits.join()).isTrue();
+		} finally {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	void failureIsReportedWithItsSource() {
+		SourceQueryExecutor executor = SourceQueryExecutor.sequential();
+
+		SourceTask<Integer> nbits = executor.submit("NBITS", () -> {
+			throw new IllegalStateException("ORA-12170");
+		});
+
+		assertThatThrownBy(nbits::join)
+				.isInstanceOf(SourceQueryException.class)
+				.hasMessageContaining("[NBITS]")
+				.hasRootCauseMessage("ORA-12170");
+	}
+
+	@Test
+	void slowSourceTimesOut() throws Exception {
+		SourceQueryExecutor executor = new SourceQueryExecutor(true, 2, 1);
+		try {
+			SourceTask<Integer> igal = executor.submit("IGAL", () -> {
+				Thread.sleep(5_000);
+				return 1;
+			});
+
+			assertThatThrownBy(igal::join)
+					.isInstanceOfSatisfying(SourceQueryException.class,
+							ex -> assertThat(ex.source()).isEqualTo("IGAL"));
+		} finally {
+			executor.destroy();
+		}
+	}
+}
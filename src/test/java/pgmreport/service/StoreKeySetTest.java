@@ -0,0 +1,63 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StoreKeySetTest {
+
+	@Test
+	void codecRoundTripsSixDigitCodes() {
+		assertThat(StoreKeyCodec.encode("000123")).isEqualTo(123);
+		assertThat(StoreKeyCodec.decode(123)).isEqualTo("000123");
+		assertThat(StoreKeyCodec.encode("12A456")).isEqualTo(StoreKeyCodec.INVALID);
+		assertThat(StoreKeyCodec.encode("1234")).isEqualTo(StoreKeyCodec.INVALID);
+	}
+
+	@Test
+	void differenceMatchesStringSetSemantics() {
+		List<String> igal = List.of("000003", "000001", "000003", "00A001", "000009", "000002");
+		List<String> nbits = List.of("000002", "000009", "00A001", "000777");
+
+		List<String> diff = StoreKeySet.of(igal).minus(StoreKeySet.of(nbits)).toStoreCodes();
+
+		assertThat(diff).containsExactly("000001", "000003");
+	}
+
+	@Test
+	void unionMergesSortedKeysAndIrregularCodes() {
+		StoreKeySet a = StoreKeySet.of(List.of("000001", "000005", "00A001"));
+		StoreKeySet b = StoreKeySet.of(List.of("000002", "000005", "000009"));
+
+		assertThat(a.union(b).toStoreCodes()).containsExactly("000001", "000002", "000005", "000009", "00A001");
+		assertThat(a.union(StoreKeySet.empty())).isSameAs(a);
+	}
+
+	// 大量門市：排序 int[] merge-diff 與原本 HashSet<String> + stream().distinct() 結果一致（耗時比較見 benchmark 模組）
+	@Test
+	void mergeDiffAgainstHashSetOnLargeChain() {
+		Random random = new Random(42);
+		List<String> igal = new ArrayList<>();
+		List<String> nbits = new ArrayList<>();
+		for (int i = 0; i < 200_000; i++) {
+			String store = String.format("%06d", random.nextInt(1_000_000));
+			igal.add(store);
+			if (random.nextInt(10) != 0) {
+				nbits.add(store);
+			}
+		}
+
+		Set<String> nbitsSet = new HashSet<>(nbits);
+		List<String> expected = igal.stream()
+				.filter(s -> !nbitsSet.contains(s))
+				.distinct()
+				.collect(Collectors.toList());
+
+		List<String> actual = StoreKeySet.of(igal).minus(StoreKeySet.of(nbits)).toStoreCodes();
+
+		assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+	}
+}
@@ -0,0 +1,70 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StoreMasterTest {
+
+	private static StoreMaster sample() {
+		return StoreMaster.builder(new StoreMaster.Signature(4, 12345L))
+				.add("00000002", "000002", "10.0.0.2", "adsl-2")
+				.add("00000001", "000001", "10.0.0.1", "adsl-1")
+				.add("00000001", "000001", "10.0.0.9", null)
+				.add("00AB", "AB", "10.0.0.3", "adsl-3")
+				.build();
+	}
+
+	@Test
+	void probesByCodeAndTrmIdInLoadOrder() {
+		StoreMaster master = sample();
+
+		assertThat(ips(master, "000001", true)).containsExactly("10.0.0.1", "10.0.0.9");
+		assertThat(ips(master, "00000002", false)).containsExactly("10.0.0.2");
+		assertThat(ips(master, "AB", true)).containsExactly("10.0.0.3");
+		assertThat(ips(master, "00AB", false)).containsExactly("10.0.0.3");
+		assertThat(ips(master, "000003", true)).isEmpty();
+		assertThat(ips(master, "99000001", false)).isEmpty();
+	}
+
+	@Test
+	void countsHitsByIdAndTrmId() {
+		StoreMaster master = sample();
+
+		assertThat(master.countById("00000001")).isEqualTo(2);
+		assertThat(master.countById("99000001")).isZero();
+		assertThat(master.countByTrmId("00000001")).isEqualTo(2);
+		assertThat(master.countByTrmId("00AB")).isEqualTo(1);
+		assertThat(master.countByTrmId("99000001")).isZero();
+	}
+
+	@Test
+	void snapshotRoundTrips(@TempDir Path dir) throws Exception {
+		Path file = dir.resolve("store-master.bin");
+		sample().write(file);
+
+		StoreMaster read = StoreMaster.read(file);
+
+		assertThat(read.signature()).isEqualTo(new StoreMaster.Signature(4, 12345L));
+		assertThat(read.size()).isEqualTo(4);
+		List<String> adsl = new ArrayList<>();
+		read.forEachByCode("000001", (id, store, dlfIp1, adsl1) -> adsl.add(adsl1));
+		assertThat(adsl).containsExactly("adsl-1", null);
+	}
+
+	private static List<String> ips(StoreMaster master, String key, boolean byCode) {
+		List<String> ips = new ArrayList<>();
+		StoreMaster.EntryConsumer collect = (id, store, dlfIp1, adsl1) -> ips.add(dlfIp1);
+		if (byCode) {
+			master.forEachByCode(key, collect);
+		} else {
+			master.forEachByTrmId(key, collect);
+		}
+		return ips;
+	}
+}
@@ -0,0 +1,65 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import pgmreport.service.SourceQueryExecutor.SourceQueryException;
+import pgmreport.service.StoreShardExecutor.StoreRange;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StoreShardExecutorTest {
+
+	@Test
+	void singleShardAddsNoCondition() {
+		List<StoreRange> ranges = StoreRange.split(1);
+
+		assertThat(ranges).containsExactly(new StoreRange(null, null));
+		assertThat(ranges.get(0).condition("SUBSTR(trm_id, 3, 6)")).isEmpty();
+		assertThat(ranges.get(0).params("a", "b")).containsExactly("a", "b");
+	}
+
+	@Test
+	void rangesCoverWholeStoreSpaceWithoutOverlap() {
+		List<StoreRange> ranges = StoreRange.split(4);
+
+		assertThat(ranges).containsExactly(
+				new StoreRange(null, "250000"),
+				new StoreRange("250000", "500000"),
+				new StoreRange("500000", "750000"),
+				new StoreRange("750000", null));
+		assertThat(ranges.get(0).condition("k")).isEqualTo("AND (k < ? OR k IS NULL)");
+		assertThat(ranges.get(1).condition("k")).isEqualTo("AND k >= ? AND k < ?");
+		assertThat(ranges.get(3).condition("k")).isEqualTo("AND k >= ?");
+		assertThat(ranges.get(1).params("from", "to")).containsExactly("from", "to", "250000", "500000");
+	}
+
+	@Test
+	void mapReturnsResultsInShardOrder() {
+		StoreShardExecutor shards = new StoreShardExecutor("IGAL", 3, 2);
+		try {
+			assertThat(shards.map(StoreRange::from)).containsExactly(null, "333333", "666666");
+		} finally {
+			shards.destroy();
+		}
+	}
+
+	@Test
+	void failedShardIsReportedWithSource() {
+		StoreShardExecutor shards = new StoreShardExecutor("NBITS", 2, 2);
+		try {
+			assertThatThrownBy(() -> shards.map(range -> {
+				if (range.to() == null) {
+					throw new IllegalStateException("ORA-01013");
+				}
+				return 1;
+			}))
+					.isInstanceOf(SourceQueryException.class)
+					.hasMessage("[NBITS] 分片 2/2 查詢失敗：ORA-01013");
+		} finally {
+			shards.destroy();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package pgmreport.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TtlFutureCacheTest {
+
+	@Test
+	void loadsOnceWhileAliveAndAgainAfterInvalidate() {
+		AtomicInteger loads = new AtomicInteger();
+		TtlFutureCache<String, Integer> cache = new TtlFutureCache<>("測試", 600_000, k -> loads.incrementAndGet());
+
+		assertThat(cache.get("a")).isEqualTo(1);
+		assertThat(cache.get("a")).isEqualTo(1);
+		cache.invalidate("a");
+		assertThat(cache.get("a")).isEqualTo(2);
+		cache.invalidateIf(k -> k.startsWith("a"));
+		assertThat(cache.get("a")).isEqualTo(3);
+	}
+
+	@Test
+	void expiredEntryIsLoadedAgain() {
+		AtomicInteger loads = new AtomicInteger();
+		TtlFutureCache<String, Integer> cache = new TtlFutureCache<>("測試", 0, k -> loads.incrementAndGet());
+
+		cache.get("a");
+		cache.get("a");
+
+		assertThat(loads).hasValue(2);
+	}
+
+	@Test
+	void failedLoadIsNotCached() {
+		AtomicInteger loads = new AtomicInteger();
+		TtlFutureCache<String, Integer> cache = new TtlFutureCache<>("測試", 600_000, k -> {
+			if (loads.incrementAndGet() == 1) {
+				throw new IllegalStateException("boom");
+			}
+			return loads.get();
+		});
+
+		assertThatThrownBy(() -> cache.get("a")).isInstanceOf(IllegalStateException.class).hasMessage("boom");
+		assertThat(cache.get("a")).isEqualTo(2);
+	}
+}
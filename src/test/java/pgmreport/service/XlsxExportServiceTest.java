@@ -0,0 +1,142 @@
+package pgmreport.service;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class XlsxExportServiceTest {
+
+	private static final LocalDate DATE = LocalDate.of(2025, 12, 17);
+
+	@TempDir
+	Path outputDir;
+
+	private final FailStoreExportService failStoreService = mock(FailStoreExportService.class);
+	private final NbitsDiffExportService nbitsDiffService = mock(NbitsDiffExportService.class);
+	private final DistributionTimelineService timelineService = mock(DistributionTimelineService.class);
+
+	@Test
+	void streamingModeWritesBothSheetsFromStreamedRows() throws Exception {
+		doAnswer(inv -> {
+			ReportRowSink sink = inv.getArgument(1);
+			for (int i = 0; i < 250; i++) {
+				sink.row(String.format("00%06d", i), "10.0.0." + (i % 250), null);
+			}
+			return 250;
+		}).when(failStoreService).streamFailStores(eq(DATE), any());
+		nbitsDiff("00000777", "10.0.7.7", "adsl");
+
+		XlsxExportService service = new XlsxExportService(failStoreService, nbitsDiffService,
+				SourceQueryExecutor.sequential(), new ReportMetrics(), DailyResultStore.disabled(), timelineService, outputDir.toString(), true, 100, "10,10,10", "xlsx");
+		Path xlsx = service.exportEmergencyXlsx(DATE);
+
+		try (InputStream in = Files.newInputStream(xlsx); Workbook workbook = new XSSFWorkbook(in)) {
+			Sheet fail = workbook.getSheet("指示檔配信失敗門市");
+			Sheet diff = workbook.getSheet("NBITS未取檔門市");
+			assertThat(fail.getLastRowNum()).isEqualTo(250);
+			assertThat(fail.getRow(250).getCell(0).getStringCellValue()).isEqualTo("00000249");
+			assertThat(fail.getRow(1).getCell(2).getStringCellValue()).isEmpty();
+			assertThat(fail.getColumnWidth(0)).isEqualTo((8 + 2) * 256);
+			assertThat(diff.getRow(1).getCell(0).getStringCellValue()).isEqualTo("00000777");
+		}
+	}
+
+	@Test
+	void failedExportKeepsPreviousFileAndLeavesNoTempFile() throws Exception {
+		Path target = outputDir.resolve("20251217緊急復舊配信失敗門市.csv");
+		Files.writeString(target, "previous");
+		doAnswer(inv -> {
+			ReportRowSink sink = inv.getArgument(1);
+			sink.row("00000001", "10.0.0.1", "adsl");
+			throw new IllegalStateException("ORA-03113");
+		}).when(failStoreService).streamFailStores(eq(DATE), any());
+
+		XlsxExportService service = new XlsxExportService(failStoreService, nbitsDiffService,
+				SourceQueryExecutor.sequential(), new ReportMetrics(), DailyResultStore.disabled(), timelineService, outputDir.toString(), false, 100, "10,10,10", "xlsx");
+
+		assertThatThrownBy(() -> service.exportEmergencyReport(DATE, ReportFormat.CSV)).hasMessage("ORA-03113");
+		assertThat(Files.readString(target)).isEqualTo("previous");
+		try (var files = Files.list(outputDir)) {
+			assertThat(files).containsExactly(target);
+		}
+	}
+
+	@Test
+	void csvModeWritesBomSheetColumnAndQuotedCells() throws Exception {
+		doAnswer(inv -> {
+			ReportRowSink sink = inv.getArgument(1);
+			sink.row("00000001", "10.0.0.1", "a,\"b\"");
+			return 1;
+		}).when(failStoreService).streamFailStores(eq(DATE), any());
+		nbitsDiff("00000777", null, "adsl");
+
+		XlsxExportService service = new XlsxExportService(failStoreService, nbitsDiffService,
+				SourceQueryExecutor.sequential(), new ReportMetrics(), DailyResultStore.disabled(), timelineService, outputDir.toString(), false, 100, "10,10,10", "xlsx");
+		Path csv = service.exportEmergencyReport(DATE, ReportFormat.CSV);
+
+		byte[] bytes = Files.readAllBytes(csv);
+		assertThat(csv.getFileName().toString()).isEqualTo("20251217緊急復舊配信失敗門市.csv");
+		assertThat(bytes).startsWith(0xEF, 0xBB, 0xBF);
+		assertThat(new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8)).isEqualTo(
+				"SHEET,TRM_ID,DLF_IP1,ADSL_1\r\n"
+						+ "指示檔配信失敗門市,00000001,10.0.0.1,\"a,\"\"b\"\"\"\r\n"
+						+ "NBITS未取檔門市,00000777,,adsl\r\n");
+	}
+
+	@Test
+	void timelineAddsThirdSheetAndJson() throws Exception {
+		doAnswer(inv -> 0).when(failStoreService).streamFailStores(eq(DATE), any());
+		nbitsDiff("00000777", "10.0.7.7", "adsl");
+		DistributionTimeline timeline = new DistributionTimeline(DATE, 360);
+		timeline.addIgal(3_600, 5, 1);
+		timeline.addIgal(7 * 3_600, 2, 0);
+		timeline.addNbits(8 * 3_600);
+		when(timelineService.isEnabled()).thenReturn(true);
+		when(timelineService.timeline(DATE)).thenReturn(timeline);
+
+		XlsxExportService service = new XlsxExportService(failStoreService, nbitsDiffService,
+				SourceQueryExecutor.sequential(), new ReportMetrics(), DailyResultStore.disabled(), timelineService, outputDir.toString(), false, 100, "10,10,10", "xlsx");
+		Path xlsx = service.exportEmergencyXlsx(DATE);
+
+		try (InputStream in = Files.newInputStream(xlsx); Workbook workbook = new XSSFWorkbook(in)) {
+			Sheet sheet = workbook.getSheet("配信時段分佈");
+			assertThat(sheet.getRow(0).getCell(1).getStringCellValue()).isEqualTo("配信成功");
+			assertThat(sheet.getRow(1).getCell(0).getStringCellValue()).isEqualTo("00:00-06:00");
+			assertThat(sheet.getRow(1).getCell(1).getNumericCellValue()).isEqualTo(5);
+			assertThat(sheet.getRow(2).getCell(3).getNumericCellValue()).isEqualTo(1);
+			assertThat(sheet.getRow(4).getCell(0).getStringCellValue()).isEqualTo("18:00-24:00");
+			assertThat(sheet.getRow(5).getCell(0).getStringCellValue()).isEqualTo("合計");
+			assertThat(sheet.getRow(5).getCell(1).getNumericCellValue()).isEqualTo(7);
+		}
+		assertThat(Files.readString(outputDir.resolve("20251217緊急復舊配信失敗門市.timeline.json")))
+				.startsWith("{\"date\":\"2025-12-17\",\"bucketMinutes\":360,\"buckets\":[{\"start\":\"00:00\",\"delivered\":5,\"failed\":1,\"nbitsFetched\":0}")
+				.endsWith("\"total\":{\"delivered\":7,\"failed\":1,\"nbitsFetched\":1}}");
+	}
+
+	// 模擬 NBITS 未取檔：差集一個門市，明細一筆
+	private void nbitsDiff(String trmId, String dlfIp1, String adsl1) {
+		when(nbitsDiffService.findNbitsDiffStores(DATE)).thenReturn(StoreKeySet.of(List.of(StoreKeyCodec.storeOf(trmId))));
+		doAnswer(inv -> {
+			ReportRowSink sink = inv.getArgument(1);
+			sink.row(trmId, dlfIp1, adsl1);
+			return 1;
+		}).when(nbitsDiffService).streamNbitsDiffRows(eq(DATE), any());
+	}
+}